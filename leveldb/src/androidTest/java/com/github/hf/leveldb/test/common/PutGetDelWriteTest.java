@@ -35,8 +35,14 @@ package com.github.hf.leveldb.test.common;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.Keyspace;
 import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.Transaction;
 import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBTransactionConflictException;
 import com.github.hf.leveldb.util.Bytes;
 import com.github.hf.leveldb.util.SimpleWriteBatch;
 import org.junit.Test;
@@ -128,6 +134,76 @@ public abstract class PutGetDelWriteTest extends DatabaseTestCase {
         assertThat(threw).isTrue();
     }
 
+    @Test
+    public void testContainsAndValueLength() throws Exception {
+        LevelDB db = obtainLevelDB();
+
+        db.put(new byte[]{1, 2, 3}, new byte[1000], false);
+        db.put(new byte[]{1, 2, 4}, new byte[0], false);
+
+        assertThat(db.contains(new byte[]{1, 2, 3})).isTrue();
+        assertThat(db.valueLength(new byte[]{1, 2, 3})).isEqualTo(1000);
+
+        assertThat(db.contains(new byte[]{1, 2, 4})).isTrue();
+        assertThat(db.valueLength(new byte[]{1, 2, 4})).isEqualTo(0);
+
+        assertThat(db.contains(new byte[]{1, 2, 5})).isFalse();
+        assertThat(db.valueLength(new byte[]{1, 2, 5})).isEqualTo(-1);
+
+        Snapshot snapshot = db.obtainSnapshot();
+
+        db.del(new byte[]{1, 2, 3}, false);
+
+        assertThat(db.contains(new byte[]{1, 2, 3})).isFalse();
+        assertThat(db.contains(new byte[]{1, 2, 3}, snapshot)).isTrue();
+        assertThat(db.valueLength(new byte[]{1, 2, 3}, snapshot)).isEqualTo(1000);
+
+        db.releaseSnapshot(snapshot);
+
+        boolean threw = false;
+
+        try {
+            db.contains(null);
+        } catch (IllegalArgumentException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+
+        db.close();
+    }
+
+    @Test
+    public void testPartialGet() throws Exception {
+        LevelDB db = obtainLevelDB();
+
+        db.put(new byte[]{1, 2, 3}, new byte[]{10, 11, 12, 13, 14}, false);
+
+        byte[] dest = new byte[4];
+
+        assertThat(db.get(new byte[]{1, 2, 3}, 1, 3, dest)).isEqualTo(3);
+        assertThat(dest).isEqualTo(new byte[]{11, 12, 13, 0});
+
+        assertThat(db.get(new byte[]{1, 2, 3}, 3, 4, dest, 0, null)).isEqualTo(2);
+        assertThat(dest[0]).isEqualTo((byte) 13);
+        assertThat(dest[1]).isEqualTo((byte) 14);
+
+        assertThat(db.get(new byte[]{1, 2, 3}, 10, 4, dest)).isEqualTo(0);
+        assertThat(db.get(new byte[]{1, 2, 4}, 0, 4, dest)).isEqualTo(-1);
+
+        boolean threw = false;
+
+        try {
+            db.get(new byte[]{1, 2, 3}, 0, 5, dest);
+        } catch (IndexOutOfBoundsException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+
+        db.close();
+    }
+
     @Test
     public void testDel() throws Exception {
         LevelDB db = obtainLevelDB();
@@ -219,4 +295,257 @@ public abstract class PutGetDelWriteTest extends DatabaseTestCase {
 
         assertThat(threw).isTrue();
     }
+
+    @Test
+    public void testKeyspaces() throws Exception {
+        LevelDB db = obtainLevelDB();
+
+        Keyspace users = db.keyspace("users");
+        Keyspace posts = db.keyspace("posts");
+
+        assertThat(users.id()).isNotEqualTo(posts.id());
+        assertThat(db.keyspace("users").id()).isEqualTo(users.id());
+        assertThat(db.keyspaceNames()).containsExactly("users", "posts");
+
+        db.put(new byte[]{1}, new byte[]{0}, false);
+
+        for (byte i = 0; i < 10; i++) {
+            users.put(new byte[]{i}, new byte[]{i, 1});
+            posts.put(new byte[]{i}, new byte[]{i, 2});
+        }
+
+        assertThat(users.get(new byte[]{3})).isEqualTo(new byte[]{3, 1});
+        assertThat(posts.get(new byte[]{3})).isEqualTo(new byte[]{3, 2});
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{0});
+
+        Iterator iterator = users.iterator();
+
+        int count = 0;
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+            assertThat(iterator.key()).isEqualTo(new byte[]{(byte) count});
+            assertThat(iterator.value()).isEqualTo(new byte[]{(byte) count, 1});
+            count++;
+        }
+
+        assertThat(count).isEqualTo(10);
+
+        iterator.seekToLast();
+        assertThat(iterator.key()).isEqualTo(new byte[]{9});
+
+        iterator.close();
+
+        SimpleWriteBatch batch = new SimpleWriteBatch();
+        batch.put(new byte[]{20}, new byte[]{20, 1});
+        batch.del(new byte[]{0});
+
+        users.write(batch);
+
+        assertThat(users.contains(new byte[]{20})).isTrue();
+        assertThat(users.contains(new byte[]{0})).isFalse();
+        assertThat(db.contains(new byte[]{20})).isFalse();
+
+        assertThat(users.approximateSize()).isAtLeast(0L);
+
+        assertThat(users.drop()).isEqualTo(10L);
+
+        assertThat(users.get(new byte[]{3})).isNull();
+        assertThat(posts.get(new byte[]{3})).isEqualTo(new byte[]{3, 2});
+        assertThat(db.keyspace("users").id()).isEqualTo(users.id());
+
+        db.close();
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        LevelDB db = obtainLevelDB();
+
+        assertThat(db.increment(new byte[]{1}, 5)).isEqualTo(5L);
+        assertThat(db.increment(new byte[]{1}, -7)).isEqualTo(-2L);
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{-1, -1, -1, -1, -1, -1, -1, -2});
+
+        db.append(new byte[]{2}, new byte[]{1, 2});
+        db.append(new byte[]{2}, new byte[]{3});
+        assertThat(db.get(new byte[]{2})).isEqualTo(new byte[]{1, 2, 3});
+
+        assertThat(db.merge(LevelDB.MERGE_MAX, new byte[]{3}, new byte[]{0, 0, 0, 0, 0, 0, 0, 9}, false))
+                .isEqualTo(new byte[]{0, 0, 0, 0, 0, 0, 0, 9});
+        assertThat(db.merge(LevelDB.MERGE_MAX, new byte[]{3}, new byte[]{0, 0, 0, 0, 0, 0, 0, 4}, false))
+                .isEqualTo(new byte[]{0, 0, 0, 0, 0, 0, 0, 9});
+
+        boolean threw = false;
+
+        try {
+            db.increment(new byte[]{2}, 1);
+        } catch (LevelDBException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+        assertThat(db.get(new byte[]{2})).isEqualTo(new byte[]{1, 2, 3});
+
+        threw = false;
+
+        try {
+            db.merge("unknown", new byte[]{4}, new byte[]{1}, false);
+        } catch (IllegalArgumentException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+
+        final LevelDB shared = db;
+
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 500; j++) {
+                            shared.increment(new byte[]{5}, 1);
+                        }
+                    } catch (LevelDBException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(db.increment(new byte[]{5}, 0)).isEqualTo(2000L);
+
+        db.close();
+    }
+
+    @Test
+    public void testCompareAndSet() throws Exception {
+        LevelDB db = obtainLevelDB();
+
+        assertThat(db.putIfAbsent(new byte[]{1}, new byte[]{1})).isTrue();
+        assertThat(db.putIfAbsent(new byte[]{1}, new byte[]{2})).isFalse();
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{1});
+
+        assertThat(db.compareAndSet(new byte[]{1}, new byte[]{2}, new byte[]{3})).isFalse();
+        assertThat(db.compareAndSet(new byte[]{1}, new byte[]{1}, new byte[]{3})).isTrue();
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{3});
+
+        assertThat(db.compareAndSet(new byte[]{2}, new byte[]{1}, new byte[]{3})).isFalse();
+        assertThat(db.compareAndSet(new byte[]{2}, null, new byte[]{3})).isTrue();
+
+        assertThat(db.compareAndDelete(new byte[]{1}, new byte[]{1})).isFalse();
+        assertThat(db.compareAndDelete(new byte[]{1}, new byte[]{3})).isTrue();
+        assertThat(db.contains(new byte[]{1})).isFalse();
+
+        boolean threw = false;
+
+        try {
+            db.compareAndSet(new byte[]{1}, null, null);
+        } catch (IllegalArgumentException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+
+        final LevelDB shared = db;
+        final int[] acquired = new int[1];
+
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 100; j++) {
+                            if (shared.putIfAbsent(new byte[]{3, (byte) j}, new byte[]{1})) {
+                                synchronized (acquired) {
+                                    acquired[0]++;
+                                }
+                            }
+                        }
+                    } catch (LevelDBException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(acquired[0]).isEqualTo(100);
+
+        db.close();
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        LevelDB db = obtainLevelDB();
+
+        db.put(new byte[]{1}, new byte[]{1});
+
+        Transaction transaction = db.beginTransaction();
+
+        assertThat(transaction.get(new byte[]{1})).isEqualTo(new byte[]{1});
+
+        transaction.put(new byte[]{1}, new byte[]{2}).put(new byte[]{2}, new byte[]{2}).del(new byte[]{3});
+
+        assertThat(transaction.get(new byte[]{1})).isEqualTo(new byte[]{2});
+        assertThat(transaction.get(new byte[]{3})).isNull();
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{1});
+
+        db.put(new byte[]{4}, new byte[]{4});
+
+        transaction.commit();
+
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{2});
+        assertThat(db.get(new byte[]{2})).isEqualTo(new byte[]{2});
+
+        transaction = db.beginTransaction();
+
+        transaction.get(new byte[]{1});
+        transaction.put(new byte[]{5}, new byte[]{5});
+
+        db.put(new byte[]{1}, new byte[]{3});
+
+        boolean threw = false;
+
+        try {
+            transaction.commit();
+        } catch (LevelDBTransactionConflictException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+        assertThat(db.contains(new byte[]{5})).isFalse();
+
+        transaction = db.beginTransaction();
+        transaction.put(new byte[]{6}, new byte[]{6});
+        transaction.close();
+        transaction.close();
+
+        assertThat(db.contains(new byte[]{6})).isFalse();
+
+        threw = false;
+
+        try {
+            transaction.commit();
+        } catch (IllegalStateException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+
+        db.close();
+    }
 }
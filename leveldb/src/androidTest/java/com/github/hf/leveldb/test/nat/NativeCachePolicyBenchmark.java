@@ -0,0 +1,153 @@
+package com.github.hf.leveldb.test.nat;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.github.hf.leveldb.CacheStats;
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.implementation.NativeLevelDB;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Compares the block cache policies on a workload of hot point reads interleaved with full scans
+ * that fill the cache. Results are logged under this class' name; the test only checks that both
+ * runs complete, since hit ratios depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NativeCachePolicyBenchmark {
+
+    private static final int KEYS = 8192;
+    private static final int VALUE_SIZE = 1024;
+    private static final int HOT_KEYS = 64;
+    private static final int ROUNDS = 8;
+    private static final int READS_PER_ROUND = 4096;
+
+    private File lruFile;
+    private File slruFile;
+
+    @Before
+    public void setUp() {
+        File cacheDir = InstrumentationRegistry.getInstrumentation().getContext().getCacheDir();
+
+        lruFile = new File(cacheDir, String.format("%20f", Math.random() * 100000d));
+        slruFile = new File(cacheDir, String.format("%20f", Math.random() * 100000d));
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(lruFile);
+        FileUtils.deleteQuietly(slruFile);
+    }
+
+    @Test
+    public void testMixedScanAndPointReads() throws Exception {
+        // Expect SEGMENTED_LRU to log the higher hit ratio, scans don't evict its protected segment.
+        assertThat(run(lruFile, LevelDB.CachePolicy.LRU)).isAtLeast(0d);
+        assertThat(run(slruFile, LevelDB.CachePolicy.SEGMENTED_LRU)).isAtLeast(0d);
+    }
+
+    private double run(File dbFile, LevelDB.CachePolicy policy) throws Exception {
+        LevelDB db = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .cachePolicy(policy)
+                .cacheSize(512 * 1024)
+                .writeBufferSize(256 * 1024));
+
+        Random random = new Random(42);
+
+        byte[] value = new byte[VALUE_SIZE];
+
+        for (int i = 0; i < KEYS; i++) {
+            random.nextBytes(value);
+            db.put(key(i), value);
+        }
+
+        long lookups = 0;
+        long hits = 0;
+        long nanos = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            CacheStats before = db.getCacheStats();
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < READS_PER_ROUND; i++) {
+                assertThat(db.get(key((random.nextInt(HOT_KEYS) * 127) % KEYS))).isNotNull();
+            }
+
+            nanos += System.nanoTime() - start;
+
+            CacheStats stats = db.getCacheStats().since(before);
+
+            lookups += stats.lookups();
+            hits += stats.hits();
+
+            Iterator iterator = db.iterator(true);
+
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                iterator.value();
+            }
+
+            iterator.close();
+        }
+
+        db.close();
+
+        double hitRatio = lookups == 0 ? 1d : (double) hits / (double) lookups;
+
+        Log.i(NativeCachePolicyBenchmark.class.getName(), String.format("%s: point read hit ratio %.3f, mean latency %.1fus",
+                policy, hitRatio, nanos / 1000d / (ROUNDS * READS_PER_ROUND)));
+
+        return hitRatio;
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key%08d", i).getBytes();
+    }
+}
@@ -33,6 +33,7 @@ package com.github.hf.leveldb.test.nat;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.github.hf.leveldb.KeyRange;
 import com.github.hf.leveldb.LevelDB;
 import com.github.hf.leveldb.exception.LevelDBException;
 import com.github.hf.leveldb.implementation.NativeLevelDB;
@@ -40,6 +41,8 @@ import com.github.hf.leveldb.test.common.DatabaseTestCase;
 
 import org.junit.Test;
 
+import java.io.File;
+
 import static com.google.common.truth.Truth.assertThat;
 /**
  * Created by hermann on 8/16/14.
@@ -100,4 +103,74 @@ public class NativeOpenCloseTest extends DatabaseTestCase {
 
         assertThat(dbFile.exists()).isTrue();
     }
+
+    @Test
+    public void testOpenAsync() throws Exception {
+        LevelDB db = LevelDB.openAsync(dbFile.getAbsolutePath(), LevelDB.configure().createIfMissing(true));
+
+        db.warmUp(KeyRange.all());
+
+        db.put(new byte[]{1}, new byte[]{1});
+
+        assertThat(db.get(new byte[]{1})).isEqualTo(new byte[]{1});
+        assertThat(db.isClosed()).isFalse();
+
+        db.warmUp(KeyRange.prefix(new byte[]{1}), KeyRange.prefix(new byte[]{(byte) 0xFF}));
+
+        db.close();
+
+        assertThat(db.isClosed()).isTrue();
+    }
+
+    @Test
+    public void testOpenAsyncFailure() throws Exception {
+        NativeLevelDB ndb = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure().createIfMissing(true));
+
+        LevelDB db = LevelDB.openAsync(dbFile.getAbsolutePath(), LevelDB.configure().createIfMissing(true));
+
+        boolean threw = false;
+
+        try {
+            db.get(new byte[]{1});
+        } catch (LevelDBException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+        assertThat(db.isClosed()).isTrue();
+
+        db.close();
+        ndb.close();
+    }
+
+    @Test
+    public void testReadProfile() throws Exception {
+        LevelDB.Configuration configuration = LevelDB.configure().createIfMissing(true).profileReads(true);
+
+        NativeLevelDB ndb = new NativeLevelDB(dbFile.getAbsolutePath(), configuration);
+
+        for (int i = 0; i < 100; i++) {
+            ndb.put(("user" + i).getBytes(), new byte[]{(byte) i});
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            ndb.get(("user" + (i % 100)).getBytes());
+        }
+
+        ndb.close();
+
+        File profile = new File(dbFile, "READ_PROFILE");
+
+        assertThat(profile.exists()).isTrue();
+
+        ndb = new NativeLevelDB(dbFile.getAbsolutePath(), configuration);
+
+        assertThat(ndb.get("user7".getBytes())).isEqualTo(new byte[]{7});
+
+        ndb.close();
+
+        LevelDB.destroy(dbFile.getAbsolutePath());
+
+        assertThat(profile.exists()).isFalse();
+    }
 }
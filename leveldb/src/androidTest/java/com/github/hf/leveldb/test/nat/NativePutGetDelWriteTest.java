@@ -33,12 +33,29 @@ package com.github.hf.leveldb.test.nat;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.github.hf.leveldb.CacheStats;
+import com.github.hf.leveldb.DbEvent;
+import com.github.hf.leveldb.DbStats;
+import com.github.hf.leveldb.IOStats;
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.Keyspace;
 import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.exception.LevelDBException;
 import com.github.hf.leveldb.implementation.NativeLevelDB;
 import com.github.hf.leveldb.test.common.PutGetDelWriteTest;
+import com.github.hf.leveldb.util.LruValueCache;
+import com.github.hf.leveldb.util.SimpleWriteBatch;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static com.google.common.truth.Truth.assertThat;
 
 /**
@@ -69,4 +86,516 @@ public final class NativePutGetDelWriteTest extends PutGetDelWriteTest {
 
         levelDB.close();
     }
+
+    @Test
+    public void testStats() throws Exception {
+        LevelDB levelDB = obtainLevelDB();
+
+        for (int i = 0; i < 1000; i++) {
+            levelDB.put(("key" + i).getBytes(), new byte[128]);
+        }
+
+        DbStats stats = levelDB.getStats();
+
+        assertThat(stats).isNotNull();
+        assertThat(stats.levels().size()).isEqualTo(DbStats.NUM_LEVELS);
+        assertThat(stats.approximateMemoryUsage()).isGreaterThan(0L);
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testCacheStats() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .cacheSize(1024 * 1024)
+                .writeBufferSize(64 * 1024));
+
+        for (int i = 0; i < 4096; i++) {
+            levelDB.put(("key" + i).getBytes(), new byte[256]);
+        }
+
+        CacheStats before = levelDB.getCacheStats();
+
+        assertThat(before.capacity()).isEqualTo(1024L * 1024L);
+
+        for (int i = 0; i < 4096; i++) {
+            assertThat(levelDB.get(("key" + i).getBytes())).isNotNull();
+        }
+
+        CacheStats stats = levelDB.getCacheStats().since(before);
+
+        assertThat(stats.lookups()).isGreaterThan(0L);
+        assertThat(stats.hits()).isAtMost(stats.lookups());
+        assertThat(stats.inserts()).isGreaterThan(0L);
+        assertThat(levelDB.getCacheStats().usage()).isGreaterThan(0L);
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testIOStats() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .collectIOStats(true));
+
+        for (int i = 0; i < 16; i++) {
+            levelDB.put(("key" + i).getBytes(), ("value" + i).getBytes(), true);
+        }
+
+        IOStats.Counters log = levelDB.getIOStats().get(IOStats.FileType.LOG);
+
+        assertThat(log.writeOps()).isAtLeast(16L);
+        assertThat(log.writeBytes()).isGreaterThan(0L);
+        assertThat(log.syncOps()).isAtLeast(16L);
+        assertThat(levelDB.getIOStats().total().writeBytes()).isAtLeast(log.writeBytes());
+
+        levelDB.close();
+
+        LevelDB plain = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure());
+
+        assertThat(plain.getIOStats()).isNull();
+
+        plain.close();
+    }
+
+    @Test
+    public void testPauseBackgroundWork() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .writeBufferSize(64 * 1024)
+                .backgroundThreadPriority(10));
+
+        levelDB.pauseBackgroundWork();
+
+        assertThat(levelDB.isBackgroundWorkPaused()).isTrue();
+
+        // Enough memtables to need flushing, writes must not block forever while paused.
+        for (int i = 0; i < 2048; i++) {
+            levelDB.put(("key" + i).getBytes(), new byte[1024]);
+        }
+
+        assertThat(levelDB.isBackgroundWorkPaused()).isFalse();
+
+        levelDB.pauseBackgroundWork();
+        levelDB.resumeBackgroundWork();
+
+        assertThat(levelDB.isBackgroundWorkPaused()).isFalse();
+        assertThat(levelDB.get("key0".getBytes())).isEqualTo(new byte[1024]);
+
+        levelDB.pauseBackgroundWork();
+        levelDB.close();
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .writeBufferSize(64 * 1024)
+                .throttleWrites(true));
+
+        final List<DbEvent> events = new CopyOnWriteArrayList<DbEvent>();
+        final CountDownLatch flushed = new CountDownLatch(1);
+
+        levelDB.addEventListener(new DbEvent.Listener() {
+            @Override
+            public void onEvent(DbEvent event) {
+                events.add(event);
+
+                if (event.type() == DbEvent.Type.FLUSH_FINISHED) {
+                    flushed.countDown();
+                }
+            }
+        });
+
+        for (int i = 0; i < 1024; i++) {
+            levelDB.put(("key" + i).getBytes(), new byte[1024]);
+        }
+
+        assertThat(flushed.await(10, TimeUnit.SECONDS)).isTrue();
+
+        levelDB.close();
+
+        for (DbEvent event : events) {
+            if (event.type() == DbEvent.Type.FLUSH_FINISHED) {
+                assertThat(event.level()).isEqualTo(0);
+                assertThat(event.bytes()).isGreaterThan(0L);
+            }
+        }
+    }
+
+    @Test
+    public void testCompactRange() throws Exception {
+        LevelDB levelDB = obtainLevelDB();
+
+        for (int i = 0; i < 1000; i++) {
+            levelDB.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+
+        for (int i = 0; i < 500; i++) {
+            levelDB.del(("key" + i).getBytes());
+        }
+
+        levelDB.compactRange("key".getBytes(), null);
+        levelDB.compactRange(null, null);
+
+        assertThat(levelDB.get("key0".getBytes())).isNull();
+        assertThat(levelDB.get("key999".getBytes())).isEqualTo("value999".getBytes());
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testValueCache() throws Exception {
+        LruValueCache cache = new LruValueCache(64 * 1024);
+
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .valueCache(cache));
+
+        levelDB.put("key".getBytes(), "value".getBytes());
+
+        assertThat(levelDB.get("key".getBytes())).isEqualTo("value".getBytes());
+
+        // Callers get their own copy, on hits too.
+        byte[] value = levelDB.get("key".getBytes());
+        value[0] = 'V';
+
+        assertThat(levelDB.get("key".getBytes())).isEqualTo("value".getBytes());
+        assertThat(cache.hits()).isEqualTo(2L);
+
+        levelDB.put("key".getBytes(), "other".getBytes());
+
+        assertThat(levelDB.get("key".getBytes())).isEqualTo("other".getBytes());
+
+        levelDB.write(new SimpleWriteBatch().put("key".getBytes(), "batch".getBytes()), false);
+
+        assertThat(levelDB.get("key".getBytes())).isEqualTo("batch".getBytes());
+
+        Snapshot snapshot = levelDB.obtainSnapshot();
+
+        levelDB.del("key".getBytes());
+
+        assertThat(levelDB.get("key".getBytes())).isNull();
+        assertThat(levelDB.get("key".getBytes(), snapshot)).isEqualTo("batch".getBytes());
+
+        levelDB.releaseSnapshot(snapshot);
+        levelDB.close();
+    }
+
+    @Test
+    public void testValueLog() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .valueLogThreshold(1024));
+
+        byte[] large = new byte[64 * 1024];
+
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+
+        levelDB.put("small".getBytes(), "value".getBytes());
+        levelDB.put("large".getBytes(), large, true);
+        levelDB.write(new SimpleWriteBatch().put("batch".getBytes(), large.clone()), false);
+
+        assertThat(new File(dbFile, "vlog").isDirectory()).isTrue();
+
+        assertThat(levelDB.get("small".getBytes())).isEqualTo("value".getBytes());
+        assertThat(levelDB.get("large".getBytes())).isEqualTo(large);
+        assertThat(levelDB.get("batch".getBytes())).isEqualTo(large);
+        assertThat(levelDB.valueLength("small".getBytes())).isEqualTo(5);
+        assertThat(levelDB.valueLength("large".getBytes())).isEqualTo(large.length);
+        assertThat(levelDB.valueLength("missing".getBytes())).isEqualTo(-1);
+
+        // As without the value log, get() can't tell empty values from missing ones.
+        levelDB.put("empty".getBytes(), new byte[0]);
+
+        assertThat(levelDB.get("empty".getBytes())).isNull();
+        assertThat(levelDB.valueLength("empty".getBytes())).isEqualTo(0);
+        assertThat(levelDB.contains("empty".getBytes())).isTrue();
+
+        levelDB.del("empty".getBytes());
+
+        byte[] part = new byte[4];
+
+        assertThat(levelDB.get("small".getBytes(), 1, 4, part)).isEqualTo(4);
+        assertThat(part).isEqualTo("alue".getBytes());
+        assertThat(levelDB.get("large".getBytes(), 1000, 4, part)).isEqualTo(4);
+        assertThat(part).isEqualTo(Arrays.copyOfRange(large, 1000, 1004));
+        assertThat(levelDB.get("large".getBytes(), large.length - 2, 4, part)).isEqualTo(2);
+        assertThat(levelDB.get("missing".getBytes(), 0, 4, part)).isEqualTo(-1);
+
+        Snapshot snapshot = levelDB.obtainSnapshot();
+
+        levelDB.del("large".getBytes());
+
+        assertThat(levelDB.get("large".getBytes())).isNull();
+        assertThat(levelDB.get("large".getBytes(), snapshot)).isEqualTo(large);
+
+        Iterator iterator = levelDB.iterator(snapshot);
+
+        int count = 0;
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+            assertThat(iterator.value()).isEqualTo(new String(iterator.key()).equals("small") ? "value".getBytes() : large);
+            count++;
+        }
+
+        assertThat(count).isEqualTo(3);
+
+        iterator.close();
+        levelDB.releaseSnapshot(snapshot);
+
+        assertThat(levelDB.collectValueLogGarbage()).isEqualTo(0L);
+
+        levelDB.close();
+
+        // Existing pointers are still read with the value log turned off.
+        levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure());
+
+        assertThat(levelDB.get("batch".getBytes())).isEqualTo(large);
+
+        levelDB.put("large".getBytes(), large);
+
+        assertThat(levelDB.get("large".getBytes())).isEqualTo(large);
+
+        levelDB.close();
+
+        NativeLevelDB.destroy(dbFile.getAbsolutePath());
+
+        assertThat(dbFile.exists()).isFalse();
+    }
+
+    @Test
+    public void testValueLogOnExistingDatabase() throws Exception {
+        LevelDB levelDB = obtainLevelDB();
+
+        levelDB.put("key".getBytes(), "value".getBytes());
+        levelDB.close();
+
+        boolean threw = false;
+
+        try {
+            new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure().valueLogThreshold(1024));
+        } catch (LevelDBException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                .createIfMissing(true)
+                .writeBufferSize(64 * 1024));
+
+        byte[] value = new byte[1024];
+
+        // Enough to flush some tables, with the rest still in the log.
+        for (int i = 0; i < 1000; i++) {
+            levelDB.put(String.format("key%04d", i).getBytes(), value);
+        }
+
+        File target = new File(dbFile.getParentFile(), dbFile.getName() + "-checkpoint");
+
+        try {
+            levelDB.checkpoint(target.getAbsolutePath());
+
+            levelDB.put("after".getBytes(), value);
+
+            boolean threw = false;
+
+            try {
+                levelDB.checkpoint(target.getAbsolutePath());
+            } catch (LevelDBException e) {
+                threw = true;
+            }
+
+            assertThat(threw).isTrue();
+
+            levelDB.close();
+
+            LevelDB copy = new NativeLevelDB(target.getAbsolutePath(), LevelDB.configure().createIfMissing(false));
+
+            for (int i = 0; i < 1000; i++) {
+                assertThat(copy.get(String.format("key%04d", i).getBytes())).isEqualTo(value);
+            }
+
+            assertThat(copy.get("after".getBytes())).isNull();
+
+            copy.close();
+        } finally {
+            levelDB.close();
+
+            NativeLevelDB.destroy(target.getAbsolutePath());
+        }
+    }
+
+    @Test
+    public void testKeyspacesAfterReopen() throws Exception {
+        LevelDB levelDB = obtainLevelDB();
+
+        long users = levelDB.keyspace("users").id();
+        long posts = levelDB.keyspace("posts").id();
+
+        levelDB.keyspace("users").put(new byte[]{1}, new byte[]{1});
+
+        levelDB.close();
+
+        levelDB = obtainLevelDB();
+
+        assertThat(levelDB.keyspaceNames()).containsExactly("users", "posts");
+        assertThat(levelDB.keyspace("posts").id()).isEqualTo(posts);
+
+        Keyspace keyspace = levelDB.keyspace("users");
+
+        assertThat(keyspace.id()).isEqualTo(users);
+        assertThat(keyspace.get(new byte[]{1})).isEqualTo(new byte[]{1});
+
+        assertThat(levelDB.keyspace("comments").id()).isGreaterThan(posts);
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        LevelDB levelDB = obtainLevelDB();
+
+        for (int i = 0; i < 1000; i++) {
+            levelDB.put(("key" + i).getBytes(), new byte[100]);
+        }
+
+        long logSize = levelDB.logSize();
+
+        assertThat(logSize).isGreaterThan(100000L);
+        assertThat(levelDB.flush()).isLessThan(logSize);
+        assertThat(levelDB.logSize()).isEqualTo(0L);
+
+        levelDB.close();
+
+        levelDB = obtainLevelDB();
+
+        assertThat(levelDB.get("key999".getBytes())).isEqualTo(new byte[100]);
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testFlushPolicy() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure().flushAfterMillis(50));
+
+        levelDB.put("key".getBytes(), new byte[100]);
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (levelDB.logSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(levelDB.logSize()).isEqualTo(0L);
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testExpiringEntries() throws Exception {
+        LevelDB levelDB = new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure().expiringEntries(true));
+
+        levelDB.put("short".getBytes(), "1".getBytes(), 50);
+        levelDB.put("long".getBytes(), "2".getBytes(), TimeUnit.HOURS.toMillis(1));
+        levelDB.put("never".getBytes(), "3".getBytes());
+
+        SimpleWriteBatch batch = new SimpleWriteBatch();
+        batch.put("batched".getBytes(), "4".getBytes());
+        levelDB.write(batch);
+
+        assertThat(levelDB.get("short".getBytes())).isEqualTo("1".getBytes());
+        assertThat(levelDB.valueLength("long".getBytes())).isEqualTo(1);
+
+        Thread.sleep(100);
+
+        assertThat(levelDB.get("short".getBytes())).isNull();
+        assertThat(levelDB.contains("short".getBytes())).isFalse();
+        assertThat(levelDB.get("long".getBytes())).isEqualTo("2".getBytes());
+        assertThat(levelDB.get("never".getBytes())).isEqualTo("3".getBytes());
+        assertThat(levelDB.get("batched".getBytes())).isEqualTo("4".getBytes());
+
+        Iterator iterator = levelDB.iterator();
+
+        int count = 0;
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+            assertThat(iterator.key()).isNotEqualTo("short".getBytes());
+            assertThat(iterator.value()).hasLength(1);
+            count++;
+        }
+
+        iterator.close();
+
+        assertThat(count).isEqualTo(3);
+
+        assertThat(levelDB.sweepExpired()).isEqualTo(1L);
+        assertThat(levelDB.sweepExpired()).isEqualTo(0L);
+
+        assertThat(levelDB.putIfAbsent("lease".getBytes(), "a".getBytes(), 50, false)).isTrue();
+        assertThat(levelDB.putIfAbsent("lease".getBytes(), "b".getBytes(), 50, false)).isFalse();
+
+        Thread.sleep(100);
+
+        assertThat(levelDB.putIfAbsent("lease".getBytes(), "b".getBytes(), 50, false)).isTrue();
+        assertThat(levelDB.get("lease".getBytes())).isEqualTo("b".getBytes());
+
+        levelDB.close();
+
+        // Stays on without being configured.
+        levelDB = obtainLevelDB();
+
+        assertThat(levelDB.get("never".getBytes())).isEqualTo("3".getBytes());
+
+        levelDB.close();
+    }
+
+    @Test
+    public void testExpiringEntriesConfiguration() throws Exception {
+        LevelDB levelDB = obtainLevelDB();
+
+        boolean threw = false;
+
+        try {
+            levelDB.put("key".getBytes(), "value".getBytes(), 1000);
+        } catch (LevelDBException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+        assertThat(levelDB.sweepExpired()).isEqualTo(0L);
+
+        levelDB.close();
+
+        threw = false;
+
+        try {
+            new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure().expiringEntries(true));
+        } catch (LevelDBException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+
+        NativeLevelDB.destroy(dbFile.getAbsolutePath());
+
+        threw = false;
+
+        try {
+            new NativeLevelDB(dbFile.getAbsolutePath(), LevelDB.configure()
+                    .expiringEntries(true)
+                    .valueCache(new LruValueCache(1024)));
+        } catch (LevelDBException e) {
+            threw = true;
+        }
+
+        assertThat(threw).isTrue();
+    }
 }
@@ -0,0 +1,140 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.BoundedLossWriter;
+import com.github.hf.leveldb.util.SimpleWriteBatch;
+
+import junit.framework.TestCase;
+
+public class BoundedLossWriterTest extends TestCase {
+
+    private MockLevelDB levelDB;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        levelDB = new MockLevelDB();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        levelDB.close();
+
+        super.tearDown();
+    }
+
+    public void testPeriodicSync() throws Exception {
+        BoundedLossWriter writer = new BoundedLossWriter(levelDB, 20, Long.MAX_VALUE);
+
+        long first = writer.put("a".getBytes(), "1".getBytes());
+        long second = writer.del("b".getBytes());
+        long third = writer.write(new SimpleWriteBatch().put("c".getBytes(), "3".getBytes()));
+
+        assertTrue(first < second);
+        assertTrue(second < third);
+        assertEquals(third, writer.lastTicket());
+
+        assertTrue(writer.awaitDurable(third, 5000));
+        assertTrue(writer.durableUpTo() >= third);
+        assertEquals("1", new String(levelDB.get("a".getBytes())));
+
+        writer.close();
+    }
+
+    public void testSyncOnBytes() throws Exception {
+        BoundedLossWriter writer = new BoundedLossWriter(levelDB, 60000, 1024);
+
+        long ticket = writer.put("key".getBytes(), new byte[2048]);
+
+        assertTrue(writer.awaitDurable(ticket, 5000));
+
+        writer.close();
+    }
+
+    public void testFailedWriteNeverDurable() throws Exception {
+        BoundedLossWriter writer = new BoundedLossWriter(levelDB, 60000, Long.MAX_VALUE);
+
+        try {
+            writer.put(null, "value".getBytes());
+
+            fail("Null key must be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        long failed = writer.lastTicket();
+        long ticket = writer.put("key".getBytes(), "value".getBytes());
+
+        assertEquals(ticket, writer.sync());
+        assertTrue(writer.awaitDurable(ticket, 0));
+
+        try {
+            writer.awaitDurable(failed, 0);
+
+            fail("A failed write must never be reported durable.");
+        } catch (LevelDBException e) {
+            // expected
+        }
+
+        writer.close();
+    }
+
+    public void testExplicitSyncAndClose() throws Exception {
+        BoundedLossWriter writer = new BoundedLossWriter(levelDB, 60000, Long.MAX_VALUE);
+
+        long ticket = writer.put("key".getBytes(), "value".getBytes());
+
+        assertFalse(writer.awaitDurable(ticket, 10));
+        assertEquals(ticket, writer.sync());
+
+        long last = writer.put("key".getBytes(), "other".getBytes());
+
+        writer.close();
+
+        assertEquals(last, writer.durableUpTo());
+
+        try {
+            writer.put("key".getBytes(), "value".getBytes());
+
+            fail("Closed writer must not accept writes.");
+        } catch (LevelDBClosedException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.BulkLoader;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BulkLoaderTest extends TestCase {
+
+    private MockLevelDB levelDB;
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        levelDB = new MockLevelDB();
+
+        directory = new File(System.getProperty("java.io.tmpdir"), "bulk-loader-test-" + System.nanoTime());
+        assertTrue(directory.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        levelDB.close();
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+
+        super.tearDown();
+    }
+
+    public void testLoadAcrossRuns() throws Exception {
+        List<Integer> order = new ArrayList<Integer>();
+
+        for (int i = 0; i < 2000; i++) {
+            order.add(i);
+        }
+
+        Collections.shuffle(order, new Random(42));
+
+        BulkLoader loader = new BulkLoader(levelDB, directory, 16 * 1024, 1024);
+
+        for (int i : order) {
+            loader.put(key(i), ("first " + i).getBytes());
+        }
+
+        // Later values win, whether in an older run or still buffered.
+        for (int i = 0; i < 2000; i += 7) {
+            loader.put(key(i), ("second " + i).getBytes());
+        }
+
+        assertTrue(loader.runCount() > 1);
+        assertEquals(2000 + 286, loader.count());
+
+        assertEquals(2000, loader.finish(true));
+
+        assertEquals(0, directory.listFiles().length);
+
+        Iterator iterator = levelDB.iterator();
+
+        int i = 0;
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next(), i++) {
+            assertEquals(new String(key(i)), new String(iterator.key()));
+            assertEquals((i % 7 == 0 ? "second " : "first ") + i, new String(iterator.value()));
+        }
+
+        iterator.close();
+
+        assertEquals(2000, i);
+    }
+
+    public void testCloseDeletesRuns() throws Exception {
+        BulkLoader loader = new BulkLoader(levelDB, directory, 1024);
+
+        for (int i = 0; i < 100; i++) {
+            loader.put(key(i), new byte[64]);
+        }
+
+        assertTrue(directory.listFiles().length > 0);
+
+        loader.close();
+
+        assertEquals(0, directory.listFiles().length);
+        assertNull(levelDB.get(key(0)));
+
+        try {
+            loader.put(key(0), new byte[1]);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key%06d", i).getBytes();
+    }
+}
@@ -56,4 +56,18 @@ public class BytesTest extends TestCase {
         assertEquals(0, Bytes.lexicographicCompare(a, b));
         assertEquals(0, Bytes.lexicographicCompare(b, a));
     }
+
+    public void testBytewiseComparison() {
+        byte[] a = new byte[] { 1, 2, 3, 0 };
+        byte[] b = new byte[] { 1, 2, 3 };
+
+        assertTrue(Bytes.bytewiseCompare(a, b) > 0);
+        assertTrue(Bytes.bytewiseCompare(b, a) < 0);
+
+        a = new byte[] { 1, (byte) 0xFF };
+        b = new byte[] { 1, 2, 3 };
+
+        assertTrue(Bytes.bytewiseCompare(a, b) > 0);
+        assertEquals(0, Bytes.BYTEWISE_COMPARATOR.compare(b, new byte[] { 1, 2, 3 }));
+    }
 }
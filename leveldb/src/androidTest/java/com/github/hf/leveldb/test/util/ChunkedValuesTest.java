@@ -0,0 +1,189 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.ChunkedValueInputStream;
+import com.github.hf.leveldb.util.ChunkedValueOutputStream;
+import com.github.hf.leveldb.util.ChunkedValues;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ChunkedValuesTest extends TestCase {
+
+    private MockLevelDB levelDB;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        levelDB = new MockLevelDB();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        levelDB.close();
+
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] data = new byte[200000];
+        new Random(42).nextBytes(data);
+
+        ChunkedValueOutputStream out = new ChunkedValueOutputStream(levelDB, "blob".getBytes(), 64 * 1024, false);
+
+        out.write(data, 0, 1000);
+        out.write(data[1000]);
+        out.write(data, 1001, data.length - 1001);
+
+        assertNull(ChunkedValues.openInputStream(levelDB, "blob".getBytes()));
+
+        out.close();
+
+        assertEquals(data.length, ChunkedValues.length(levelDB, "blob".getBytes()));
+
+        ChunkedValueInputStream in = ChunkedValues.openInputStream(levelDB, "blob".getBytes());
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7000];
+        int count;
+
+        while ((count = in.read(buffer)) > 0) {
+            read.write(buffer, 0, count);
+        }
+
+        in.close();
+
+        assertTrue(Arrays.equals(data, read.toByteArray()));
+
+        in = ChunkedValues.openInputStream(levelDB, "blob".getBytes());
+
+        assertEquals(70000, in.skip(70000));
+        assertEquals(data[70000] & 0xff, in.read());
+
+        in.close();
+    }
+
+    public void testOverwriteAndDelete() throws Exception {
+        ChunkedValueOutputStream out = new ChunkedValueOutputStream(levelDB, "blob".getBytes(), 16, false);
+        out.write(new byte[100]);
+        out.close();
+
+        out = ChunkedValues.openOutputStream(levelDB, "blob".getBytes());
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        // Header and a single chunk, the previous chunks are gone.
+        assertEquals(2, countKeys());
+
+        ChunkedValueInputStream in = ChunkedValues.openInputStream(levelDB, "blob".getBytes());
+
+        assertEquals(1, in.read());
+        assertEquals(2, in.read());
+        assertEquals(3, in.read());
+        assertEquals(-1, in.read());
+
+        in.close();
+
+        ChunkedValues.delete(levelDB, "blob".getBytes(), false);
+
+        assertEquals(-1, ChunkedValues.length(levelDB, "blob".getBytes()));
+        assertEquals(0, countKeys());
+    }
+
+    public void testAbort() throws Exception {
+        ChunkedValueOutputStream out = new ChunkedValueOutputStream(levelDB, "blob".getBytes(), 16, false);
+        out.write(new byte[100]);
+        out.abort();
+
+        assertEquals(0, countKeys());
+    }
+
+    public void testConcurrentWritersLeaveNoChunks() throws Exception {
+        ChunkedValueOutputStream first = new ChunkedValueOutputStream(levelDB, "blob".getBytes(), 16, false);
+        ChunkedValueOutputStream second = new ChunkedValueOutputStream(levelDB, "blob".getBytes(), 16, false);
+
+        first.write(new byte[100]);
+        second.write(new byte[50]);
+
+        first.close();
+
+        // The second writer's chunks survive the first switch.
+        assertEquals(1 + 7 + 3, countKeys());
+
+        second.close();
+
+        assertEquals(1 + 4, countKeys());
+        assertEquals(50, ChunkedValues.length(levelDB, "blob".getBytes()));
+    }
+
+    public void testOrphanedChunksDeleted() throws Exception {
+        // Left behind by a writer that died before closing.
+        byte[] orphan = ByteBuffer.allocate(4 + 1 + 8 + 4).put("blob".getBytes()).put((byte) 0).putLong(7).putInt(0).array();
+
+        levelDB.put(orphan, new byte[16]);
+
+        ChunkedValueOutputStream out = new ChunkedValueOutputStream(levelDB, "blob".getBytes(), 16, false);
+        out.write(new byte[20]);
+        out.close();
+
+        assertNull(levelDB.get(orphan));
+        assertEquals(1 + 2, countKeys());
+
+        levelDB.put(orphan, new byte[16]);
+
+        ChunkedValues.delete(levelDB, "blob".getBytes(), false);
+
+        assertEquals(0, countKeys());
+    }
+
+    private int countKeys() throws Exception {
+        Iterator iterator = levelDB.iterator();
+        int count = 0;
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+            count++;
+        }
+
+        iterator.close();
+
+        return count;
+    }
+}
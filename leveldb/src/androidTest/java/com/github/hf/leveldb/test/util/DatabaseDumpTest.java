@@ -0,0 +1,149 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.exception.LevelDBCorruptionException;
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.DatabaseDump;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DatabaseDumpTest extends TestCase {
+
+    private MockLevelDB source;
+    private MockLevelDB target;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        source = new MockLevelDB();
+        target = new MockLevelDB();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        source.close();
+        target.close();
+
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(42);
+
+        // Spans several blocks.
+        for (int i = 0; i < 3000; i++) {
+            byte[] value = new byte[random.nextInt(500)];
+            random.nextBytes(value);
+
+            source.put(String.format("key%05d", i).getBytes(), value);
+        }
+
+        Snapshot snapshot = source.obtainSnapshot();
+
+        source.put("later".getBytes(), "value".getBytes());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(3000, DatabaseDump.export(source, snapshot, out, 3));
+
+        source.releaseSnapshot(snapshot);
+
+        assertEquals(3000, DatabaseDump.importInto(target, new ByteArrayInputStream(out.toByteArray()), 2));
+
+        assertNull(target.get("later".getBytes()));
+
+        Iterator iterator = target.iterator();
+
+        int count = 0;
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next(), count++) {
+            assertTrue(Arrays.equals(source.get(iterator.key()), iterator.value()));
+        }
+
+        iterator.close();
+
+        assertEquals(3000, count);
+    }
+
+    public void testEmpty() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, DatabaseDump.export(source, null, out));
+        assertEquals(0, DatabaseDump.importInto(target, new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    public void testCorruption() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            source.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DatabaseDump.export(source, null, out);
+
+        byte[] corrupt = out.toByteArray();
+        corrupt[30] ^= 1;
+
+        try {
+            DatabaseDump.importInto(target, new ByteArrayInputStream(corrupt));
+            fail();
+        } catch (LevelDBCorruptionException e) {
+            // Expected.
+        }
+
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 4);
+
+        try {
+            DatabaseDump.importInto(target, new ByteArrayInputStream(truncated));
+            fail();
+        } catch (LevelDBCorruptionException e) {
+            // Expected.
+        }
+
+        try {
+            DatabaseDump.importInto(target, new ByteArrayInputStream("not an export".getBytes()));
+            fail();
+        } catch (LevelDBCorruptionException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.DbStats;
+import junit.framework.TestCase;
+
+public class DbStatsTest extends TestCase {
+
+    private static final String STATS =
+            "                               Compactions\n" +
+            "Level  Files Size(MB) Time(sec) Read(MB) Write(MB)\n" +
+            "--------------------------------------------------\n" +
+            "  0        2        1         0        0         4\n" +
+            "  1        1        3         1        6         5\n";
+
+    private static final String SSTABLES =
+            "--- level 0 ---\n" +
+            " 7:1000['a' @ 5 : 1 .. 'c' @ 7 : 1]\n" +
+            " 9:2000['b' @ 8 : 1 .. 'd' @ 9 : 1]\n" +
+            "--- level 1 ---\n" +
+            " 5:3000['a' @ 1 : 1 .. 'z' @ 2 : 1]\n" +
+            "--- level 2 ---\n" +
+            "--- level 3 ---\n" +
+            "--- level 4 ---\n" +
+            "--- level 5 ---\n" +
+            "--- level 6 ---\n";
+
+    public void testParse() {
+        DbStats stats = DbStats.parse(STATS, SSTABLES, "12345\n");
+
+        assertEquals(DbStats.NUM_LEVELS, stats.levels().size());
+
+        assertEquals(2, stats.level(0).files());
+        assertEquals(3000, stats.level(0).sizeBytes());
+        assertEquals(4d, stats.level(0).compactionWriteMB(), 0d);
+
+        assertEquals(1, stats.level(1).files());
+        assertEquals(3000, stats.level(1).sizeBytes());
+        assertEquals(1d, stats.level(1).compactionSeconds(), 0d);
+        assertEquals(6d, stats.level(1).compactionReadMB(), 0d);
+        assertEquals(5d, stats.level(1).compactionWriteMB(), 0d);
+
+        assertEquals(0, stats.level(2).files());
+
+        assertEquals(3, stats.totalFiles());
+        assertEquals(6000, stats.totalSizeBytes());
+        assertEquals(12345, stats.approximateMemoryUsage());
+        assertEquals(9d / 4d, stats.writeAmplification(), 0.0001d);
+    }
+
+    public void testParseStatsOnly() {
+        DbStats stats = DbStats.parse(STATS, null, null);
+
+        assertEquals(2, stats.level(0).files());
+        assertEquals(1048576, stats.level(0).sizeBytes());
+        assertEquals(0, stats.approximateMemoryUsage());
+    }
+
+    public void testParseEmpty() {
+        DbStats stats = DbStats.parse(null, null, null);
+
+        assertEquals(0, stats.totalFiles());
+        assertTrue(Double.isNaN(stats.writeAmplification()));
+    }
+}
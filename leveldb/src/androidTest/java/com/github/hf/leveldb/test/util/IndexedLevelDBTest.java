@@ -0,0 +1,160 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.IndexedLevelDB;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class IndexedLevelDBTest extends TestCase {
+
+    // Values are "city,tag,tag,...".
+    private static final IndexedLevelDB.Extractor CITY = new IndexedLevelDB.Extractor() {
+        @Override
+        public Collection<byte[]> extract(byte[] key, byte[] value) {
+            return Collections.singletonList(new String(value).split(",")[0].getBytes());
+        }
+    };
+
+    private static final IndexedLevelDB.Extractor TAGS = new IndexedLevelDB.Extractor() {
+        @Override
+        public Collection<byte[]> extract(byte[] key, byte[] value) {
+            String[] parts = new String(value).split(",");
+            List<byte[]> tags = new ArrayList<byte[]>();
+
+            for (int i = 1; i < parts.length; i++) {
+                tags.add(parts[i].getBytes());
+            }
+
+            return tags;
+        }
+    };
+
+    private MockLevelDB levelDB;
+    private IndexedLevelDB indexed;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        levelDB = new MockLevelDB();
+
+        indexed = new IndexedLevelDB(levelDB, "people")
+                .addIndex("city", CITY)
+                .addIndex("tags", TAGS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        levelDB.close();
+
+        super.tearDown();
+    }
+
+    public void testLookup() throws Exception {
+        indexed.put("ana".getBytes(), "skopje,a,b".getBytes());
+        indexed.put("bob".getBytes(), "berlin,b".getBytes());
+        indexed.put("cid".getBytes(), "skopje".getBytes());
+
+        assertEquals(Arrays.asList("ana", "cid"), strings(indexed.lookup("city", "skopje".getBytes())));
+        assertEquals(Arrays.asList("bob"), strings(indexed.lookup("city", "berlin".getBytes())));
+        assertEquals(Arrays.asList("ana", "bob"), strings(indexed.lookup("tags", "b".getBytes())));
+        assertTrue(indexed.lookup("city", "skop".getBytes()).isEmpty());
+
+        assertEquals("berlin,b", new String(indexed.get("bob".getBytes())));
+    }
+
+    public void testUpdateAndDelete() throws Exception {
+        indexed.put("ana".getBytes(), "skopje,a,b".getBytes());
+        indexed.put("ana".getBytes(), "berlin,b,c".getBytes());
+
+        assertTrue(indexed.lookup("city", "skopje".getBytes()).isEmpty());
+        assertEquals(Arrays.asList("ana"), strings(indexed.lookup("city", "berlin".getBytes())));
+        assertTrue(indexed.lookup("tags", "a".getBytes()).isEmpty());
+        assertEquals(Arrays.asList("ana"), strings(indexed.lookup("tags", "b".getBytes())));
+        assertEquals(Arrays.asList("ana"), strings(indexed.lookup("tags", "c".getBytes())));
+
+        indexed.del("ana".getBytes());
+
+        assertNull(indexed.get("ana".getBytes()));
+        assertTrue(indexed.lookup("city", "berlin".getBytes()).isEmpty());
+        assertTrue(indexed.lookup("tags", "b".getBytes()).isEmpty());
+    }
+
+    public void testRebuild() throws Exception {
+        IndexedLevelDB plain = new IndexedLevelDB(levelDB, "people");
+
+        plain.put("ana".getBytes(), "skopje,a".getBytes());
+        plain.put("bob".getBytes(), "skopje".getBytes());
+
+        assertTrue(indexed.lookup("city", "skopje".getBytes()).isEmpty());
+
+        assertEquals(2, indexed.rebuild("city"));
+        assertEquals(Arrays.asList("ana", "bob"), strings(indexed.lookup("city", "skopje".getBytes())));
+    }
+
+    public void testUnknownIndex() throws Exception {
+        try {
+            indexed.lookup("age", "1".getBytes());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            indexed.addIndex("city", CITY);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static List<String> strings(List<byte[]> keys) {
+        List<String> strings = new ArrayList<String>();
+
+        for (byte[] key : keys) {
+            strings.add(new String(key));
+        }
+
+        return strings;
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.WriteBatch;
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.IndexedWriteBatch;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+public class IndexedWriteBatchTest extends TestCase {
+
+    private MockLevelDB levelDB;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        levelDB = new MockLevelDB();
+
+        for (String key : new String[]{"b", "d", "f", "h"}) {
+            levelDB.put(key.getBytes(), ("db-" + key).getBytes());
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        levelDB.close();
+
+        super.tearDown();
+    }
+
+    public void testGet() throws Exception {
+        IndexedWriteBatch writeBatch = new IndexedWriteBatch()
+                .put("a".getBytes(), "1".getBytes())
+                .put("b".getBytes(), "2".getBytes())
+                .del("d".getBytes())
+                .put("e".getBytes(), "3".getBytes())
+                .del("e".getBytes());
+
+        assertEquals("1", new String(writeBatch.get(levelDB, "a".getBytes())));
+        assertEquals("2", new String(writeBatch.get(levelDB, "b".getBytes())));
+        assertNull(writeBatch.get(levelDB, "d".getBytes()));
+        assertNull(writeBatch.get(levelDB, "e".getBytes()));
+        assertEquals("db-f", new String(writeBatch.get(levelDB, "f".getBytes())));
+
+        assertNull(writeBatch.getOperation("f".getBytes()));
+        assertTrue(writeBatch.getOperation("e".getBytes()).isDel());
+        assertEquals(4, writeBatch.size());
+
+        writeBatch.write(levelDB);
+
+        assertEquals("2", new String(levelDB.get("b".getBytes())));
+        assertFalse(levelDB.contains("d".getBytes()));
+        assertFalse(levelDB.contains("e".getBytes()));
+    }
+
+    public void testGetFromSnapshot() throws Exception {
+        Snapshot snapshot = levelDB.obtainSnapshot();
+
+        levelDB.put("f".getBytes(), "changed".getBytes());
+
+        IndexedWriteBatch writeBatch = new IndexedWriteBatch().put("b".getBytes(), "2".getBytes());
+
+        assertEquals("db-f", new String(writeBatch.get(levelDB, "f".getBytes(), snapshot)));
+        assertEquals("2", new String(writeBatch.get(levelDB, "b".getBytes(), snapshot)));
+
+        levelDB.releaseSnapshot(snapshot);
+    }
+
+    public void testIteration() throws Exception {
+        IndexedWriteBatch writeBatch = new IndexedWriteBatch()
+                .put("a".getBytes(), "1".getBytes())
+                .put("b".getBytes(), "2".getBytes())
+                .del("d".getBytes())
+                .put("e".getBytes(), "3".getBytes())
+                .del("h".getBytes())
+                .del("i".getBytes());
+
+        List<String> expected = Arrays.asList("a=1", "b=2", "e=3", "f=db-f");
+
+        Iterator iterator = writeBatch.iterator(levelDB, null);
+
+        List<String> entries = new ArrayList<String>();
+
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+            entries.add(new String(iterator.key()) + "=" + new String(iterator.value()));
+        }
+
+        assertEquals(expected, entries);
+
+        entries.clear();
+
+        for (iterator.seekToLast(); iterator.isValid(); iterator.previous()) {
+            entries.add(0, new String(iterator.key()) + "=" + new String(iterator.value()));
+        }
+
+        assertEquals(expected, entries);
+
+        iterator.seek("c".getBytes());
+        assertEquals("e", new String(iterator.key()));
+
+        iterator.previous();
+        assertEquals("b", new String(iterator.key()));
+
+        iterator.next();
+        iterator.next();
+        assertEquals("f", new String(iterator.key()));
+
+        iterator.next();
+        assertFalse(iterator.isValid());
+
+        iterator.close();
+        assertTrue(iterator.isClosed());
+    }
+
+    public void testIterationOverEmptyDatabase() throws Exception {
+        MockLevelDB empty = new MockLevelDB();
+
+        IndexedWriteBatch writeBatch = new IndexedWriteBatch()
+                .put("a".getBytes(), "1".getBytes())
+                .del("b".getBytes());
+
+        Iterator iterator = writeBatch.iterator(empty, null);
+
+        iterator.seekToFirst();
+        assertEquals("a", new String(iterator.key()));
+
+        iterator.next();
+        assertFalse(iterator.isValid());
+
+        iterator.close();
+        empty.close();
+    }
+
+    public void testModificationInvalidatesIterators() throws Exception {
+        IndexedWriteBatch writeBatch = new IndexedWriteBatch();
+
+        Iterator iterator = writeBatch.iterator(levelDB, null);
+
+        iterator.seekToFirst();
+
+        writeBatch.put("a".getBytes(), "1".getBytes());
+
+        try {
+            iterator.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // Expected.
+        }
+
+        iterator.close();
+    }
+
+    public void testKeepsLastOperation() throws Exception {
+        IndexedWriteBatch writeBatch = new IndexedWriteBatch()
+                .del("b".getBytes())
+                .put("b".getBytes(), "2".getBytes());
+
+        List<WriteBatch.Operation> operations = new ArrayList<WriteBatch.Operation>(writeBatch.getAllOperations());
+
+        assertEquals(1, operations.size());
+        assertTrue(operations.get(0).isPut());
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.util.LruValueCache;
+
+import junit.framework.TestCase;
+
+public class LruValueCacheTest extends TestCase {
+
+    public void testGetPutInvalidate() {
+        LruValueCache cache = new LruValueCache(1024);
+
+        assertNull(cache.get("key".getBytes()));
+
+        cache.put("key".getBytes(), "value".getBytes());
+
+        assertEquals("value", new String(cache.get("key".getBytes())));
+        assertEquals(8, cache.sizeBytes());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        cache.put("key".getBytes(), "other value".getBytes());
+
+        assertEquals(14, cache.sizeBytes());
+
+        cache.invalidate("key".getBytes());
+
+        assertNull(cache.get("key".getBytes()));
+        assertEquals(0, cache.sizeBytes());
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        LruValueCache cache = new LruValueCache(80);
+
+        cache.put("a".getBytes(), new byte[9]);
+        cache.put("b".getBytes(), new byte[9]);
+        cache.put("c".getBytes(), new byte[9]);
+
+        // Make "a" the most recently used.
+        assertNotNull(cache.get("a".getBytes()));
+
+        for (int i = 0; i < 6; i++) {
+            cache.put(("d" + i).getBytes(), new byte[8]);
+        }
+
+        assertNotNull(cache.get("a".getBytes()));
+        assertNull(cache.get("b".getBytes()));
+        assertTrue(cache.sizeBytes() <= 80);
+        assertTrue(cache.evictions() > 0);
+    }
+
+    public void testSkipsLargeValues() {
+        LruValueCache cache = new LruValueCache(800);
+
+        cache.put("key".getBytes(), new byte[200]);
+
+        assertNull(cache.get("key".getBytes()));
+        assertEquals(0, cache.size());
+    }
+
+    public void testInvalidateAll() {
+        LruValueCache cache = new LruValueCache(1024);
+
+        cache.put("a".getBytes(), "1".getBytes());
+        cache.put("b".getBytes(), "2".getBytes());
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.sizeBytes());
+    }
+}
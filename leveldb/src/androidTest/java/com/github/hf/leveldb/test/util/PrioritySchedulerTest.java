@@ -0,0 +1,154 @@
+package com.github.hf.leveldb.test.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.PriorityScheduler;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class PrioritySchedulerTest extends TestCase {
+
+    private MockLevelDB levelDB;
+    private PriorityScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        levelDB = new MockLevelDB();
+        scheduler = new PriorityScheduler(levelDB, 1, 1, 60000);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.close();
+        levelDB.close();
+
+        super.tearDown();
+    }
+
+    public void testOperations() throws Exception {
+        scheduler.put(PriorityScheduler.Priority.INTERACTIVE, "key".getBytes(), "value".getBytes(), false).get();
+
+        assertEquals("value", new String(scheduler.get("key".getBytes()).get()));
+
+        scheduler.compactRange(null, null).get();
+    }
+
+    public void testBackgroundWaitsForInteractive() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = new CopyOnWriteArrayList<String>();
+
+        Future<Void> blocking = scheduler.submit(PriorityScheduler.Priority.INTERACTIVE, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                release.await();
+                order.add("interactive");
+
+                return null;
+            }
+        });
+
+        Future<Void> background = scheduler.submit(PriorityScheduler.Priority.BACKGROUND, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                order.add("background");
+
+                return null;
+            }
+        });
+
+        Thread.sleep(100);
+
+        assertFalse(background.isDone());
+
+        release.countDown();
+
+        blocking.get(5, TimeUnit.SECONDS);
+        background.get(5, TimeUnit.SECONDS);
+
+        assertEquals("interactive", order.get(0));
+        assertEquals("background", order.get(1));
+    }
+
+    public void testMaxBackgroundDelay() throws Exception {
+        scheduler.close();
+        scheduler = new PriorityScheduler(levelDB, 1, 1, 50);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit(PriorityScheduler.Priority.INTERACTIVE, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                release.await();
+
+                return null;
+            }
+        });
+
+        Future<String> background = scheduler.submit(PriorityScheduler.Priority.BACKGROUND, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "done";
+            }
+        });
+
+        try {
+            assertEquals("done", background.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    public void testClose() throws Exception {
+        scheduler.close();
+
+        try {
+            scheduler.get("key".getBytes());
+
+            fail("Closed scheduler must reject tasks.");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
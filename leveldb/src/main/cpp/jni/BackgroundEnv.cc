@@ -0,0 +1,207 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/BackgroundEnv.h>
+
+#include <cerrno>
+#include <sys/resource.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+
+BackgroundEnv::~BackgroundEnv() {
+    std::unique_lock<std::mutex> lock(mutex_);
+
+    // Work handed to the target Env may still be running, or about to, and
+    // uses this object until its very end. LevelDB only waits for its own
+    // function to return.
+    idle_.wait(lock, [this] { return outstanding_ == 0; });
+
+    for (Work *work : parked_) {
+        delete work;
+    }
+}
+
+void BackgroundEnv::Schedule(void (*function)(void *), void *arg) {
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        outstanding_++;
+    }
+
+    target()->Schedule(&BackgroundEnv::RunScheduled, new Work{this, function, arg});
+}
+
+void BackgroundEnv::StartThread(void (*function)(void *), void *arg) {
+    target()->StartThread(&BackgroundEnv::RunThread, new Work{this, function, arg});
+}
+
+void BackgroundEnv::Pause() {
+    std::unique_lock<std::mutex> lock(mutex_);
+
+    paused_ = true;
+
+    idle_.wait(lock, [this] { return running_ == 0; });
+}
+
+void BackgroundEnv::Resume() {
+    std::vector<Work *> parked;
+
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        if (!paused_) {
+            return;
+        }
+
+        paused_ = false;
+
+        if (pins_ > 0) {
+            return;
+        }
+
+        parked.swap(parked_);
+        outstanding_ += (int) parked.size();
+    }
+
+    for (Work *work : parked) {
+        target()->Schedule(&BackgroundEnv::RunScheduled, work);
+    }
+}
+
+void BackgroundEnv::Pin() {
+    std::unique_lock<std::mutex> lock(mutex_);
+
+    pins_++;
+
+    idle_.wait(lock, [this] { return running_ == 0; });
+}
+
+void BackgroundEnv::Unpin() {
+    std::vector<Work *> parked;
+
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        pins_--;
+
+        if (pins_ > 0 || paused_) {
+            return;
+        }
+
+        parked.swap(parked_);
+        outstanding_ += (int) parked.size();
+    }
+
+    for (Work *work : parked) {
+        target()->Schedule(&BackgroundEnv::RunScheduled, work);
+    }
+}
+
+bool BackgroundEnv::IsPaused() {
+    std::lock_guard<std::mutex> lock(mutex_);
+
+    return paused_;
+}
+
+void BackgroundEnv::RunScheduled(void *arg) {
+    auto *work = (Work *) arg;
+    BackgroundEnv *self = work->env;
+
+    {
+        std::lock_guard<std::mutex> lock(self->mutex_);
+
+        if (self->paused_ || self->pins_ > 0) {
+            self->parked_.push_back(work);
+            self->outstanding_--;
+            self->idle_.notify_all();
+            return;
+        }
+
+        self->running_++;
+    }
+
+    int previous = 0;
+    self->SetNice(&previous);
+
+    work->function(work->arg);
+
+    self->RestoreNice(previous);
+
+    delete work;
+
+    // Once unlocked, the destructor may run, so self must not be used after.
+    std::lock_guard<std::mutex> lock(self->mutex_);
+
+    self->running_--;
+    self->outstanding_--;
+    self->idle_.notify_all();
+}
+
+void BackgroundEnv::RunThread(void *arg) {
+    auto *work = (Work *) arg;
+
+    // Dedicated threads are not shared, so the nice value is never restored.
+    int previous = 0;
+    work->env->SetNice(&previous);
+
+    work->function(work->arg);
+
+    delete work;
+}
+
+void BackgroundEnv::SetNice(int *previous) {
+    if (nice_ == 0) {
+        return;
+    }
+
+    // On Linux, and thus Android, the "process" priority of a thread id
+    // applies only to that thread.
+    auto tid = (id_t) syscall(SYS_gettid);
+
+    errno = 0;
+    *previous = getpriority(PRIO_PROCESS, tid);
+
+    if (errno != 0) {
+        *previous = 0;
+    }
+
+    setpriority(PRIO_PROCESS, tid, nice_);
+}
+
+void BackgroundEnv::RestoreNice(int previous) {
+    if (nice_ == 0) {
+        return;
+    }
+
+    setpriority(PRIO_PROCESS, (id_t) syscall(SYS_gettid), previous);
+}
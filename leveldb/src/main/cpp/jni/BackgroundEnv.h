@@ -0,0 +1,80 @@
+#ifndef LEVELDB_ANDROID_BACKGROUNDENV_H
+#define LEVELDB_ANDROID_BACKGROUNDENV_H
+
+#include <condition_variable>
+#include <mutex>
+#include <utility>
+#include <vector>
+
+#include <leveldb/env.h>
+
+// Wraps a leveldb::Env to control the background work (memtable flushes and
+// compactions) that LevelDB schedules on it.
+//
+// Scheduled work runs at the configured nice value, restoring the thread's
+// previous one afterwards since the default Env shares its background thread
+// between all open databases. While paused, work that reaches the background
+// thread is parked instead of run, and handed back to the target Env on
+// Resume(), so the shared thread is never blocked.
+//
+// Pins hold background work off like a pause, but only until the last pin is
+// removed, whatever Pause() and Resume() are called meanwhile.
+class BackgroundEnv : public leveldb::EnvWrapper {
+public:
+    // Does not take ownership of target. A nice value of 0 leaves the thread
+    // priority unchanged.
+    BackgroundEnv(leveldb::Env *target, int nice) : leveldb::EnvWrapper(target), nice_(nice), paused_(false),
+                                                   pins_(0), running_(0), outstanding_(0) {}
+
+    // Waits for all work handed to the target Env to return, and drops any
+    // work still parked.
+    ~BackgroundEnv() override;
+
+    void Schedule(void (*function)(void *arg), void *arg) override;
+
+    void StartThread(void (*function)(void *arg), void *arg) override;
+
+    // Stops background work from starting and waits for any that is running to
+    // finish.
+    void Pause();
+
+    // Lets background work run again, including any parked while paused.
+    void Resume();
+
+    bool IsPaused();
+
+    // Like Pause(), but counted, and not undone by Resume().
+    void Pin();
+
+    // Lets background work run again once all pins are removed, unless paused.
+    void Unpin();
+
+private:
+    struct Work {
+        BackgroundEnv *env;
+        void (*function)(void *arg);
+        void *arg;
+    };
+
+    static void RunScheduled(void *work);
+
+    static void RunThread(void *work);
+
+    void SetNice(int *previous);
+
+    void RestoreNice(int previous);
+
+    const int nice_;
+
+    std::mutex mutex_;
+    std::condition_variable idle_;
+
+    bool paused_;
+    int pins_;
+    int running_;
+    // Work handed to the target Env that has not returned yet.
+    int outstanding_;
+    std::vector<Work *> parked_;
+};
+
+#endif //LEVELDB_ANDROID_BACKGROUNDENV_H
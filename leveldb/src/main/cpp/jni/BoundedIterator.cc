@@ -0,0 +1,110 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/BoundedIterator.h>
+
+BoundedIterator::BoundedIterator(leveldb::Iterator *iterator, const std::string &prefix) : iterator_(iterator),
+                                                                                           prefix_(prefix),
+                                                                                           limit_(Successor(prefix)) {}
+
+BoundedIterator::~BoundedIterator() {
+    delete iterator_;
+}
+
+bool BoundedIterator::Valid() const {
+    return iterator_->Valid() && iterator_->key().starts_with(prefix_);
+}
+
+void BoundedIterator::SeekToFirst() {
+    iterator_->Seek(prefix_);
+}
+
+void BoundedIterator::SeekToLast() {
+    if (limit_.empty()) {
+        iterator_->SeekToLast();
+        return;
+    }
+
+    iterator_->Seek(limit_);
+
+    if (iterator_->Valid()) {
+        iterator_->Prev();
+    } else {
+        iterator_->SeekToLast();
+    }
+}
+
+void BoundedIterator::Seek(const leveldb::Slice &target) {
+    seekKey_.assign(prefix_);
+    seekKey_.append(target.data(), target.size());
+
+    iterator_->Seek(seekKey_);
+}
+
+void BoundedIterator::Next() {
+    iterator_->Next();
+}
+
+void BoundedIterator::Prev() {
+    iterator_->Prev();
+}
+
+leveldb::Slice BoundedIterator::key() const {
+    leveldb::Slice key = iterator_->key();
+
+    key.remove_prefix(prefix_.size());
+
+    return key;
+}
+
+leveldb::Slice BoundedIterator::value() const {
+    return iterator_->value();
+}
+
+leveldb::Status BoundedIterator::status() const {
+    return iterator_->status();
+}
+
+std::string BoundedIterator::Successor(const std::string &prefix) {
+    std::string successor(prefix);
+
+    while (!successor.empty() && (unsigned char) successor.back() == 0xff) {
+        successor.pop_back();
+    }
+
+    if (!successor.empty()) {
+        successor.back() = (char) ((unsigned char) successor.back() + 1);
+    }
+
+    return successor;
+}
@@ -0,0 +1,52 @@
+#ifndef LEVELDB_ANDROID_BOUNDEDITERATOR_H
+#define LEVELDB_ANDROID_BOUNDEDITERATOR_H
+
+#include <string>
+
+#include <leveldb/iterator.h>
+
+// Iterates only over the keys that start with a prefix, and hides the prefix:
+// keys are returned without it, and Seek() targets are relative to it. The
+// iterator is invalid as soon as the wrapped one leaves the prefix, so it never
+// crosses into neighbouring keys.
+//
+// Used for keyspaces, whose keys all start with the keyspace's prefix.
+class BoundedIterator : public leveldb::Iterator {
+public:
+    // Takes ownership of iterator.
+    BoundedIterator(leveldb::Iterator *iterator, const std::string &prefix);
+
+    ~BoundedIterator() override;
+
+    bool Valid() const override;
+
+    void SeekToFirst() override;
+
+    void SeekToLast() override;
+
+    void Seek(const leveldb::Slice &target) override;
+
+    void Next() override;
+
+    void Prev() override;
+
+    leveldb::Slice key() const override;
+
+    leveldb::Slice value() const override;
+
+    leveldb::Status status() const override;
+
+    // The first key after all keys that start with prefix, or an empty string
+    // if there is none (the prefix is empty or all 0xff bytes).
+    static std::string Successor(const std::string &prefix);
+
+private:
+    leveldb::Iterator *iterator_;
+
+    const std::string prefix_;
+    const std::string limit_;
+
+    std::string seekKey_;
+};
+
+#endif //LEVELDB_ANDROID_BOUNDEDITERATOR_H
@@ -0,0 +1,204 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/Checkpoint.h>
+
+#include <algorithm>
+#include <cstdlib>
+#include <memory>
+#include <unistd.h>
+#include <vector>
+
+namespace {
+
+const size_t kCopyBufferSize = 64 * 1024;
+
+bool StartsWith(const std::string &value, const std::string &prefix) {
+    return value.compare(0, prefix.size(), prefix) == 0;
+}
+
+bool EndsWith(const std::string &value, const std::string &suffix) {
+    return value.size() >= suffix.size() && value.compare(value.size() - suffix.size(), suffix.size(), suffix) == 0;
+}
+
+leveldb::Status CopyFile(leveldb::Env *env, const std::string &source, const std::string &target) {
+    leveldb::SequentialFile *in;
+    leveldb::Status status = env->NewSequentialFile(source, &in);
+
+    if (!status.ok()) {
+        return status;
+    }
+
+    std::unique_ptr<leveldb::SequentialFile> inOwner(in);
+
+    leveldb::WritableFile *out;
+    status = env->NewWritableFile(target, &out);
+
+    if (!status.ok()) {
+        return status;
+    }
+
+    std::unique_ptr<leveldb::WritableFile> outOwner(out);
+
+    std::unique_ptr<char[]> buffer(new char[kCopyBufferSize]);
+
+    while (true) {
+        leveldb::Slice data;
+        status = in->Read(kCopyBufferSize, &data, buffer.get());
+
+        if (!status.ok() || data.empty()) {
+            break;
+        }
+
+        status = out->Append(data);
+
+        if (!status.ok()) {
+            break;
+        }
+    }
+
+    if (status.ok()) {
+        status = out->Sync();
+    }
+
+    if (status.ok()) {
+        status = out->Close();
+    }
+
+    return status;
+}
+
+leveldb::Status LinkOrCopyFile(leveldb::Env *env, const std::string &source, const std::string &target) {
+    if (link(source.c_str(), target.c_str()) == 0) {
+        return leveldb::Status::OK();
+    }
+
+    return CopyFile(env, source, target);
+}
+
+leveldb::Status CopyValueLog(leveldb::Env *env, const std::string &source, const std::string &target) {
+    std::vector<std::string> children;
+
+    if (!env->GetChildren(source, &children).ok()) {
+        // No value log.
+        return leveldb::Status::OK();
+    }
+
+    std::vector<std::string> files;
+
+    for (const std::string &child : children) {
+        if (EndsWith(child, ".vlog")) {
+            files.push_back(child);
+        }
+    }
+
+    if (files.empty()) {
+        return leveldb::Status::OK();
+    }
+
+    leveldb::Status status = env->CreateDir(target);
+
+    if (!status.ok()) {
+        return status;
+    }
+
+    // Names are zero-padded file numbers, and the last one is still appended to.
+    std::sort(files.begin(), files.end());
+
+    for (size_t i = 0; i < files.size() && status.ok(); i++) {
+        const std::string from = source + "/" + files[i];
+        const std::string to = target + "/" + files[i];
+
+        status = i + 1 < files.size() ? LinkOrCopyFile(env, from, to) : CopyFile(env, from, to);
+    }
+
+    return status;
+}
+
+}  // namespace
+
+leveldb::Status CreateCheckpoint(leveldb::Env *env, const std::string &dbPath, const std::string &targetPath) {
+    if (env->FileExists(targetPath)) {
+        return leveldb::Status::InvalidArgument(targetPath, "already exists");
+    }
+
+    leveldb::Status status = env->CreateDir(targetPath);
+
+    if (!status.ok()) {
+        return status;
+    }
+
+    std::vector<std::string> children;
+    status = env->GetChildren(dbPath, &children);
+
+    if (!status.ok()) {
+        return status;
+    }
+
+    bool hasCurrent = false;
+
+    for (const std::string &child : children) {
+        const std::string source = dbPath + "/" + child;
+        const std::string target = targetPath + "/" + child;
+
+        if (EndsWith(child, ".ldb") || EndsWith(child, ".sst")) {
+            status = LinkOrCopyFile(env, source, target);
+        } else if (StartsWith(child, "MANIFEST-") || EndsWith(child, ".log") || child == "EXPIRING") {
+            status = CopyFile(env, source, target);
+        } else if (child == "CURRENT") {
+            hasCurrent = true;
+        }
+
+        // LOCK, the info logs and temporary files are not needed.
+
+        if (!status.ok()) {
+            return status;
+        }
+    }
+
+    if (!hasCurrent) {
+        return leveldb::Status::Corruption(dbPath, "CURRENT file missing");
+    }
+
+    // Without CURRENT the copy can't be opened, so a failed checkpoint is never
+    // mistaken for a complete one.
+    status = CopyFile(env, dbPath + "/CURRENT", targetPath + "/CURRENT");
+
+    if (!status.ok()) {
+        return status;
+    }
+
+    // Values are appended to the value log before the pointers to them are
+    // written, so copying it last covers every pointer in the copied logs.
+    return CopyValueLog(env, dbPath + "/vlog", targetPath + "/vlog");
+}
@@ -0,0 +1,24 @@
+#ifndef LEVELDB_ANDROID_CHECKPOINT_H
+#define LEVELDB_ANDROID_CHECKPOINT_H
+
+#include <string>
+
+#include <leveldb/env.h>
+#include <leveldb/status.h>
+
+// Creates an openable copy of the database at dbPath in targetPath, which must
+// not exist yet. Table files are immutable and are hard-linked, falling back to
+// copying where linking fails (e.g. across file systems). The manifest, log and
+// CURRENT files, and the EXPIRING marker of databases with expiring entries, are
+// copied, CURRENT last.
+//
+// Background work must be kept from running meanwhile, as compactions replace
+// table files and rewrite the manifest. Writes may continue: a log file that is
+// being appended to is copied up to some record, and recovery ignores a torn
+// record at its end.
+//
+// The database's value log, if any, is copied in the same way after the
+// database files, with every file but the active one linked.
+leveldb::Status CreateCheckpoint(leveldb::Env *env, const std::string &dbPath, const std::string &targetPath);
+
+#endif //LEVELDB_ANDROID_CHECKPOINT_H
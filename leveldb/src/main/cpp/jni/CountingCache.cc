@@ -0,0 +1,111 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/CountingCache.h>
+
+CountingCache::CountingCache(leveldb::Cache *target, size_t capacity) : target_(target), capacity_(capacity),
+                                                                        closing_(false) {
+    for (auto &counter : counters_) {
+        counter.store(0, std::memory_order_relaxed);
+    }
+}
+
+CountingCache::~CountingCache() {
+    closing_ = true;
+
+    delete target_;
+}
+
+void CountingCache::DeleteEntry(const leveldb::Slice &key, void *value) {
+    auto *entry = (Entry *) value;
+
+    if (!entry->owner->closing_) {
+        entry->owner->Count(kEvictions, 1);
+        entry->owner->Count(kEvictedBytes, entry->charge);
+    }
+
+    entry->deleter(key, entry->value);
+
+    delete entry;
+}
+
+leveldb::Cache::Handle *CountingCache::Insert(const leveldb::Slice &key, void *value, size_t charge,
+                                              void (*deleter)(const leveldb::Slice &key, void *value)) {
+    auto *entry = new Entry();
+
+    entry->value = value;
+    entry->charge = charge;
+    entry->deleter = deleter;
+    entry->owner = this;
+
+    Count(kInserts, 1);
+    Count(kInsertedBytes, charge);
+
+    return target_->Insert(key, entry, charge, &CountingCache::DeleteEntry);
+}
+
+leveldb::Cache::Handle *CountingCache::Lookup(const leveldb::Slice &key) {
+    Handle *handle = target_->Lookup(key);
+
+    Count(kLookups, 1);
+
+    if (handle != nullptr) {
+        Count(kHits, 1);
+    }
+
+    return handle;
+}
+
+void CountingCache::Release(Handle *handle) {
+    target_->Release(handle);
+}
+
+void *CountingCache::Value(Handle *handle) {
+    return ((Entry *) target_->Value(handle))->value;
+}
+
+void CountingCache::Erase(const leveldb::Slice &key) {
+    target_->Erase(key);
+}
+
+uint64_t CountingCache::NewId() {
+    return target_->NewId();
+}
+
+void CountingCache::Prune() {
+    target_->Prune();
+}
+
+size_t CountingCache::TotalCharge() const {
+    return target_->TotalCharge();
+}
@@ -0,0 +1,76 @@
+#ifndef LEVELDB_ANDROID_COUNTINGCACHE_H
+#define LEVELDB_ANDROID_COUNTINGCACHE_H
+
+#include <atomic>
+#include <cstdint>
+
+#include <leveldb/cache.h>
+
+// Wraps a leveldb::Cache and counts lookups, hits, inserts and evictions so
+// that the hit ratio of the block cache can be observed from Java.
+class CountingCache : public leveldb::Cache {
+public:
+    // Order matches the layout of the long[] returned to
+    // com.github.hf.leveldb.implementation.NativeLevelDB#nativeCacheStats.
+    enum Stat {
+        kLookups = 0,
+        kHits,
+        kInserts,
+        kInsertedBytes,
+        kEvictions,
+        kEvictedBytes,
+        kStatCount
+    };
+
+    // Takes ownership of target.
+    CountingCache(leveldb::Cache *target, size_t capacity);
+
+    ~CountingCache() override;
+
+    Handle *Insert(const leveldb::Slice &key, void *value, size_t charge,
+                   void (*deleter)(const leveldb::Slice &key, void *value)) override;
+
+    Handle *Lookup(const leveldb::Slice &key) override;
+
+    void Release(Handle *handle) override;
+
+    void *Value(Handle *handle) override;
+
+    void Erase(const leveldb::Slice &key) override;
+
+    uint64_t NewId() override;
+
+    void Prune() override;
+
+    size_t TotalCharge() const override;
+
+    size_t Capacity() const { return capacity_; }
+
+    uint64_t Get(Stat stat) const { return counters_[stat].load(std::memory_order_relaxed); }
+
+private:
+    // Stored in the target cache in place of the caller's value, so that
+    // evictions can be observed through the deleter.
+    struct Entry {
+        void *value;
+        size_t charge;
+
+        void (*deleter)(const leveldb::Slice &key, void *value);
+
+        CountingCache *owner;
+    };
+
+    static void DeleteEntry(const leveldb::Slice &key, void *value);
+
+    void Count(Stat stat, uint64_t n) { counters_[stat].fetch_add(n, std::memory_order_relaxed); }
+
+    leveldb::Cache *target_;
+    size_t capacity_;
+
+    // Set while the target is being destroyed, entries deleted then are not evictions.
+    bool closing_;
+
+    std::atomic<uint64_t> counters_[kStatCount];
+};
+
+#endif //LEVELDB_ANDROID_COUNTINGCACHE_H
@@ -0,0 +1,227 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/CountingEnv.h>
+
+#include <chrono>
+#include <cstring>
+
+namespace {
+
+class Stopwatch {
+public:
+    Stopwatch() : start_(std::chrono::steady_clock::now()) {}
+
+    uint64_t ElapsedMicros() const {
+        return (uint64_t) std::chrono::duration_cast<std::chrono::microseconds>(
+                std::chrono::steady_clock::now() - start_).count();
+    }
+
+private:
+    std::chrono::steady_clock::time_point start_;
+};
+
+class CountingSequentialFile : public leveldb::SequentialFile {
+public:
+    CountingSequentialFile(leveldb::SequentialFile *target, CountingEnv::Counters *counters) : target_(target),
+                                                                                            counters_(counters) {}
+
+    ~CountingSequentialFile() override {
+        delete target_;
+    }
+
+    leveldb::Status Read(size_t n, leveldb::Slice *result, char *scratch) override {
+        Stopwatch stopwatch;
+
+        leveldb::Status status = target_->Read(n, result, scratch);
+
+        counters_->Add(CountingEnv::kReadMicros, stopwatch.ElapsedMicros());
+        counters_->Add(CountingEnv::kReadOps, 1);
+        counters_->Add(CountingEnv::kReadBytes, result->size());
+
+        return status;
+    }
+
+    leveldb::Status Skip(uint64_t n) override {
+        return target_->Skip(n);
+    }
+
+private:
+    leveldb::SequentialFile *target_;
+    CountingEnv::Counters *counters_;
+};
+
+class CountingRandomAccessFile : public leveldb::RandomAccessFile {
+public:
+    CountingRandomAccessFile(leveldb::RandomAccessFile *target, CountingEnv::Counters *counters) : target_(target),
+                                                                                                counters_(counters) {}
+
+    ~CountingRandomAccessFile() override {
+        delete target_;
+    }
+
+    leveldb::Status Read(uint64_t offset, size_t n, leveldb::Slice *result, char *scratch) const override {
+        Stopwatch stopwatch;
+
+        leveldb::Status status = target_->Read(offset, n, result, scratch);
+
+        counters_->Add(CountingEnv::kReadMicros, stopwatch.ElapsedMicros());
+        counters_->Add(CountingEnv::kReadOps, 1);
+        counters_->Add(CountingEnv::kReadBytes, result->size());
+
+        return status;
+    }
+
+private:
+    leveldb::RandomAccessFile *target_;
+    CountingEnv::Counters *counters_;
+};
+
+class CountingWritableFile : public leveldb::WritableFile {
+public:
+    CountingWritableFile(leveldb::WritableFile *target, CountingEnv::Counters *counters) : target_(target),
+                                                                                        counters_(counters) {}
+
+    ~CountingWritableFile() override {
+        delete target_;
+    }
+
+    leveldb::Status Append(const leveldb::Slice &data) override {
+        Stopwatch stopwatch;
+
+        leveldb::Status status = target_->Append(data);
+
+        counters_->Add(CountingEnv::kWriteMicros, stopwatch.ElapsedMicros());
+        counters_->Add(CountingEnv::kWriteOps, 1);
+        counters_->Add(CountingEnv::kWriteBytes, data.size());
+
+        return status;
+    }
+
+    leveldb::Status Close() override {
+        return target_->Close();
+    }
+
+    // Appends are buffered by the default Env, so flushing is where the data reaches the kernel.
+    leveldb::Status Flush() override {
+        Stopwatch stopwatch;
+
+        leveldb::Status status = target_->Flush();
+
+        counters_->Add(CountingEnv::kWriteMicros, stopwatch.ElapsedMicros());
+
+        return status;
+    }
+
+    leveldb::Status Sync() override {
+        Stopwatch stopwatch;
+
+        leveldb::Status status = target_->Sync();
+
+        counters_->Add(CountingEnv::kSyncMicros, stopwatch.ElapsedMicros());
+        counters_->Add(CountingEnv::kSyncOps, 1);
+
+        return status;
+    }
+
+private:
+    leveldb::WritableFile *target_;
+    CountingEnv::Counters *counters_;
+};
+
+bool EndsWith(const std::string &value, const char *suffix) {
+    size_t length = strlen(suffix);
+
+    return value.size() >= length && value.compare(value.size() - length, length, suffix) == 0;
+}
+
+} // namespace
+
+CountingEnv::FileType CountingEnv::TypeOf(const std::string &fname) {
+    size_t slash = fname.rfind('/');
+    std::string base = slash == std::string::npos ? fname : fname.substr(slash + 1);
+
+    if (EndsWith(base, ".log")) {
+        return kLogFile;
+    }
+
+    if (EndsWith(base, ".ldb") || EndsWith(base, ".sst")) {
+        return kTableFile;
+    }
+
+    if (base.compare(0, 9, "MANIFEST-") == 0) {
+        return kManifestFile;
+    }
+
+    return kOtherFile;
+}
+
+leveldb::Status CountingEnv::NewSequentialFile(const std::string &fname, leveldb::SequentialFile **result) {
+    leveldb::Status status = target()->NewSequentialFile(fname, result);
+
+    if (status.ok()) {
+        *result = new CountingSequentialFile(*result, &counters_[TypeOf(fname)]);
+    }
+
+    return status;
+}
+
+leveldb::Status CountingEnv::NewRandomAccessFile(const std::string &fname, leveldb::RandomAccessFile **result) {
+    leveldb::Status status = target()->NewRandomAccessFile(fname, result);
+
+    if (status.ok()) {
+        *result = new CountingRandomAccessFile(*result, &counters_[TypeOf(fname)]);
+    }
+
+    return status;
+}
+
+leveldb::Status CountingEnv::NewWritableFile(const std::string &fname, leveldb::WritableFile **result) {
+    leveldb::Status status = target()->NewWritableFile(fname, result);
+
+    if (status.ok()) {
+        *result = new CountingWritableFile(*result, &counters_[TypeOf(fname)]);
+    }
+
+    return status;
+}
+
+leveldb::Status CountingEnv::NewAppendableFile(const std::string &fname, leveldb::WritableFile **result) {
+    leveldb::Status status = target()->NewAppendableFile(fname, result);
+
+    if (status.ok()) {
+        *result = new CountingWritableFile(*result, &counters_[TypeOf(fname)]);
+    }
+
+    return status;
+}
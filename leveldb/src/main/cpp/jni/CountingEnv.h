@@ -0,0 +1,74 @@
+#ifndef LEVELDB_ANDROID_COUNTINGENV_H
+#define LEVELDB_ANDROID_COUNTINGENV_H
+
+#include <atomic>
+#include <cstdint>
+#include <string>
+
+#include <leveldb/env.h>
+
+// Wraps a leveldb::Env and counts operations, bytes and time spent reading,
+// appending to and syncing files, broken down by the type of the file.
+class CountingEnv : public leveldb::EnvWrapper {
+public:
+    // Order matches com.github.hf.leveldb.IOStats.FileType.
+    enum FileType {
+        kLogFile = 0,
+        kTableFile,
+        kManifestFile,
+        kOtherFile,
+        kFileTypeCount
+    };
+
+    // Order matches the layout of the long[] returned to
+    // com.github.hf.leveldb.implementation.NativeLevelDB#nativeIOStats.
+    enum Stat {
+        kReadOps = 0,
+        kReadBytes,
+        kReadMicros,
+        kWriteOps,
+        kWriteBytes,
+        kWriteMicros,
+        kSyncOps,
+        kSyncMicros,
+        kStatCount
+    };
+
+    class Counters {
+    public:
+        Counters() {
+            for (auto &counter : counters_) {
+                counter.store(0, std::memory_order_relaxed);
+            }
+        }
+
+        void Add(Stat stat, uint64_t n) { counters_[stat].fetch_add(n, std::memory_order_relaxed); }
+
+        uint64_t Get(Stat stat) const { return counters_[stat].load(std::memory_order_relaxed); }
+
+    private:
+        std::atomic<uint64_t> counters_[kStatCount];
+    };
+
+    // Does not take ownership of target.
+    explicit CountingEnv(leveldb::Env *target) : leveldb::EnvWrapper(target) {}
+
+    ~CountingEnv() override = default;
+
+    leveldb::Status NewSequentialFile(const std::string &fname, leveldb::SequentialFile **result) override;
+
+    leveldb::Status NewRandomAccessFile(const std::string &fname, leveldb::RandomAccessFile **result) override;
+
+    leveldb::Status NewWritableFile(const std::string &fname, leveldb::WritableFile **result) override;
+
+    leveldb::Status NewAppendableFile(const std::string &fname, leveldb::WritableFile **result) override;
+
+    uint64_t Get(FileType type, Stat stat) const { return counters_[type].Get(stat); }
+
+    static FileType TypeOf(const std::string &fname);
+
+private:
+    Counters counters_[kFileTypeCount];
+};
+
+#endif //LEVELDB_ANDROID_COUNTINGENV_H
@@ -0,0 +1,127 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/EventQueue.h>
+
+#include <chrono>
+#include <cstdio>
+#include <cstring>
+
+namespace {
+
+bool StartsWith(const char *message, const char *prefix) {
+    return strncmp(message, prefix, strlen(prefix)) == 0;
+}
+
+int64_t NowMillis() {
+    return (int64_t) std::chrono::duration_cast<std::chrono::milliseconds>(
+            std::chrono::system_clock::now().time_since_epoch()).count();
+}
+
+}  // namespace
+
+void EventQueue::OnLogMessage(const char *message) {
+    Event event{-1, NowMillis(), -1, -1};
+
+    int inputs0, level0, inputs1, level1;
+    unsigned long long number;
+    long long bytes;
+
+    // These are the messages of LevelDB's DBImpl, which writes them to
+    // Options::info_log.
+    if (StartsWith(message, "Current memtable full; waiting")) {
+        event.type = kMemtableStall;
+    } else if (StartsWith(message, "Too many L0 files; waiting")) {
+        event.type = kLevel0Stall;
+        event.level = 0;
+    } else if (sscanf(message, "Level-0 table #%llu: %lld bytes", &number, &bytes) == 2) {
+        event.type = kFlushFinished;
+        event.level = 0;
+        event.bytes = bytes;
+    } else if (StartsWith(message, "Level-0 table #") && strstr(message, ": started") != nullptr) {
+        event.type = kFlushStarted;
+        event.level = 0;
+    } else if (sscanf(message, "Compacting %d@%d + %d@%d files", &inputs0, &level0, &inputs1, &level1) == 4) {
+        event.type = kCompactionStarted;
+        event.level = level0;
+    } else if (sscanf(message, "Compacted %d@%d + %d@%d files => %lld bytes", &inputs0, &level0, &inputs1, &level1,
+                      &bytes) == 5) {
+        event.type = kCompactionFinished;
+        event.level = level0;
+        event.bytes = bytes;
+    } else {
+        return;
+    }
+
+    Push(event);
+}
+
+void EventQueue::Push(const Event &event) {
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        if (events_.size() >= capacity_) {
+            events_.pop_front();
+        }
+
+        events_.push_back(event);
+    }
+
+    available_.notify_one();
+}
+
+void EventQueue::Poll(int timeoutMillis, std::vector<Event> *result) {
+    enabled_.store(true, std::memory_order_relaxed);
+
+    std::unique_lock<std::mutex> lock(mutex_);
+
+    available_.wait_for(lock, std::chrono::milliseconds(timeoutMillis),
+                        [this] { return interrupted_ || !events_.empty(); });
+
+    if (interrupted_) {
+        return;
+    }
+
+    result->assign(events_.begin(), events_.end());
+    events_.clear();
+}
+
+void EventQueue::Interrupt() {
+    {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        interrupted_ = true;
+    }
+
+    available_.notify_all();
+}
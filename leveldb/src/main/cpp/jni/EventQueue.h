@@ -0,0 +1,66 @@
+#ifndef LEVELDB_ANDROID_EVENTQUEUE_H
+#define LEVELDB_ANDROID_EVENTQUEUE_H
+
+#include <atomic>
+#include <condition_variable>
+#include <cstdint>
+#include <deque>
+#include <mutex>
+#include <vector>
+
+// Bounded queue of database events, recognized from the messages LevelDB
+// writes to its info log, for delivery to Java listeners.
+class EventQueue {
+public:
+    // Order matches com.github.hf.leveldb.DbEvent.Type.
+    enum Type {
+        kMemtableStall = 0,
+        kLevel0Stall,
+        kFlushStarted,
+        kFlushFinished,
+        kCompactionStarted,
+        kCompactionFinished
+    };
+
+    struct Event {
+        int64_t type;
+        int64_t timeMillis;
+        int64_t level;
+        int64_t bytes;
+    };
+
+    // Number of jlongs per event in the array returned to
+    // com.github.hf.leveldb.implementation.NativeLevelDB#nativePollEvents.
+    static const int kEventFields = 4;
+
+    explicit EventQueue(size_t capacity) : capacity_(capacity), enabled_(false), interrupted_(false) {}
+
+    // Events are only recognized once someone polls for them, to keep
+    // formatting log messages off the write path otherwise.
+    bool IsEnabled() const { return enabled_.load(std::memory_order_relaxed); }
+
+    // Recognizes an event in a formatted log message and queues it, dropping
+    // the oldest event if the queue is full.
+    void OnLogMessage(const char *message);
+
+    // Waits up to timeoutMillis for events and moves them into result.
+    void Poll(int timeoutMillis, std::vector<Event> *result);
+
+    // Wakes up and fails all current and future polls.
+    void Interrupt();
+
+private:
+    void Push(const Event &event);
+
+    const size_t capacity_;
+
+    std::atomic<bool> enabled_;
+
+    std::mutex mutex_;
+    std::condition_variable available_;
+
+    bool interrupted_;
+    std::deque<Event> events_;
+};
+
+#endif //LEVELDB_ANDROID_EVENTQUEUE_H
@@ -0,0 +1,125 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/ExpiringIterator.h>
+
+#include <algorithm>
+#include <chrono>
+
+const size_t ExpiringIterator::kHeaderSize;
+
+ExpiringIterator::ExpiringIterator(leveldb::Iterator *iterator, uint64_t now) : iterator_(iterator), now_(now) {}
+
+ExpiringIterator::~ExpiringIterator() {
+    delete iterator_;
+}
+
+bool ExpiringIterator::Valid() const {
+    return iterator_->Valid();
+}
+
+void ExpiringIterator::SeekToFirst() {
+    iterator_->SeekToFirst();
+    SkipExpiredForward();
+}
+
+void ExpiringIterator::SeekToLast() {
+    iterator_->SeekToLast();
+    SkipExpiredBackward();
+}
+
+void ExpiringIterator::Seek(const leveldb::Slice &target) {
+    iterator_->Seek(target);
+    SkipExpiredForward();
+}
+
+void ExpiringIterator::Next() {
+    iterator_->Next();
+    SkipExpiredForward();
+}
+
+void ExpiringIterator::Prev() {
+    iterator_->Prev();
+    SkipExpiredBackward();
+}
+
+leveldb::Slice ExpiringIterator::key() const {
+    return iterator_->key();
+}
+
+leveldb::Slice ExpiringIterator::value() const {
+    return StripHeader(iterator_->value());
+}
+
+leveldb::Status ExpiringIterator::status() const {
+    return iterator_->status();
+}
+
+uint64_t ExpiringIterator::NowMillis() {
+    return (uint64_t) std::chrono::duration_cast<std::chrono::milliseconds>(
+            std::chrono::system_clock::now().time_since_epoch()).count();
+}
+
+bool ExpiringIterator::IsExpired(const leveldb::Slice &stored, uint64_t now) {
+    if (stored.size() < kHeaderSize) {
+        return false;
+    }
+
+    uint64_t expiresAt = 0;
+
+    for (size_t i = 0; i < kHeaderSize; i++) {
+        expiresAt = (expiresAt << 8) | (unsigned char) stored[i];
+    }
+
+    return expiresAt != 0 && expiresAt <= now;
+}
+
+leveldb::Slice ExpiringIterator::StripHeader(const leveldb::Slice &stored) {
+    leveldb::Slice value(stored);
+
+    value.remove_prefix(std::min(value.size(), kHeaderSize));
+
+    return value;
+}
+
+void ExpiringIterator::SkipExpiredForward() {
+    while (iterator_->Valid() && IsExpired(iterator_->value(), now_)) {
+        iterator_->Next();
+    }
+}
+
+void ExpiringIterator::SkipExpiredBackward() {
+    while (iterator_->Valid() && IsExpired(iterator_->value(), now_)) {
+        iterator_->Prev();
+    }
+}
@@ -0,0 +1,62 @@
+#ifndef LEVELDB_ANDROID_EXPIRINGITERATOR_H
+#define LEVELDB_ANDROID_EXPIRINGITERATOR_H
+
+#include <cstdint>
+
+#include <leveldb/iterator.h>
+
+// Values of databases with expiring entries start with a header: the time at
+// which the entry expires, in milliseconds since the epoch as a big-endian
+// 64-bit integer, or 0 if it never expires. The header is written in Java, and
+// stripped and checked here.
+//
+// This iterator skips expired entries, as of the time it was created, and
+// returns values without the header.
+class ExpiringIterator : public leveldb::Iterator {
+public:
+    static const size_t kHeaderSize = 8;
+
+    // Takes ownership of iterator.
+    ExpiringIterator(leveldb::Iterator *iterator, uint64_t now);
+
+    ~ExpiringIterator() override;
+
+    bool Valid() const override;
+
+    void SeekToFirst() override;
+
+    void SeekToLast() override;
+
+    void Seek(const leveldb::Slice &target) override;
+
+    void Next() override;
+
+    void Prev() override;
+
+    leveldb::Slice key() const override;
+
+    leveldb::Slice value() const override;
+
+    leveldb::Status status() const override;
+
+    // Milliseconds since the epoch, the same clock as System.currentTimeMillis().
+    static uint64_t NowMillis();
+
+    // Whether the stored value has expired at now. Values without a complete
+    // header never expire.
+    static bool IsExpired(const leveldb::Slice &stored, uint64_t now);
+
+    // The value without its header.
+    static leveldb::Slice StripHeader(const leveldb::Slice &stored);
+
+private:
+    void SkipExpiredForward();
+
+    void SkipExpiredBackward();
+
+    leveldb::Iterator *iterator_;
+
+    const uint64_t now_;
+};
+
+#endif //LEVELDB_ANDROID_EXPIRINGITERATOR_H
@@ -8,27 +8,96 @@
 #include <leveldb/env.h>
 #include <leveldb/db.h>
 
+#include <cstdio>
+#include <cstring>
+#include <mutex>
+#include <string>
+
 #include <android/log.h>
 
-// Redirects leveldb's logging to the Android logger.
+#include <jni/BackgroundEnv.h>
+#include <jni/CountingCache.h>
+#include <jni/CountingEnv.h>
+#include <jni/EventQueue.h>
+
+// Redirects leveldb's logging to the Android logger, and feeds the messages
+// to the event queue.
+//
+// Writers log the stall messages right before they block on background work,
+// so paused background work is resumed when they show up.
 class AndroidLogger : public leveldb::Logger {
 public:
+    AndroidLogger(BackgroundEnv *lbackgroundEnv, EventQueue *levents) : backgroundEnv(lbackgroundEnv),
+                                                                       events(levents) {}
+
     void Logv(const char *format, va_list ap) override {
+        if (backgroundEnv != nullptr && IsWriteStall(format)) {
+            backgroundEnv->Resume();
+        }
+
+        if (events != nullptr && events->IsEnabled()) {
+            char message[256];
+
+            va_list copy;
+            va_copy(copy, ap);
+            vsnprintf(message, sizeof(message), format, copy);
+            va_end(copy);
+
+            events->OnLogMessage(message);
+        }
+
         __android_log_vprint(ANDROID_LOG_INFO, "com.github.hf.leveldb:N", format, ap);
     }
+
+private:
+    static bool IsWriteStall(const char *format) {
+        return strncmp(format, "Current memtable full; waiting", 30) == 0 ||
+               strncmp(format, "Too many L0 files; waiting", 26) == 0;
+    }
+
+    BackgroundEnv *backgroundEnv;
+    EventQueue *events;
 };
 
+// Number of locks that read-modify-writes of different keys are spread over.
+static const int kKeyLockStripes = 64;
+
 // Holds references to heap-allocated native objects so that they can be
 // closed in Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeClose.
 class NDBHolder {
 public:
-    NDBHolder(leveldb::DB *ldb, AndroidLogger *llogger, leveldb::Cache *lcache) : db(ldb), logger(llogger),
-                                                                                  cache(lcache) {}
+    NDBHolder(leveldb::DB *ldb, AndroidLogger *llogger, CountingCache *lcache, CountingEnv *lcountingEnv,
+              BackgroundEnv *lbackgroundEnv, EventQueue *levents, const std::string &lpath,
+              bool lexpiring) : db(ldb),
+                                logger(llogger),
+                                cache(lcache),
+                                countingEnv(lcountingEnv),
+                                backgroundEnv(lbackgroundEnv),
+                                events(levents),
+                                path(lpath),
+                                expiring(lexpiring) {}
 
     leveldb::DB *db;
     AndroidLogger *logger;
 
-    leveldb::Cache *cache;
+    CountingCache *cache;
+
+    // May be null, if I/O statistics are not collected.
+    CountingEnv *countingEnv;
+
+    BackgroundEnv *backgroundEnv;
+
+    EventQueue *events;
+
+    // The path the database was opened with.
+    std::string path;
+
+    // Whether values start with an expiry header, see ExpiringIterator.
+    bool expiring;
+
+    // Serialize read-modify-writes (merges, compare-and-set) of keys that hash
+    // to the same stripe.
+    std::mutex keyLocks[kKeyLockStripes];
 };
 
 // Throws the appropriate Java exception for the given status. Make sure you
@@ -0,0 +1,165 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/MergeOperators.h>
+
+#include <cstdint>
+#include <limits>
+#include <mutex>
+#include <utility>
+#include <vector>
+
+namespace {
+
+const size_t kInt64Size = 8;
+
+bool DecodeInt64(const leveldb::Slice &value, int64_t *result) {
+    if (value.size() != kInt64Size) {
+        return false;
+    }
+
+    uint64_t decoded = 0;
+
+    for (size_t i = 0; i < kInt64Size; i++) {
+        decoded = (decoded << 8) | (unsigned char) value[i];
+    }
+
+    *result = (int64_t) decoded;
+
+    return true;
+}
+
+void EncodeInt64(int64_t value, std::string *result) {
+    result->resize(kInt64Size);
+
+    auto encoded = (uint64_t) value;
+
+    for (int i = (int) kInt64Size - 1; i >= 0; i--) {
+        (*result)[i] = (char) (encoded & 0xff);
+        encoded >>= 8;
+    }
+}
+
+bool Add(const leveldb::Slice *existing, const leveldb::Slice &operand, std::string *result) {
+    int64_t current = 0;
+    int64_t delta;
+
+    if ((existing != nullptr && !DecodeInt64(*existing, &current)) || !DecodeInt64(operand, &delta)) {
+        return false;
+    }
+
+    // Wraps around like Java's long arithmetic, instead of overflowing.
+    EncodeInt64((int64_t) ((uint64_t) current + (uint64_t) delta), result);
+
+    return true;
+}
+
+bool Max(const leveldb::Slice *existing, const leveldb::Slice &operand, std::string *result) {
+    int64_t current = std::numeric_limits<int64_t>::min();
+    int64_t candidate;
+
+    if ((existing != nullptr && !DecodeInt64(*existing, &current)) || !DecodeInt64(operand, &candidate)) {
+        return false;
+    }
+
+    EncodeInt64(candidate > current ? candidate : current, result);
+
+    return true;
+}
+
+bool Append(const leveldb::Slice *existing, const leveldb::Slice &operand, std::string *result) {
+    if (existing != nullptr) {
+        result->assign(existing->data(), existing->size());
+    } else {
+        result->clear();
+    }
+
+    result->append(operand.data(), operand.size());
+
+    return true;
+}
+
+std::mutex registryMutex;
+
+// Only ever grows, so IDs stay valid.
+std::vector<std::pair<std::string, MergeFunction>> *registry = nullptr;
+
+std::vector<std::pair<std::string, MergeFunction>> &Registry() {
+    if (registry == nullptr) {
+        registry = new std::vector<std::pair<std::string, MergeFunction>>();
+
+        registry->push_back(std::make_pair(std::string("add"), &Add));
+        registry->push_back(std::make_pair(std::string("max"), &Max));
+        registry->push_back(std::make_pair(std::string("append"), &Append));
+    }
+
+    return *registry;
+}
+
+}  // namespace
+
+bool RegisterMergeOperator(const std::string &name, MergeFunction function) {
+    std::lock_guard<std::mutex> guard(registryMutex);
+
+    std::vector<std::pair<std::string, MergeFunction>> &operators = Registry();
+
+    for (const auto &entry : operators) {
+        if (entry.first == name) {
+            return false;
+        }
+    }
+
+    operators.push_back(std::make_pair(name, function));
+
+    return true;
+}
+
+int FindMergeOperator(const std::string &name) {
+    std::lock_guard<std::mutex> guard(registryMutex);
+
+    std::vector<std::pair<std::string, MergeFunction>> &operators = Registry();
+
+    for (size_t i = 0; i < operators.size(); i++) {
+        if (operators[i].first == name) {
+            return (int) i;
+        }
+    }
+
+    return -1;
+}
+
+MergeFunction GetMergeOperator(int id) {
+    std::lock_guard<std::mutex> guard(registryMutex);
+
+    return Registry()[id].second;
+}
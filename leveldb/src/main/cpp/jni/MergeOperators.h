@@ -0,0 +1,27 @@
+#ifndef LEVELDB_ANDROID_MERGEOPERATORS_H
+#define LEVELDB_ANDROID_MERGEOPERATORS_H
+
+#include <string>
+
+#include <leveldb/slice.h>
+
+// Computes the new value of a key from its current value, or null if the key
+// does not exist, and an operand. Returns false if the value or operand can't
+// be merged, leaving the key unchanged.
+typedef bool (*MergeFunction)(const leveldb::Slice *existing, const leveldb::Slice &operand, std::string *result);
+
+// Registers a merge operator under a name, which Java code passes to
+// LevelDB#merge(). Native libraries loaded into the same process can register
+// their own operators, e.g. in JNI_OnLoad. Returns false if the name is taken.
+//
+// Built in are "add" and "max", on 8-byte big-endian signed integers where a
+// missing key counts as 0 and the minimum respectively, and "append".
+bool RegisterMergeOperator(const std::string &name, MergeFunction function);
+
+// The ID of the operator with the name, or -1 if there is none.
+int FindMergeOperator(const std::string &name);
+
+// The operator with the ID, which must have been returned by FindMergeOperator.
+MergeFunction GetMergeOperator(int id);
+
+#endif //LEVELDB_ANDROID_MERGEOPERATORS_H
@@ -33,39 +33,159 @@
 
 #include <jni/NativeLevelDB.h>
 #include <jni/LevelDBHelper.h>
-
+#include <jni/Checkpoint.h>
+#include <jni/BoundedIterator.h>
+#include <jni/ExpiringIterator.h>
+#include <jni/MergeOperators.h>
+#include <jni/SegmentedLRUCache.h>
+
+#include <algorithm>
+#include <cstdlib>
 #include <iostream>
+#include <memory>
+#include <vector>
 #include <leveldb/db.h>
 #include <leveldb/write_batch.h>
 #include <leveldb/env.h>
 #include <leveldb/cache.h>
 
+// LevelDB starts slowing down writes at this many level-0 files
+// (config::kL0_SlowdownWritesTrigger, which is not part of the public headers).
+static const int kResumeLevel0Files = 8;
+
+// Deletes per batch when deleting a range.
+static const int kDeleteRangeBatchSize = 1000;
+
+// Reads a value, treating expired entries as missing and stripping the expiry
+// header in databases with expiring entries.
+static leveldb::Status getValue(NDBHolder *holder, const leveldb::ReadOptions &options, const leveldb::Slice &key,
+                                std::string *value) {
+    leveldb::Status status = holder->db->Get(options, key, value);
+
+    if (status.ok() && holder->expiring) {
+        if (ExpiringIterator::IsExpired(*value, ExpiringIterator::NowMillis())) {
+            return leveldb::Status::NotFound(key);
+        }
+
+        value->erase(0, std::min(value->size(), ExpiringIterator::kHeaderSize));
+    }
+
+    return status;
+}
+
+// The stripe of the lock for read-modify-writes of the key.
+static size_t keyLockStripe(const std::string &key) {
+    // FNV-1a, only to pick a stripe.
+    uint32_t hash = 2166136261u;
+
+    for (char c : key) {
+        hash = (hash ^ (unsigned char) c) * 16777619u;
+    }
+
+    return hash % kKeyLockStripes;
+}
+
+// The lock for read-modify-writes of the key.
+static std::mutex &keyLock(NDBHolder *holder, const std::string &key) {
+    return holder->keyLocks[keyLockStripe(key)];
+}
+
+// Reads the current value of a key for a read-modify-write. In databases with
+// expiring entries, expired values count as missing, and the expiry header of
+// a live value is moved into header.
+static leveldb::Status readForUpdate(NDBHolder *holder, const std::string &key, std::string *value,
+                                     std::string *header, bool *exists) {
+    leveldb::Status status = holder->db->Get(leveldb::ReadOptions(), key, value);
+
+    *exists = status.ok();
+
+    if (status.IsNotFound()) {
+        return leveldb::Status::OK();
+    }
+
+    if (status.ok() && holder->expiring) {
+        if (ExpiringIterator::IsExpired(*value, ExpiringIterator::NowMillis())) {
+            *exists = false;
+        } else {
+            header->assign(*value, 0, std::min(value->size(), ExpiringIterator::kHeaderSize));
+            value->erase(0, header->size());
+        }
+    }
+
+    return status;
+}
+
+// Resumes paused background work if level-0 has grown large enough for writes
+// to start stalling, as only compactions can bring the file count down.
+static void resumeBackgroundWorkIfNeeded(NDBHolder *holder) {
+    if (!holder->backgroundEnv->IsPaused()) {
+        return;
+    }
+
+    std::string files;
+
+    if (holder->db->GetProperty("leveldb.num-files-at-level0", &files) && atoi(files.c_str()) >= kResumeLevel0Files) {
+        holder->backgroundEnv->Resume();
+    }
+}
+
+// Lets paused background work run for the scope of an operation that waits
+// for it, and pauses it again afterwards.
+class ResumedBackgroundWork {
+public:
+    explicit ResumedBackgroundWork(BackgroundEnv *env) : env_(env), paused_(env->IsPaused()) {
+        env_->Resume();
+    }
+
+    ~ResumedBackgroundWork() {
+        if (paused_) {
+            env_->Pause();
+        }
+    }
+
+private:
+    BackgroundEnv *env_;
+    bool paused_;
+};
+
 #ifdef __cplusplus
 extern "C" {
 #endif
 
 JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeOpen
-        (JNIEnv *env, jclass cself, jboolean createIfMissing, jint cacheSize, jint blockSize, jint writeBufferSize,
-         jstring path) {
+        (JNIEnv *env, jclass cself, jboolean createIfMissing, jint cacheSize, jint cachePolicy, jint blockSize,
+         jint writeBufferSize, jboolean ioStats, jint backgroundPriority, jboolean expiring, jstring path) {
 
     const char *nativePath = env->GetStringUTFChars(path, 0);
 
     leveldb::DB *db;
 
-    auto * logger = new AndroidLogger();
-    leveldb::Cache *cache = nullptr;
+    // LevelDB creates an 8MB cache of its own when none is given, but that one can't be observed.
+    size_t capacity = cacheSize != 0 ? (size_t) cacheSize : 8 << 20;
+
+    // Must match com.github.hf.leveldb.LevelDB.CachePolicy.
+    leveldb::Cache *policyCache = cachePolicy == 1 ? NewSegmentedLRUCache(capacity) : leveldb::NewLRUCache(capacity);
+
+    auto *cache = new CountingCache(policyCache, capacity);
+
+    CountingEnv *countingEnv = nullptr;
 
-    if (cacheSize != 0) {
-        cache = leveldb::NewLRUCache((size_t) cacheSize);
+    if (ioStats == JNI_TRUE) {
+        countingEnv = new CountingEnv(leveldb::Env::Default());
     }
 
+    auto *backgroundEnv = new BackgroundEnv(countingEnv != nullptr ? countingEnv : leveldb::Env::Default(),
+                                            backgroundPriority);
+
+    auto *events = new EventQueue(1024);
+
+    auto *logger = new AndroidLogger(backgroundEnv, events);
+
     leveldb::Options options;
     options.create_if_missing = createIfMissing == JNI_TRUE;
     options.info_log = logger;
-
-    if (cache != nullptr) {
-        options.block_cache = cache;
-    }
+    options.block_cache = cache;
+    options.env = backgroundEnv;
 
     if (blockSize != 0) {
         options.block_size = (size_t) blockSize;
@@ -75,17 +195,23 @@ JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_
         options.write_buffer_size = (size_t) writeBufferSize;
     }
 
-    leveldb::Status status = leveldb::DB::Open(options, nativePath, &db);
+    std::string dbPath(nativePath);
 
     env->ReleaseStringUTFChars(path, nativePath);
 
+    leveldb::Status status = leveldb::DB::Open(options, dbPath, &db);
+
     if (status.ok()) {
-        auto *holder = new NDBHolder(db, logger, cache);
+        auto *holder = new NDBHolder(db, logger, cache, countingEnv, backgroundEnv, events, dbPath,
+                                     expiring == JNI_TRUE);
 
         return (jlong) holder;
     } else {
         delete logger;
+        delete events;
         delete cache;
+        delete backgroundEnv;
+        delete countingEnv;
     }
 
     throwExceptionFromStatus(env, status);
@@ -98,9 +224,15 @@ JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_n
     if (ndb != 0) {
         auto holder = (NDBHolder *) ndb;
 
+        // Closing waits for scheduled background work, which must not stay parked.
+        holder->backgroundEnv->Resume();
+
         delete holder->db;
         delete holder->cache;
         delete holder->logger;
+        delete holder->events;
+        delete holder->backgroundEnv;
+        delete holder->countingEnv;
         delete holder;
     }
 }
@@ -112,6 +244,8 @@ JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_n
 
     leveldb::DB *db = holder->db;
 
+    resumeBackgroundWorkIfNeeded(holder);
+
     leveldb::WriteOptions writeOptions;
     writeOptions.sync = sync == JNI_TRUE;
 
@@ -136,6 +270,8 @@ JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_n
 
     leveldb::DB *db = holder->db;
 
+    resumeBackgroundWorkIfNeeded(holder);
+
     leveldb::WriteOptions options;
     options.sync = sync == JNI_TRUE;
 
@@ -151,8 +287,6 @@ JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLev
 
     auto *holder = (NDBHolder *) ndb;
 
-    leveldb::DB *db = holder->db;
-
     leveldb::ReadOptions readOptions;
 
     readOptions.snapshot = (leveldb::Snapshot *) nsnapshot;
@@ -163,7 +297,7 @@ JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLev
 
     std::string value;
 
-    leveldb::Status status = db->Get(readOptions, keySlice, &value);
+    leveldb::Status status = getValue(holder, readOptions, keySlice, &value);
 
     env->ReleaseByteArrayElements(key, (jbyte *) keyData, 0);
 
@@ -186,6 +320,75 @@ JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLev
     return 0;
 }
 
+JNIEXPORT jint JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeGetRange
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray key, jlong nsnapshot, jint offset, jint length,
+         jbyteArray dest, jint destOffset) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::ReadOptions readOptions;
+
+    readOptions.snapshot = (leveldb::Snapshot *) nsnapshot;
+
+    const char *keyData = (char *) env->GetByteArrayElements(key, 0);
+
+    leveldb::Slice keySlice(keyData, env->GetArrayLength(key));
+
+    std::string value;
+
+    leveldb::Status status = getValue(holder, readOptions, keySlice, &value);
+
+    env->ReleaseByteArrayElements(key, (jbyte *) keyData, JNI_ABORT);
+
+    if (status.ok()) {
+        if ((size_t) offset >= value.length()) {
+            return 0;
+        }
+
+        auto count = (jint) std::min((size_t) length, value.length() - (size_t) offset);
+
+        env->SetByteArrayRegion(dest, destOffset, count, (jbyte *) value.data() + offset);
+
+        return count;
+    } else if (status.IsNotFound()) {
+        return -1;
+    }
+
+    throwExceptionFromStatus(env, status);
+
+    return -1;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeValueLength
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray key, jlong nsnapshot) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::ReadOptions readOptions;
+
+    readOptions.snapshot = (leveldb::Snapshot *) nsnapshot;
+
+    const char *keyData = (char *) env->GetByteArrayElements(key, 0);
+
+    leveldb::Slice keySlice(keyData, env->GetArrayLength(key));
+
+    std::string value;
+
+    leveldb::Status status = getValue(holder, readOptions, keySlice, &value);
+
+    env->ReleaseByteArrayElements(key, (jbyte *) keyData, JNI_ABORT);
+
+    if (status.ok()) {
+        return (jint) value.length();
+    } else if (status.IsNotFound()) {
+        return -1;
+    }
+
+    throwExceptionFromStatus(env, status);
+
+    return -1;
+}
+
 JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeDelete
         (JNIEnv *env, jclass cself, jlong ndb, jboolean sync, jbyteArray key) {
 
@@ -193,6 +396,8 @@ JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_n
 
     leveldb::DB *db = holder->db;
 
+    resumeBackgroundWorkIfNeeded(holder);
+
     const char *keyData = (char *) env->GetByteArrayElements(key, 0);
 
     leveldb::Slice keySlice(keyData, (size_t) env->GetArrayLength(key));
@@ -207,6 +412,53 @@ JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_n
     throwExceptionFromStatus(env, status);
 }
 
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCompactRange
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray begin, jbyteArray end) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    std::string beginKey;
+    std::string endKey;
+
+    if (begin != nullptr) {
+        beginKey.resize((size_t) env->GetArrayLength(begin));
+        env->GetByteArrayRegion(begin, 0, (jsize) beginKey.size(), (jbyte *) &beginKey[0]);
+    }
+
+    if (end != nullptr) {
+        endKey.resize((size_t) env->GetArrayLength(end));
+        env->GetByteArrayRegion(end, 0, (jsize) endKey.size(), (jbyte *) &endKey[0]);
+    }
+
+    leveldb::Slice beginSlice(beginKey);
+    leveldb::Slice endSlice(endKey);
+
+    // CompactRange waits for background work, which must not stay parked.
+    ResumedBackgroundWork resumed(holder->backgroundEnv);
+
+    db->CompactRange(begin != nullptr ? &beginSlice : nullptr, end != nullptr ? &endSlice : nullptr);
+}
+
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeFlush
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    // CompactRange always writes the memtable to a level-0 table first, on a
+    // new log, and waits for it. The range is empty, begin being after end, so
+    // no table overlaps it and no compaction follows.
+    std::string beginKey(1, '\0');
+
+    leveldb::Slice beginSlice(beginKey);
+    leveldb::Slice endSlice;
+
+    ResumedBackgroundWork resumed(holder->backgroundEnv);
+
+    holder->db->CompactRange(&beginSlice, &endSlice);
+}
+
 JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeGetProperty
         (JNIEnv *env, jclass cself, jlong ndb, jbyteArray key) {
 
@@ -279,9 +531,511 @@ JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_
 
     leveldb::Iterator *it = db->NewIterator(options);
 
+    if (holder->expiring) {
+        it = new ExpiringIterator(it, ExpiringIterator::NowMillis());
+    }
+
+    return (jlong) it;
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeIteratePrefix
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray prefix, jboolean fillCache, jlong nsnapshot) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    std::string prefixKey;
+    prefixKey.resize((size_t) env->GetArrayLength(prefix));
+    env->GetByteArrayRegion(prefix, 0, (jsize) prefixKey.size(), (jbyte *) &prefixKey[0]);
+
+    leveldb::ReadOptions options;
+
+    options.snapshot = (leveldb::Snapshot *) nsnapshot;
+
+    options.fill_cache = (bool) fillCache;
+
+    // NativeIterator only uses the leveldb::Iterator interface.
+    leveldb::Iterator *it = new BoundedIterator(db->NewIterator(options), prefixKey);
+
+    // Outside of the bounds, so that skipping expired entries stops at the end of the prefix.
+    if (holder->expiring) {
+        it = new ExpiringIterator(it, ExpiringIterator::NowMillis());
+    }
+
     return (jlong) it;
 }
 
+JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeApproximateSize
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray begin, jbyteArray end) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    std::string beginKey;
+    beginKey.resize((size_t) env->GetArrayLength(begin));
+    env->GetByteArrayRegion(begin, 0, (jsize) beginKey.size(), (jbyte *) &beginKey[0]);
+
+    std::string endKey;
+    endKey.resize((size_t) env->GetArrayLength(end));
+    env->GetByteArrayRegion(end, 0, (jsize) endKey.size(), (jbyte *) &endKey[0]);
+
+    leveldb::Range range(beginKey, endKey);
+    uint64_t size = 0;
+
+    db->GetApproximateSizes(&range, 1, &size);
+
+    return (jlong) size;
+}
+
+JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeDeleteRange
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray begin, jbyteArray end) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    resumeBackgroundWorkIfNeeded(holder);
+
+    std::string beginKey;
+    beginKey.resize((size_t) env->GetArrayLength(begin));
+    env->GetByteArrayRegion(begin, 0, (jsize) beginKey.size(), (jbyte *) &beginKey[0]);
+
+    std::string endKey;
+
+    if (end != nullptr) {
+        endKey.resize((size_t) env->GetArrayLength(end));
+        env->GetByteArrayRegion(end, 0, (jsize) endKey.size(), (jbyte *) &endKey[0]);
+    }
+
+    leveldb::ReadOptions readOptions;
+    readOptions.fill_cache = false;
+
+    std::unique_ptr<leveldb::Iterator> it(db->NewIterator(readOptions));
+
+    leveldb::WriteBatch batch;
+    int batched = 0;
+    jlong deleted = 0;
+
+    leveldb::Status status;
+
+    for (it->Seek(beginKey); it->Valid(); it->Next()) {
+        if (end != nullptr && it->key().compare(endKey) >= 0) {
+            break;
+        }
+
+        batch.Delete(it->key());
+        batched++;
+        deleted++;
+
+        if (batched == kDeleteRangeBatchSize) {
+            status = db->Write(leveldb::WriteOptions(), &batch);
+
+            if (!status.ok()) {
+                break;
+            }
+
+            batch.Clear();
+            batched = 0;
+        }
+    }
+
+    if (status.ok()) {
+        status = it->status();
+    }
+
+    if (status.ok() && batched > 0) {
+        status = db->Write(leveldb::WriteOptions(), &batch);
+    }
+
+    if (!status.ok()) {
+        throwExceptionFromStatus(env, status);
+        return 0;
+    }
+
+    return deleted;
+}
+
+JNIEXPORT jobjectArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeSweepExpired
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray begin, jint limit, jlongArray counts) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    resumeBackgroundWorkIfNeeded(holder);
+
+    leveldb::ReadOptions readOptions;
+    readOptions.fill_cache = false;
+
+    std::unique_ptr<leveldb::Iterator> it(db->NewIterator(readOptions));
+
+    if (begin != nullptr) {
+        std::string beginKey;
+        beginKey.resize((size_t) env->GetArrayLength(begin));
+        env->GetByteArrayRegion(begin, 0, (jsize) beginKey.size(), (jbyte *) &beginKey[0]);
+
+        it->Seek(beginKey);
+    } else {
+        it->SeekToFirst();
+    }
+
+    uint64_t now = ExpiringIterator::NowMillis();
+
+    leveldb::WriteBatch batch;
+
+    std::string firstDeleted;
+    std::string lastDeleted;
+
+    jlong scanned = 0;
+    jlong deleted = 0;
+
+    for (; it->Valid() && scanned < limit; it->Next()) {
+        scanned++;
+
+        if (ExpiringIterator::IsExpired(it->value(), now)) {
+            if (deleted == 0) {
+                firstDeleted.assign(it->key().data(), it->key().size());
+            }
+
+            lastDeleted.assign(it->key().data(), it->key().size());
+
+            batch.Delete(it->key());
+            deleted++;
+        }
+    }
+
+    bool more = it->Valid();
+
+    std::string next;
+
+    if (more) {
+        next.assign(it->key().data(), it->key().size());
+    }
+
+    leveldb::Status status = it->status();
+
+    if (status.ok() && deleted > 0) {
+        status = db->Write(leveldb::WriteOptions(), &batch);
+    }
+
+    if (!status.ok()) {
+        throwExceptionFromStatus(env, status);
+        return nullptr;
+    }
+
+    jlong values[2] = {scanned, deleted};
+
+    env->SetLongArrayRegion(counts, 0, 2, values);
+
+    const std::string *keys[3] = {more ? &next : nullptr,
+                                  deleted > 0 ? &firstDeleted : nullptr,
+                                  deleted > 0 ? &lastDeleted : nullptr};
+
+    jobjectArray result = env->NewObjectArray(3, env->FindClass("[B"), nullptr);
+
+    for (int i = 0; i < 3; i++) {
+        if (keys[i] != nullptr) {
+            jbyteArray key = env->NewByteArray((jsize) keys[i]->size());
+            env->SetByteArrayRegion(key, 0, (jsize) keys[i]->size(), (const jbyte *) keys[i]->data());
+
+            env->SetObjectArrayElement(result, i, key);
+            env->DeleteLocalRef(key);
+        }
+    }
+
+    return result;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeWarmUp
+        (JNIEnv *env, jclass cself, jlong ndb, jbyteArray begin, jbyteArray end, jint limit) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    // Iterating is what loads the index and data blocks of the tables in the
+    // range, and fill_cache keeps the data blocks in the block cache.
+    leveldb::ReadOptions readOptions;
+    readOptions.fill_cache = true;
+
+    std::unique_ptr<leveldb::Iterator> it(db->NewIterator(readOptions));
+
+    if (begin != nullptr) {
+        std::string beginKey;
+        beginKey.resize((size_t) env->GetArrayLength(begin));
+        env->GetByteArrayRegion(begin, 0, (jsize) beginKey.size(), (jbyte *) &beginKey[0]);
+
+        it->Seek(beginKey);
+    } else {
+        it->SeekToFirst();
+    }
+
+    std::string endKey;
+
+    if (end != nullptr) {
+        endKey.resize((size_t) env->GetArrayLength(end));
+        env->GetByteArrayRegion(end, 0, (jsize) endKey.size(), (jbyte *) &endKey[0]);
+    }
+
+    jint scanned = 0;
+
+    for (; it->Valid() && scanned < limit; it->Next()) {
+        if (end != nullptr && it->key().compare(endKey) >= 0) {
+            return nullptr;
+        }
+
+        scanned++;
+    }
+
+    leveldb::Status status = it->status();
+
+    if (!status.ok()) {
+        throwExceptionFromStatus(env, status);
+        return nullptr;
+    }
+
+    if (!it->Valid() || (end != nullptr && it->key().compare(endKey) >= 0)) {
+        return nullptr;
+    }
+
+    jbyteArray next = env->NewByteArray((jsize) it->key().size());
+    env->SetByteArrayRegion(next, 0, (jsize) it->key().size(), (const jbyte *) it->key().data());
+
+    return next;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeFindMergeOperator
+        (JNIEnv *env, jclass cself, jstring name) {
+    const char *nativeName = env->GetStringUTFChars(name, 0);
+
+    int id = FindMergeOperator(nativeName);
+
+    env->ReleaseStringUTFChars(name, nativeName);
+
+    return (jint) id;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeMerge
+        (JNIEnv *env, jclass cself, jlong ndb, jint mergeOperator, jboolean sync, jbyteArray key, jbyteArray operand,
+         jboolean returnValue) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    resumeBackgroundWorkIfNeeded(holder);
+
+    MergeFunction merge = GetMergeOperator(mergeOperator);
+
+    std::string keyData;
+    keyData.resize((size_t) env->GetArrayLength(key));
+    env->GetByteArrayRegion(key, 0, (jsize) keyData.size(), (jbyte *) &keyData[0]);
+
+    std::string operandData;
+    operandData.resize((size_t) env->GetArrayLength(operand));
+    env->GetByteArrayRegion(operand, 0, (jsize) operandData.size(), (jbyte *) &operandData[0]);
+
+    std::string merged;
+    leveldb::Status status;
+
+    {
+        std::lock_guard<std::mutex> guard(keyLock(holder, keyData));
+
+        std::string stored;
+
+        // Merged values keep the expiry of the value they replace, and don't expire otherwise.
+        std::string header;
+
+        bool exists;
+
+        status = readForUpdate(holder, keyData, &stored, &header, &exists);
+
+        if (!status.ok()) {
+            throwExceptionFromStatus(env, status);
+            return nullptr;
+        }
+
+        header.resize(ExpiringIterator::kHeaderSize, 0);
+
+        leveldb::Slice existing(stored);
+
+        if (!merge(exists ? &existing : nullptr, operandData, &merged)) {
+            status = leveldb::Status::InvalidArgument("Value or operand can't be merged");
+            throwExceptionFromStatus(env, status);
+            return nullptr;
+        }
+
+        leveldb::WriteOptions writeOptions;
+        writeOptions.sync = sync == JNI_TRUE;
+
+        status = db->Put(writeOptions, keyData, holder->expiring ? header + merged : merged);
+    }
+
+    if (!status.ok()) {
+        throwExceptionFromStatus(env, status);
+        return nullptr;
+    }
+
+    if (returnValue != JNI_TRUE) {
+        return nullptr;
+    }
+
+    jbyteArray result = env->NewByteArray((jsize) merged.size());
+
+    env->SetByteArrayRegion(result, 0, (jsize) merged.size(), (const jbyte *) merged.data());
+
+    return result;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCompareAndSet
+        (JNIEnv *env, jclass cself, jlong ndb, jboolean sync, jbyteArray key, jbyteArray expected,
+         jbyteArray newValue, jlong expiresAt) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    resumeBackgroundWorkIfNeeded(holder);
+
+    std::string keyData;
+    keyData.resize((size_t) env->GetArrayLength(key));
+    env->GetByteArrayRegion(key, 0, (jsize) keyData.size(), (jbyte *) &keyData[0]);
+
+    std::string expectedData;
+
+    if (expected != nullptr) {
+        expectedData.resize((size_t) env->GetArrayLength(expected));
+        env->GetByteArrayRegion(expected, 0, (jsize) expectedData.size(), (jbyte *) &expectedData[0]);
+    }
+
+    std::string stored;
+
+    if (newValue != nullptr) {
+        if (holder->expiring) {
+            auto expiry = (uint64_t) expiresAt;
+
+            stored.resize(ExpiringIterator::kHeaderSize);
+
+            for (int i = (int) ExpiringIterator::kHeaderSize - 1; i >= 0; i--) {
+                stored[i] = (char) (expiry & 0xff);
+                expiry >>= 8;
+            }
+        }
+
+        size_t headerSize = stored.size();
+
+        stored.resize(headerSize + (size_t) env->GetArrayLength(newValue));
+        env->GetByteArrayRegion(newValue, 0, (jsize) (stored.size() - headerSize), (jbyte *) &stored[headerSize]);
+    }
+
+    leveldb::Status status;
+
+    {
+        std::lock_guard<std::mutex> guard(keyLock(holder, keyData));
+
+        std::string current;
+        std::string header;
+
+        bool exists;
+
+        status = readForUpdate(holder, keyData, &current, &header, &exists);
+
+        if (status.ok()) {
+            if (expected == nullptr ? exists : !exists || current != expectedData) {
+                return JNI_FALSE;
+            }
+
+            leveldb::WriteOptions writeOptions;
+            writeOptions.sync = sync == JNI_TRUE;
+
+            if (newValue != nullptr) {
+                status = db->Put(writeOptions, keyData, stored);
+            } else {
+                status = db->Delete(writeOptions, keyData);
+            }
+        }
+    }
+
+    if (!status.ok()) {
+        throwExceptionFromStatus(env, status);
+        return JNI_FALSE;
+    }
+
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCommit
+        (JNIEnv *env, jclass cself, jlong ndb, jlong nsnapshot, jobjectArray keys, jlong nwb, jboolean sync) {
+    auto *holder = (NDBHolder *) ndb;
+
+    leveldb::DB *db = holder->db;
+
+    resumeBackgroundWorkIfNeeded(holder);
+
+    std::vector<std::string> keyData((size_t) env->GetArrayLength(keys));
+    std::vector<size_t> stripes;
+
+    for (size_t i = 0; i < keyData.size(); i++) {
+        auto key = (jbyteArray) env->GetObjectArrayElement(keys, (jsize) i);
+
+        keyData[i].resize((size_t) env->GetArrayLength(key));
+        env->GetByteArrayRegion(key, 0, (jsize) keyData[i].size(), (jbyte *) &keyData[i][0]);
+
+        env->DeleteLocalRef(key);
+
+        stripes.push_back(keyLockStripe(keyData[i]));
+    }
+
+    // Stripes are always locked in ascending order, so concurrent commits
+    // can't deadlock.
+    std::sort(stripes.begin(), stripes.end());
+    stripes.erase(std::unique(stripes.begin(), stripes.end()), stripes.end());
+
+    std::vector<std::unique_lock<std::mutex>> guards;
+
+    for (size_t stripe : stripes) {
+        guards.emplace_back(holder->keyLocks[stripe]);
+    }
+
+    leveldb::ReadOptions snapshotOptions;
+    snapshotOptions.snapshot = (leveldb::Snapshot *) nsnapshot;
+
+    leveldb::Status status;
+
+    // Compares the stored values, including any expiry headers, so a value
+    // rewritten with another expiry is a conflict too.
+    for (const std::string &key : keyData) {
+        std::string before;
+        std::string now;
+
+        leveldb::Status beforeStatus = db->Get(snapshotOptions, key, &before);
+        leveldb::Status nowStatus = db->Get(leveldb::ReadOptions(), key, &now);
+
+        if (!beforeStatus.ok() && !beforeStatus.IsNotFound()) {
+            status = beforeStatus;
+            break;
+        }
+
+        if (!nowStatus.ok() && !nowStatus.IsNotFound()) {
+            status = nowStatus;
+            break;
+        }
+
+        if (beforeStatus.ok() != nowStatus.ok() || before != now) {
+            return JNI_FALSE;
+        }
+    }
+
+    if (status.ok()) {
+        leveldb::WriteOptions writeOptions;
+        writeOptions.sync = sync == JNI_TRUE;
+
+        status = db->Write(writeOptions, (leveldb::WriteBatch *) nwb);
+    }
+
+    if (!status.ok()) {
+        throwExceptionFromStatus(env, status);
+        return JNI_FALSE;
+    }
+
+    return JNI_TRUE;
+}
+
 JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeSnapshot
         (JNIEnv *env, jclass cself, jlong ndb) {
 
@@ -305,6 +1059,143 @@ JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_n
     db->ReleaseSnapshot((leveldb::Snapshot *) nsnapshot);
 }
 
+JNIEXPORT jlongArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCacheStats
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    CountingCache *cache = holder->cache;
+
+    jlong stats[CountingCache::kStatCount + 2];
+
+    for (int i = 0; i < CountingCache::kStatCount; i++) {
+        stats[i] = (jlong) cache->Get((CountingCache::Stat) i);
+    }
+
+    stats[CountingCache::kStatCount] = (jlong) cache->TotalCharge();
+    stats[CountingCache::kStatCount + 1] = (jlong) cache->Capacity();
+
+    jlongArray retval = env->NewLongArray(CountingCache::kStatCount + 2);
+
+    env->SetLongArrayRegion(retval, 0, CountingCache::kStatCount + 2, stats);
+
+    return retval;
+}
+
+JNIEXPORT jlongArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeIOStats
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    CountingEnv *countingEnv = holder->countingEnv;
+
+    if (countingEnv == nullptr) {
+        return nullptr;
+    }
+
+    const int count = CountingEnv::kFileTypeCount * CountingEnv::kStatCount;
+
+    jlong stats[count];
+
+    for (int type = 0; type < CountingEnv::kFileTypeCount; type++) {
+        for (int stat = 0; stat < CountingEnv::kStatCount; stat++) {
+            stats[type * CountingEnv::kStatCount + stat] = (jlong) countingEnv->Get((CountingEnv::FileType) type,
+                                                                                    (CountingEnv::Stat) stat);
+        }
+    }
+
+    jlongArray retval = env->NewLongArray(count);
+
+    env->SetLongArrayRegion(retval, 0, count, stats);
+
+    return retval;
+}
+
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativePauseBackgroundWork
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    holder->backgroundEnv->Pause();
+}
+
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeResumeBackgroundWork
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    holder->backgroundEnv->Resume();
+}
+
+JNIEXPORT jboolean JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeIsBackgroundWorkPaused
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    return (jboolean) holder->backgroundEnv->IsPaused();
+}
+
+JNIEXPORT jlongArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativePollEvents
+        (JNIEnv *env, jclass cself, jlong ndb, jint timeoutMillis) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    std::vector<EventQueue::Event> events;
+
+    holder->events->Poll(timeoutMillis, &events);
+
+    auto length = (jsize) (events.size() * EventQueue::kEventFields);
+
+    jlongArray retval = env->NewLongArray(length);
+
+    if (length > 0) {
+        jlong *fields = env->GetLongArrayElements(retval, 0);
+
+        for (size_t i = 0; i < events.size(); i++) {
+            jlong *event = fields + i * EventQueue::kEventFields;
+
+            event[0] = events[i].type;
+            event[1] = events[i].timeMillis;
+            event[2] = events[i].level;
+            event[3] = events[i].bytes;
+        }
+
+        env->ReleaseLongArrayElements(retval, fields, 0);
+    }
+
+    return retval;
+}
+
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeInterruptEvents
+        (JNIEnv *env, jclass cself, jlong ndb) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    holder->events->Interrupt();
+}
+
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCheckpoint
+        (JNIEnv *env, jclass cself, jlong ndb, jstring targetPath) {
+
+    auto *holder = (NDBHolder *) ndb;
+
+    const char *nativeTargetPath = env->GetStringUTFChars(targetPath, 0);
+
+    std::string target(nativeTargetPath);
+
+    env->ReleaseStringUTFChars(targetPath, nativeTargetPath);
+
+    // Compactions replace table files and rewrite the manifest, so none may run
+    // while the files are linked and copied.
+    holder->backgroundEnv->Pin();
+
+    leveldb::Status status = CreateCheckpoint(leveldb::Env::Default(), holder->path, target);
+
+    holder->backgroundEnv->Unpin();
+
+    throwExceptionFromStatus(env, status);
+}
+
 #ifdef __cplusplus
 }
-#endif
\ No newline at end of file
+#endif
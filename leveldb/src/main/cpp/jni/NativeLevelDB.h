@@ -10,10 +10,10 @@ extern "C" {
 /*
  * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
  * Method:    nopen
- * Signature: (ZIIILjava/lang/String;)J
+ * Signature: (ZIIIIZIZLjava/lang/String;)J
  */
 JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeOpen
-  (JNIEnv *, jclass, jboolean, jint, jint, jint, jstring);
+  (JNIEnv *, jclass, jboolean, jint, jint, jint, jint, jboolean, jint, jboolean, jstring);
 
 /*
  * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
@@ -103,6 +103,174 @@ JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_
 JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeReleaseSnapshot
   (JNIEnv *, jclass, jlong, jlong);
 
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeCacheStats
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCacheStats
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeIOStats
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeIOStats
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativePauseBackgroundWork
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativePauseBackgroundWork
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeResumeBackgroundWork
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeResumeBackgroundWork
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeIsBackgroundWorkPaused
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeIsBackgroundWorkPaused
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativePollEvents
+ * Signature: (JI)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativePollEvents
+  (JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeInterruptEvents
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeInterruptEvents
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeCompactRange
+ * Signature: (J[B[B)V
+ */
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCompactRange
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeValueLength
+ * Signature: (J[BJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeValueLength
+  (JNIEnv *, jclass, jlong, jbyteArray, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeGetRange
+ * Signature: (J[BJII[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeGetRange
+  (JNIEnv *, jclass, jlong, jbyteArray, jlong, jint, jint, jbyteArray, jint);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeCheckpoint
+ * Signature: (JLjava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCheckpoint
+  (JNIEnv *, jclass, jlong, jstring);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeIteratePrefix
+ * Signature: (J[BZJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeIteratePrefix
+  (JNIEnv *, jclass, jlong, jbyteArray, jboolean, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeApproximateSize
+ * Signature: (J[B[B)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeApproximateSize
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeDeleteRange
+ * Signature: (J[B[B)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeDeleteRange
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeSweepExpired
+ * Signature: (J[BI[J)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeSweepExpired
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jlongArray);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeFindMergeOperator
+ * Signature: (Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeFindMergeOperator
+  (JNIEnv *, jclass, jstring);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeMerge
+ * Signature: (JIZ[B[BZ)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeMerge
+  (JNIEnv *, jclass, jlong, jint, jboolean, jbyteArray, jbyteArray, jboolean);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeCompareAndSet
+ * Signature: (JZ[B[B[BJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCompareAndSet
+  (JNIEnv *, jclass, jlong, jboolean, jbyteArray, jbyteArray, jbyteArray, jlong);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeCommit
+ * Signature: (JJ[[BJZ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeCommit
+  (JNIEnv *, jclass, jlong, jlong, jobjectArray, jlong, jboolean);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeWarmUp
+ * Signature: (J[B[BI)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeWarmUp
+  (JNIEnv *, jclass, jlong, jbyteArray, jbyteArray, jint);
+
+/*
+ * Class:     com_github_hf_leveldb_implementation_NativeLevelDB
+ * Method:    nativeFlush
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_github_hf_leveldb_implementation_NativeLevelDB_nativeFlush
+  (JNIEnv *, jclass, jlong);
+
 #ifdef __cplusplus
 }
 #endif
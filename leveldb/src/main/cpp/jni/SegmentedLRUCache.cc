@@ -0,0 +1,373 @@
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+#include <jni/SegmentedLRUCache.h>
+
+#include <cstdlib>
+#include <cstring>
+#include <mutex>
+#include <unordered_map>
+
+namespace {
+
+const int kNumShardBits = 4;
+const int kNumShards = 1 << kNumShardBits;
+
+struct SLRUHandle {
+    void *value;
+
+    void (*deleter)(const leveldb::Slice &, void *value);
+
+    SLRUHandle *next;
+    SLRUHandle *prev;
+
+    size_t charge;
+    size_t key_length;
+
+    uint32_t refs;
+    uint32_t hash;
+
+    bool in_cache;
+    bool in_protected;
+
+    char key_data[1];
+
+    leveldb::Slice key() const {
+        return leveldb::Slice(key_data, key_length);
+    }
+};
+
+struct SliceHash {
+    size_t operator()(const leveldb::Slice &slice) const {
+        // FNV-1a
+        uint32_t hash = 2166136261u;
+
+        for (size_t i = 0; i < slice.size(); i++) {
+            hash ^= (uint8_t) slice[i];
+            hash *= 16777619u;
+        }
+
+        return hash;
+    }
+};
+
+struct SliceEqual {
+    bool operator()(const leveldb::Slice &a, const leveldb::Slice &b) const {
+        return a == b;
+    }
+};
+
+class SLRUShard {
+public:
+    SLRUShard() : capacity_(0), protected_capacity_(0), usage_(0), protected_usage_(0) {
+        probation_.next = &probation_;
+        probation_.prev = &probation_;
+
+        protected_.next = &protected_;
+        protected_.prev = &protected_;
+    }
+
+    ~SLRUShard() {
+        for (auto &entry : table_) {
+            SLRUHandle *handle = entry.second;
+
+            handle->in_cache = false;
+            Unref(handle);
+        }
+    }
+
+    void SetCapacity(size_t capacity) {
+        capacity_ = capacity;
+        protected_capacity_ = capacity - capacity / 5;
+    }
+
+    leveldb::Cache::Handle *Insert(const leveldb::Slice &key, uint32_t hash, void *value, size_t charge,
+                                   void (*deleter)(const leveldb::Slice &key, void *value)) {
+        auto *handle = (SLRUHandle *) malloc(sizeof(SLRUHandle) - 1 + key.size());
+
+        handle->value = value;
+        handle->deleter = deleter;
+        handle->charge = charge;
+        handle->key_length = key.size();
+        handle->hash = hash;
+        handle->refs = 2; // One for the cache, one for the caller.
+        handle->in_cache = true;
+        handle->in_protected = false;
+
+        memcpy(handle->key_data, key.data(), key.size());
+
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        auto existing = table_.find(handle->key());
+
+        if (existing != table_.end()) {
+            SLRUHandle *old = existing->second;
+
+            table_.erase(existing);
+            FinishErase(old);
+        }
+
+        table_[handle->key()] = handle;
+
+        Append(&probation_, handle);
+        usage_ += charge;
+
+        EvictToCapacity();
+
+        return reinterpret_cast<leveldb::Cache::Handle *>(handle);
+    }
+
+    leveldb::Cache::Handle *Lookup(const leveldb::Slice &key) {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        auto found = table_.find(key);
+
+        if (found == table_.end()) {
+            return nullptr;
+        }
+
+        SLRUHandle *handle = found->second;
+
+        handle->refs++;
+
+        Remove(handle);
+
+        if (!handle->in_protected) {
+            handle->in_protected = true;
+            protected_usage_ += handle->charge;
+        }
+
+        Append(&protected_, handle);
+
+        // Demote the least recently used protected entries back into probation.
+        while (protected_usage_ > protected_capacity_ && protected_.next != &protected_) {
+            SLRUHandle *demoted = protected_.next;
+
+            Remove(demoted);
+
+            demoted->in_protected = false;
+            protected_usage_ -= demoted->charge;
+
+            Append(&probation_, demoted);
+        }
+
+        return reinterpret_cast<leveldb::Cache::Handle *>(handle);
+    }
+
+    void Release(leveldb::Cache::Handle *handle) {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        Unref(reinterpret_cast<SLRUHandle *>(handle));
+    }
+
+    void Erase(const leveldb::Slice &key) {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        auto found = table_.find(key);
+
+        if (found != table_.end()) {
+            SLRUHandle *handle = found->second;
+
+            table_.erase(found);
+            FinishErase(handle);
+        }
+    }
+
+    void Prune() {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        for (auto it = table_.begin(); it != table_.end();) {
+            SLRUHandle *handle = it->second;
+
+            if (handle->refs == 1) {
+                it = table_.erase(it);
+                FinishErase(handle);
+            } else {
+                ++it;
+            }
+        }
+    }
+
+    size_t TotalCharge() {
+        std::lock_guard<std::mutex> lock(mutex_);
+
+        return usage_;
+    }
+
+private:
+    static void Append(SLRUHandle *list, SLRUHandle *handle) {
+        handle->next = list;
+        handle->prev = list->prev;
+        handle->prev->next = handle;
+        handle->next->prev = handle;
+    }
+
+    static void Remove(SLRUHandle *handle) {
+        handle->next->prev = handle->prev;
+        handle->prev->next = handle->next;
+    }
+
+    void Unref(SLRUHandle *handle) {
+        handle->refs--;
+
+        if (handle->refs == 0) {
+            (*handle->deleter)(handle->key(), handle->value);
+            free(handle);
+        }
+    }
+
+    // Requires the handle to have been removed from table_ already.
+    void FinishErase(SLRUHandle *handle) {
+        Remove(handle);
+
+        if (handle->in_protected) {
+            protected_usage_ -= handle->charge;
+        }
+
+        usage_ -= handle->charge;
+        handle->in_cache = false;
+
+        Unref(handle);
+    }
+
+    void EvictToCapacity() {
+        while (usage_ > capacity_) {
+            SLRUHandle *victim;
+
+            if (probation_.next != &probation_) {
+                victim = probation_.next;
+            } else if (protected_.next != &protected_) {
+                victim = protected_.next;
+            } else {
+                break;
+            }
+
+            table_.erase(victim->key());
+            FinishErase(victim);
+        }
+    }
+
+    std::mutex mutex_;
+
+    size_t capacity_;
+    size_t protected_capacity_;
+
+    size_t usage_;
+    size_t protected_usage_;
+
+    // Dummy heads of the circular lists, next is the least recently used entry.
+    SLRUHandle probation_;
+    SLRUHandle protected_;
+
+    std::unordered_map<leveldb::Slice, SLRUHandle *, SliceHash, SliceEqual> table_;
+};
+
+class ShardedSLRUCache : public leveldb::Cache {
+public:
+    explicit ShardedSLRUCache(size_t capacity) : last_id_(0) {
+        const size_t per_shard = (capacity + (kNumShards - 1)) / kNumShards;
+
+        for (auto &shard : shards_) {
+            shard.SetCapacity(per_shard);
+        }
+    }
+
+    ~ShardedSLRUCache() override = default;
+
+    Handle *Insert(const leveldb::Slice &key, void *value, size_t charge,
+                   void (*deleter)(const leveldb::Slice &key, void *value)) override {
+        const uint32_t hash = HashSlice(key);
+
+        return shards_[Shard(hash)].Insert(key, hash, value, charge, deleter);
+    }
+
+    Handle *Lookup(const leveldb::Slice &key) override {
+        return shards_[Shard(HashSlice(key))].Lookup(key);
+    }
+
+    void Release(Handle *handle) override {
+        auto *h = reinterpret_cast<SLRUHandle *>(handle);
+
+        shards_[Shard(h->hash)].Release(handle);
+    }
+
+    void *Value(Handle *handle) override {
+        return reinterpret_cast<SLRUHandle *>(handle)->value;
+    }
+
+    void Erase(const leveldb::Slice &key) override {
+        shards_[Shard(HashSlice(key))].Erase(key);
+    }
+
+    uint64_t NewId() override {
+        std::lock_guard<std::mutex> lock(id_mutex_);
+
+        return ++(last_id_);
+    }
+
+    void Prune() override {
+        for (auto &shard : shards_) {
+            shard.Prune();
+        }
+    }
+
+    size_t TotalCharge() const override {
+        size_t total = 0;
+
+        for (auto &shard : shards_) {
+            total += shard.TotalCharge();
+        }
+
+        return total;
+    }
+
+private:
+    static uint32_t HashSlice(const leveldb::Slice &key) {
+        return (uint32_t) SliceHash()(key);
+    }
+
+    static uint32_t Shard(uint32_t hash) {
+        return hash >> (32 - kNumShardBits);
+    }
+
+    mutable SLRUShard shards_[kNumShards];
+
+    std::mutex id_mutex_;
+    uint64_t last_id_;
+};
+
+} // namespace
+
+leveldb::Cache *NewSegmentedLRUCache(size_t capacity) {
+    return new ShardedSLRUCache(capacity);
+}
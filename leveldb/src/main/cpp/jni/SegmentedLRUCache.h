@@ -0,0 +1,12 @@
+#ifndef LEVELDB_ANDROID_SEGMENTEDLRUCACHE_H
+#define LEVELDB_ANDROID_SEGMENTEDLRUCACHE_H
+
+#include <leveldb/cache.h>
+
+// Creates a scan-resistant cache with a segmented LRU policy. New entries go
+// into a probationary segment and are only promoted into the protected
+// segment (80% of the capacity) when they are looked up again, so a single
+// full scan can only evict other probationary entries.
+leveldb::Cache *NewSegmentedLRUCache(size_t capacity);
+
+#endif //LEVELDB_ANDROID_SEGMENTEDLRUCACHE_H
@@ -0,0 +1,169 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Counters of the block cache used by a database, as seen since the database was opened.
+ *
+ * Use {@link #since(CacheStats)} to compute the activity between two observations.
+ */
+public final class CacheStats {
+    private final long lookups;
+    private final long hits;
+    private final long inserts;
+    private final long insertedBytes;
+    private final long evictions;
+    private final long evictedBytes;
+    private final long usage;
+    private final long capacity;
+
+    public CacheStats(long lookups, long hits, long inserts, long insertedBytes, long evictions, long evictedBytes, long usage, long capacity) {
+        this.lookups = lookups;
+        this.hits = hits;
+        this.inserts = inserts;
+        this.insertedBytes = insertedBytes;
+        this.evictions = evictions;
+        this.evictedBytes = evictedBytes;
+        this.usage = usage;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return number of lookups in the cache
+     */
+    public long lookups() {
+        return lookups;
+    }
+
+    /**
+     * @return number of lookups that found the block in the cache
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that had to read the block from disk
+     */
+    public long misses() {
+        return lookups - hits;
+    }
+
+    /**
+     * @return hits divided by lookups, or {@link Double#NaN} if there were no lookups
+     */
+    public double hitRatio() {
+        if (lookups == 0) {
+            return Double.NaN;
+        }
+
+        return (double) hits / (double) lookups;
+    }
+
+    /**
+     * @return number of blocks inserted in the cache
+     */
+    public long inserts() {
+        return inserts;
+    }
+
+    /**
+     * @return total charge (bytes) of the blocks inserted in the cache
+     */
+    public long insertedBytes() {
+        return insertedBytes;
+    }
+
+    /**
+     * @return number of blocks removed from the cache to make room for others
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return total charge (bytes) of the evicted blocks
+     */
+    public long evictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * @return bytes currently charged against the cache
+     */
+    public long usage() {
+        return usage;
+    }
+
+    /**
+     * @return the configured capacity of the cache in bytes
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Computes the difference of the counters between this and an earlier observation. Usage and
+     * capacity are taken from this observation.
+     *
+     * @param earlier the earlier observation, non-null
+     * @return the activity between the two observations
+     */
+    public CacheStats since(CacheStats earlier) {
+        if (earlier == null) {
+            throw new IllegalArgumentException("Earlier stats must not be null.");
+        }
+
+        return new CacheStats(lookups - earlier.lookups,
+                hits - earlier.hits,
+                inserts - earlier.inserts,
+                insertedBytes - earlier.insertedBytes,
+                evictions - earlier.evictions,
+                evictedBytes - earlier.evictedBytes,
+                usage,
+                capacity);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{lookups=" + lookups +
+                ", hits=" + hits +
+                ", inserts=" + inserts +
+                ", insertedBytes=" + insertedBytes +
+                ", evictions=" + evictions +
+                ", evictedBytes=" + evictedBytes +
+                ", usage=" + usage +
+                ", capacity=" + capacity + "}";
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Something that happened inside the database, recognized from LevelDB's info log.
+ *
+ * @see com.github.hf.leveldb.LevelDB#addEventListener(DbEvent.Listener)
+ */
+public final class DbEvent {
+
+    /**
+     * Types of events.
+     */
+    public enum Type {
+        /**
+         * A write is blocked until the previous memtable has been flushed.
+         */
+        MEMTABLE_STALL,
+
+        /**
+         * A write is blocked until compactions reduce the number of level-0 files below the
+         * stop trigger.
+         */
+        LEVEL0_STALL,
+
+        /**
+         * A memtable flush to a level-0 table has started.
+         */
+        FLUSH_STARTED,
+
+        /**
+         * A memtable flush has finished, {@link #bytes()} is the size of the table written.
+         */
+        FLUSH_FINISHED,
+
+        /**
+         * A compaction of {@link #level()} into the next level has started.
+         */
+        COMPACTION_STARTED,
+
+        /**
+         * A compaction of {@link #level()} into the next level has finished, {@link #bytes()} is
+         * the size of the tables written.
+         */
+        COMPACTION_FINISHED
+    }
+
+    /**
+     * Receives events on the database's event thread. Keep the work done here short, events are
+     * dropped if listeners can't keep up.
+     */
+    public interface Listener {
+        void onEvent(DbEvent event);
+    }
+
+    private final Type type;
+    private final long timeMillis;
+    private final int level;
+    private final long bytes;
+
+    public DbEvent(Type type, long timeMillis, int level, long bytes) {
+        if (type == null) {
+            throw new IllegalArgumentException("Type must not be null.");
+        }
+
+        this.type = type;
+        this.timeMillis = timeMillis;
+        this.level = level;
+        this.bytes = bytes;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * @return wall-clock time of the event, in milliseconds since the epoch
+     */
+    public long timeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return the level the event concerns, or -1 if none
+     */
+    public int level() {
+        return level;
+    }
+
+    /**
+     * @return bytes written, or -1 if not applicable
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return whether this event means a write is blocked
+     */
+    public boolean isStall() {
+        return type == Type.MEMTABLE_STALL || type == Type.LEVEL0_STALL;
+    }
+
+    @Override
+    public String toString() {
+        return "DbEvent{type=" + type +
+                ", timeMillis=" + timeMillis +
+                ", level=" + level +
+                ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,329 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Typed view over the <tt>leveldb.stats</tt>, <tt>leveldb.sstables</tt> and
+ * <tt>leveldb.approximate-memory-usage</tt> properties.
+ *
+ * Obtain one with {@link LevelDB#getStats()}, or parse raw property strings with
+ * {@link #parse(String, String, String)}.
+ */
+public final class DbStats {
+    /**
+     * Number of levels in a LevelDB database.
+     */
+    public static final int NUM_LEVELS = 7;
+
+    private static final Pattern STATS_LINE =
+            Pattern.compile("^\\s*(\\d+)\\s+(\\d+)\\s+([\\d.]+)\\s+([\\d.]+)\\s+([\\d.]+)\\s+([\\d.]+)\\s*$");
+
+    private static final Pattern SSTABLES_LEVEL = Pattern.compile("^--- level (\\d+) ---$");
+
+    private static final Pattern SSTABLES_FILE = Pattern.compile("^ (\\d+):(\\d+)\\[");
+
+    /**
+     * Statistics for a single level.
+     */
+    public static final class Level {
+        private final int level;
+
+        private int files;
+        private long sizeBytes;
+
+        private double compactionSeconds;
+        private double compactionReadMB;
+        private double compactionWriteMB;
+
+        private Level(int level) {
+            this.level = level;
+        }
+
+        /**
+         * @return the level number, 0 being the youngest
+         */
+        public int level() {
+            return level;
+        }
+
+        /**
+         * @return number of table files in this level
+         */
+        public int files() {
+            return files;
+        }
+
+        /**
+         * @return total size of table files in this level, in bytes
+         */
+        public long sizeBytes() {
+            return sizeBytes;
+        }
+
+        /**
+         * @return seconds spent compacting into this level since the database was opened
+         */
+        public double compactionSeconds() {
+            return compactionSeconds;
+        }
+
+        /**
+         * @return megabytes read by compactions into this level since the database was opened
+         */
+        public double compactionReadMB() {
+            return compactionReadMB;
+        }
+
+        /**
+         * @return megabytes written by compactions into this level since the database was opened
+         */
+        public double compactionWriteMB() {
+            return compactionWriteMB;
+        }
+
+        @Override
+        public String toString() {
+            return "Level{level=" + level +
+                    ", files=" + files +
+                    ", sizeBytes=" + sizeBytes +
+                    ", compactionSeconds=" + compactionSeconds +
+                    ", compactionReadMB=" + compactionReadMB +
+                    ", compactionWriteMB=" + compactionWriteMB + "}";
+        }
+    }
+
+    private final long timestamp;
+    private final List<Level> levels;
+    private final long approximateMemoryUsage;
+
+    private DbStats(long timestamp, List<Level> levels, long approximateMemoryUsage) {
+        this.timestamp = timestamp;
+        this.levels = Collections.unmodifiableList(levels);
+        this.approximateMemoryUsage = approximateMemoryUsage;
+    }
+
+    /**
+     * Parses the raw property strings into a new DbStats object. Any of the arguments may be null,
+     * in which case the values that would have been derived from it are zero.
+     *
+     * @param stats       value of the <tt>leveldb.stats</tt> property
+     * @param sstables    value of the <tt>leveldb.sstables</tt> property
+     * @param memoryUsage value of the <tt>leveldb.approximate-memory-usage</tt> property
+     * @return a new DbStats object, never null
+     */
+    public static DbStats parse(String stats, String sstables, String memoryUsage) {
+        List<Level> levels = new ArrayList<Level>(NUM_LEVELS);
+
+        for (int i = 0; i < NUM_LEVELS; i++) {
+            levels.add(new Level(i));
+        }
+
+        if (stats != null) {
+            for (String line : stats.split("\n")) {
+                Matcher matcher = STATS_LINE.matcher(line);
+
+                if (!matcher.matches()) {
+                    continue;
+                }
+
+                Level level = level(levels, Integer.parseInt(matcher.group(1)));
+
+                level.files = Integer.parseInt(matcher.group(2));
+                level.sizeBytes = (long) (Double.parseDouble(matcher.group(3)) * 1048576d);
+                level.compactionSeconds = Double.parseDouble(matcher.group(4));
+                level.compactionReadMB = Double.parseDouble(matcher.group(5));
+                level.compactionWriteMB = Double.parseDouble(matcher.group(6));
+            }
+        }
+
+        if (sstables != null) {
+            // leveldb.stats reports sizes rounded to whole megabytes, sstables has the exact ones.
+            Level current = null;
+
+            for (String line : sstables.split("\n")) {
+                Matcher matcher = SSTABLES_LEVEL.matcher(line);
+
+                if (matcher.matches()) {
+                    current = level(levels, Integer.parseInt(matcher.group(1)));
+                    current.files = 0;
+                    current.sizeBytes = 0;
+
+                    continue;
+                }
+
+                matcher = SSTABLES_FILE.matcher(line);
+
+                if (current != null && matcher.find()) {
+                    current.files++;
+                    current.sizeBytes += Long.parseLong(matcher.group(2));
+                }
+            }
+        }
+
+        long approximateMemoryUsage = 0;
+
+        if (memoryUsage != null) {
+            try {
+                approximateMemoryUsage = Long.parseLong(memoryUsage.trim());
+            } catch (NumberFormatException e) {
+                approximateMemoryUsage = 0;
+            }
+        }
+
+        return new DbStats(System.currentTimeMillis(), levels, approximateMemoryUsage);
+    }
+
+    private static Level level(List<Level> levels, int level) {
+        while (levels.size() <= level) {
+            levels.add(new Level(levels.size()));
+        }
+
+        return levels.get(level);
+    }
+
+    /**
+     * @return wall-clock time in milliseconds when these stats were parsed
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return all levels, index in the list is the level number
+     */
+    public List<Level> levels() {
+        return levels;
+    }
+
+    /**
+     * @param level the level number
+     * @return stats for that level
+     */
+    public Level level(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * @return total number of table files across all levels
+     */
+    public int totalFiles() {
+        int files = 0;
+
+        for (Level level : levels) {
+            files += level.files;
+        }
+
+        return files;
+    }
+
+    /**
+     * @return total size of table files across all levels, in bytes
+     */
+    public long totalSizeBytes() {
+        long size = 0;
+
+        for (Level level : levels) {
+            size += level.sizeBytes;
+        }
+
+        return size;
+    }
+
+    /**
+     * @return total megabytes written by memtable flushes and compactions
+     */
+    public double totalCompactionWriteMB() {
+        double written = 0;
+
+        for (Level level : levels) {
+            written += level.compactionWriteMB;
+        }
+
+        return written;
+    }
+
+    /**
+     * @return total megabytes read by compactions
+     */
+    public double totalCompactionReadMB() {
+        double read = 0;
+
+        for (Level level : levels) {
+            read += level.compactionReadMB;
+        }
+
+        return read;
+    }
+
+    /**
+     * @return approximate bytes of memory used by memtables and the block cache, 0 if not reported
+     */
+    public long approximateMemoryUsage() {
+        return approximateMemoryUsage;
+    }
+
+    /**
+     * Approximates write amplification as all bytes written to table files divided by the bytes
+     * written into level 0. LevelDB counts compactions into level N under level N, so the level 0
+     * write column holds only memtable flushes (a flush may sometimes be placed directly into
+     * level 1 or 2, which makes this an overestimate).
+     *
+     * Values are derived from <tt>leveldb.stats</tt>, which rounds to whole megabytes, so this is
+     * meaningless until a few megabytes have been written since opening.
+     *
+     * @return the write amplification, or {@link Double#NaN} if nothing has been flushed yet
+     */
+    public double writeAmplification() {
+        double flushed = levels.get(0).compactionWriteMB;
+
+        if (flushed <= 0) {
+            return Double.NaN;
+        }
+
+        return totalCompactionWriteMB() / flushed;
+    }
+
+    @Override
+    public String toString() {
+        return "DbStats{timestamp=" + timestamp +
+                ", levels=" + levels +
+                ", approximateMemoryUsage=" + approximateMemoryUsage + "}";
+    }
+}
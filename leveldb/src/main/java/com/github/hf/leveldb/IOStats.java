@@ -0,0 +1,256 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * File I/O performed by a database since it was opened, broken down by file type.
+ *
+ * Only collected when the database was opened with
+ * {@link com.github.hf.leveldb.LevelDB.Configuration#collectIOStats(boolean)}.
+ */
+public final class IOStats {
+
+    /**
+     * Types of files in a LevelDB database directory.
+     */
+    public enum FileType {
+        /**
+         * Write-ahead log (<tt>*.log</tt>) files.
+         */
+        LOG,
+
+        /**
+         * Table (<tt>*.ldb</tt>, <tt>*.sst</tt>) files, written by memtable flushes and compactions.
+         */
+        TABLE,
+
+        /**
+         * <tt>MANIFEST-*</tt> files, which record the set of table files.
+         */
+        MANIFEST,
+
+        /**
+         * Everything else, like <tt>CURRENT</tt>.
+         */
+        OTHER
+    }
+
+    /**
+     * Counters for a single file type. Times are in microseconds.
+     */
+    public static final class Counters {
+        private final long readOps;
+        private final long readBytes;
+        private final long readMicros;
+        private final long writeOps;
+        private final long writeBytes;
+        private final long writeMicros;
+        private final long syncOps;
+        private final long syncMicros;
+
+        public Counters(long readOps, long readBytes, long readMicros, long writeOps, long writeBytes, long writeMicros, long syncOps, long syncMicros) {
+            this.readOps = readOps;
+            this.readBytes = readBytes;
+            this.readMicros = readMicros;
+            this.writeOps = writeOps;
+            this.writeBytes = writeBytes;
+            this.writeMicros = writeMicros;
+            this.syncOps = syncOps;
+            this.syncMicros = syncMicros;
+        }
+
+        public long readOps() {
+            return readOps;
+        }
+
+        public long readBytes() {
+            return readBytes;
+        }
+
+        public long readMicros() {
+            return readMicros;
+        }
+
+        /**
+         * @return number of appends
+         */
+        public long writeOps() {
+            return writeOps;
+        }
+
+        public long writeBytes() {
+            return writeBytes;
+        }
+
+        /**
+         * @return time spent appending and flushing
+         */
+        public long writeMicros() {
+            return writeMicros;
+        }
+
+        public long syncOps() {
+            return syncOps;
+        }
+
+        public long syncMicros() {
+            return syncMicros;
+        }
+
+        private Counters plus(Counters other) {
+            return new Counters(readOps + other.readOps,
+                    readBytes + other.readBytes,
+                    readMicros + other.readMicros,
+                    writeOps + other.writeOps,
+                    writeBytes + other.writeBytes,
+                    writeMicros + other.writeMicros,
+                    syncOps + other.syncOps,
+                    syncMicros + other.syncMicros);
+        }
+
+        private Counters minus(Counters other) {
+            return new Counters(readOps - other.readOps,
+                    readBytes - other.readBytes,
+                    readMicros - other.readMicros,
+                    writeOps - other.writeOps,
+                    writeBytes - other.writeBytes,
+                    writeMicros - other.writeMicros,
+                    syncOps - other.syncOps,
+                    syncMicros - other.syncMicros);
+        }
+
+        @Override
+        public String toString() {
+            return "Counters{readOps=" + readOps +
+                    ", readBytes=" + readBytes +
+                    ", readMicros=" + readMicros +
+                    ", writeOps=" + writeOps +
+                    ", writeBytes=" + writeBytes +
+                    ", writeMicros=" + writeMicros +
+                    ", syncOps=" + syncOps +
+                    ", syncMicros=" + syncMicros + "}";
+        }
+    }
+
+    private static final int STATS_PER_TYPE = 8;
+
+    private final Counters[] counters;
+
+    private IOStats(Counters[] counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Creates a new object from the flat array returned by native code: eight counters for each
+     * {@link FileType}, in declaration order.
+     *
+     * @param stats the flat counters, non-null
+     * @return a new object
+     */
+    public static IOStats fromArray(long[] stats) {
+        FileType[] types = FileType.values();
+
+        if (stats == null || stats.length != types.length * STATS_PER_TYPE) {
+            throw new IllegalArgumentException("Stats must have " + (types.length * STATS_PER_TYPE) + " elements.");
+        }
+
+        Counters[] counters = new Counters[types.length];
+
+        for (int i = 0; i < types.length; i++) {
+            int o = i * STATS_PER_TYPE;
+
+            counters[i] = new Counters(stats[o], stats[o + 1], stats[o + 2], stats[o + 3], stats[o + 4], stats[o + 5], stats[o + 6], stats[o + 7]);
+        }
+
+        return new IOStats(counters);
+    }
+
+    /**
+     * @param type the file type, non-null
+     * @return the counters for that type of file
+     */
+    public Counters get(FileType type) {
+        return counters[type.ordinal()];
+    }
+
+    /**
+     * @return the counters summed over all file types
+     */
+    public Counters total() {
+        Counters total = new Counters(0, 0, 0, 0, 0, 0, 0, 0);
+
+        for (Counters c : counters) {
+            total = total.plus(c);
+        }
+
+        return total;
+    }
+
+    /**
+     * Computes the I/O performed between an earlier observation and this one.
+     *
+     * @param earlier the earlier observation, non-null
+     * @return the difference
+     */
+    public IOStats since(IOStats earlier) {
+        if (earlier == null) {
+            throw new IllegalArgumentException("Earlier stats must not be null.");
+        }
+
+        Counters[] difference = new Counters[counters.length];
+
+        for (int i = 0; i < counters.length; i++) {
+            difference[i] = counters[i].minus(earlier.counters[i]);
+        }
+
+        return new IOStats(difference);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("IOStats{");
+
+        FileType[] types = FileType.values();
+
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(types[i]).append('=').append(counters[i]);
+        }
+
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * A range of keys, from <tt>begin</tt> inclusive to <tt>end</tt> exclusive, in LevelDB's bytewise
+ * order. A null bound is open.
+ */
+public final class KeyRange {
+    private final byte[] begin;
+    private final byte[] end;
+
+    public KeyRange(byte[] begin, byte[] end) {
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * @return the range of all keys
+     */
+    public static KeyRange all() {
+        return new KeyRange(null, null);
+    }
+
+    /**
+     * @param prefix non-null
+     * @return the range of all keys that start with the prefix
+     */
+    public static KeyRange prefix(byte[] prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix must not be null.");
+        }
+
+        int length = prefix.length;
+
+        // Keys that start with the prefix end before its last byte that can be incremented.
+        while (length > 0 && prefix[length - 1] == (byte) 0xFF) {
+            length--;
+        }
+
+        if (length == 0) {
+            return new KeyRange(prefix, null);
+        }
+
+        byte[] end = Arrays.copyOf(prefix, length);
+        end[length - 1]++;
+
+        return new KeyRange(prefix, end);
+    }
+
+    /**
+     * @return the first key of the range, or null if it starts at the first key
+     */
+    public byte[] begin() {
+        return begin;
+    }
+
+    /**
+     * @return the key after the range, or null if it ends with the last key
+     */
+    public byte[] end() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyRange(" + Arrays.toString(begin) + ", " + Arrays.toString(end) + ")";
+    }
+}
@@ -0,0 +1,285 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
+import com.github.hf.leveldb.util.SimpleWriteBatch;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A named part of a database, like a table. Obtain one with {@link LevelDB#keyspace(String)}.
+ *
+ * Keys of a keyspace are stored with a short prefix: the byte <tt>0xFF</tt> followed by the
+ * keyspace's ID as a varint, so the first 127 keyspaces take two bytes. Keys outside of keyspaces
+ * must therefore not start with <tt>0xFF</tt>, which UTF-8 encoded keys never do. The registry
+ * of keyspace names is keyspace 0.
+ *
+ * Keys passed to and returned by a keyspace never include the prefix. Use {@link #key(byte[])}
+ * to write to several keyspaces in a single {@link com.github.hf.leveldb.WriteBatch}.
+ */
+public final class Keyspace {
+    static final byte PREFIX = (byte) 0xFF;
+
+    private final LevelDB levelDB;
+    private final String name;
+    private final long id;
+    private final byte[] prefix;
+    private final byte[] limit;
+
+    Keyspace(LevelDB levelDB, String name, long id) {
+        this.levelDB = levelDB;
+        this.name = name;
+        this.id = id;
+        this.prefix = prefix(id);
+        this.limit = successor(prefix);
+    }
+
+    public LevelDB levelDB() {
+        return levelDB;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the ID of this keyspace, unique in its database
+     */
+    public long id() {
+        return id;
+    }
+
+    /**
+     * @return a copy of the prefix of all keys in this keyspace
+     */
+    public byte[] prefix() {
+        return prefix.clone();
+    }
+
+    /**
+     * The key under which a key of this keyspace is stored in the database.
+     *
+     * @param key the key, non-null
+     * @return the prefixed key
+     */
+    public byte[] key(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        byte[] prefixed = new byte[prefix.length + key.length];
+
+        System.arraycopy(prefix, 0, prefixed, 0, prefix.length);
+        System.arraycopy(key, 0, prefixed, prefix.length, key.length);
+
+        return prefixed;
+    }
+
+    /**
+     * @see LevelDB#put(byte[], byte[], boolean)
+     */
+    public void put(byte[] key, byte[] value, boolean sync) throws LevelDBException {
+        levelDB.put(key(key), value, sync);
+    }
+
+    public void put(byte[] key, byte[] value) throws LevelDBException {
+        put(key, value, false);
+    }
+
+    /**
+     * Writes a batch whose keys are all in this keyspace, without the prefix.
+     *
+     * @see LevelDB#write(WriteBatch, boolean)
+     */
+    public void write(WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        if (writeBatch == null) {
+            throw new IllegalArgumentException("Write batch must not be null.");
+        }
+
+        SimpleWriteBatch prefixed = new SimpleWriteBatch();
+
+        for (WriteBatch.Operation operation : writeBatch) {
+            if (operation.isPut()) {
+                prefixed.put(key(operation.key()), operation.value());
+            } else {
+                prefixed.del(key(operation.key()));
+            }
+        }
+
+        levelDB.write(prefixed, sync);
+    }
+
+    public void write(WriteBatch writeBatch) throws LevelDBException {
+        write(writeBatch, false);
+    }
+
+    /**
+     * @see LevelDB#get(byte[], Snapshot)
+     */
+    public byte[] get(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return levelDB.get(key(key), snapshot);
+    }
+
+    public byte[] get(byte[] key) throws LevelDBException {
+        return get(key, null);
+    }
+
+    /**
+     * @see LevelDB#contains(byte[], Snapshot)
+     */
+    public boolean contains(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return levelDB.contains(key(key), snapshot);
+    }
+
+    public boolean contains(byte[] key) throws LevelDBException {
+        return contains(key, null);
+    }
+
+    /**
+     * @see LevelDB#del(byte[], boolean)
+     */
+    public void del(byte[] key, boolean sync) throws LevelDBException {
+        levelDB.del(key(key), sync);
+    }
+
+    public void del(byte[] key) throws LevelDBException {
+        del(key, false);
+    }
+
+    /**
+     * Creates an iterator over this keyspace only, returning keys without the prefix. Seeking
+     * to the first or last key stays within the keyspace, and the iterator becomes invalid
+     * rather than moving into a neighbouring keyspace.
+     *
+     * @see LevelDB#prefixIterator(byte[], boolean, Snapshot)
+     */
+    public Iterator iterator(boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        return levelDB.prefixIterator(prefix, fillCache, snapshot);
+    }
+
+    public Iterator iterator(Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        return iterator(true, snapshot);
+    }
+
+    public Iterator iterator() throws LevelDBClosedException {
+        return iterator(true, null);
+    }
+
+    /**
+     * @return the range of keys of this keyspace in the database
+     */
+    public KeyRange range() {
+        return new KeyRange(prefix, limit);
+    }
+
+    /**
+     * Approximate size of this keyspace on disk. Recent writes still in memory are not counted.
+     *
+     * @see LevelDB#approximateSize(byte[], byte[])
+     */
+    public long approximateSize() throws LevelDBClosedException {
+        return levelDB.approximateSize(prefix, limit);
+    }
+
+    /**
+     * Deletes all pairs of this keyspace, and compacts its key range so that the space is
+     * reclaimed right away. The keyspace stays registered, and can still be used. This blocks
+     * until the compaction is done, so prefer to call it in the background.
+     *
+     * @return the number of pairs deleted
+     * @throws LevelDBException
+     */
+    public long drop() throws LevelDBException {
+        long deleted = levelDB.deleteRange(prefix, limit);
+
+        levelDB.compactRange(prefix, limit);
+
+        return deleted;
+    }
+
+    @Override
+    public String toString() {
+        return "Keyspace(" + name + ", " + id + ")";
+    }
+
+    /**
+     * @return the prefix of the keyspace with the ID
+     */
+    static byte[] prefix(long id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(10);
+
+        out.write(PREFIX);
+
+        writeVarint(out, id);
+
+        return out.toByteArray();
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    /**
+     * @return the value of a varint that takes up all of the bytes
+     */
+    static long readVarint(byte[] bytes) {
+        long value = 0;
+
+        for (int i = 0; i < bytes.length; i++) {
+            value |= (long) (bytes[i] & 0x7F) << (7 * i);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the first key after all keys that start with the prefix
+     */
+    private static byte[] successor(byte[] prefix) {
+        // Varints never end in a byte with the high bit set.
+        byte[] successor = prefix.clone();
+
+        successor[successor.length - 1]++;
+
+        return successor;
+    }
+}
@@ -36,12 +36,43 @@ package com.github.hf.leveldb;
 import com.github.hf.leveldb.exception.LevelDBClosedException;
 import com.github.hf.leveldb.exception.LevelDBException;
 import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
+import com.github.hf.leveldb.implementation.DeferredLevelDB;
 import com.github.hf.leveldb.implementation.NativeLevelDB;
 import com.github.hf.leveldb.implementation.mock.MockLevelDB;
+import com.github.hf.leveldb.util.SimpleWriteBatch;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class LevelDB implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Merge operator that adds 8-byte big-endian signed integers. A missing value counts as 0.
+     */
+    public static final String MERGE_ADD = "add";
+
+    /**
+     * Merge operator that keeps the larger of two 8-byte big-endian signed integers.
+     */
+    public static final String MERGE_MAX = "max";
+
+    /**
+     * Merge operator that appends the operand to the value.
+     */
+    public static final String MERGE_APPEND = "append";
+
+    // Guarded by keyspaces.
+    private final Map<String, Keyspace> keyspaces = new HashMap<String, Keyspace>();
+
     /**
      * Opens a new native (real) LevelDB at path with specified configuration.
      *
@@ -65,6 +96,20 @@ public abstract class LevelDB implements Closeable {
         return open(path, configure());
     }
 
+    /**
+     * Opens a native LevelDB at path on a background thread, and returns right away. Operations on
+     * the returned database wait until it is open, and if opening fails, throw the exception that
+     * {@link #open(String, com.github.hf.leveldb.LevelDB.Configuration)} would have. Key ranges
+     * passed to {@link #warmUp(Collection)} meanwhile are warmed up as soon as it is open.
+     *
+     * @param path the path to the database
+     * @param configuration configuration for the database, or null
+     * @return a new {@link com.github.hf.leveldb.implementation.DeferredLevelDB}
+     */
+    public static LevelDB openAsync(String path, Configuration configuration) {
+        return new DeferredLevelDB(path, configuration);
+    }
+
     /**
      * Use this method to obtain a {@link com.github.hf.leveldb.LevelDB.Configuration} object.
      *
@@ -138,6 +183,26 @@ public abstract class LevelDB implements Closeable {
         put(key, value, false);
     }
 
+    /**
+     * Writes a key-value pair that expires after <tt>ttlMillis</tt>. Expired pairs are no longer
+     * returned by reads or iterators, and are deleted from disk in the background. Only for
+     * databases opened with {@link Configuration#expiringEntries(boolean)}.
+     *
+     * @param key non-null, if null throws {@link java.lang.IllegalArgumentException}
+     * @param value non-null
+     * @param ttlMillis time to live in milliseconds, must be positive
+     * @param sync whether this write will be forced to disk
+     * @throws LevelDBException
+     */
+    public abstract void put(byte[] key, byte[] value, long ttlMillis, boolean sync) throws LevelDBException;
+
+    /**
+     * Asynchronous {@link #put(byte[], byte[], long, boolean)}.
+     */
+    public void put(byte[] key, byte[] value, long ttlMillis) throws LevelDBException {
+        put(key, value, ttlMillis, false);
+    }
+
     /**
      * Writes a {@link com.github.hf.leveldb.WriteBatch} to the database.
      *
@@ -176,6 +241,68 @@ public abstract class LevelDB implements Closeable {
         return get(key, null);
     }
 
+    /**
+     * Reads part of the value for the key into an existing array, so that large values need not be
+     * copied into a new Java array in full.
+     *
+     * @param key non-null, if null throws {@link java.lang.IllegalArgumentException}
+     * @param offset offset into the value from which to read
+     * @param length maximum number of bytes to read
+     * @param dest the array to read into, non-null
+     * @param destOffset offset into <tt>dest</tt>
+     * @param snapshot the snapshot from which to read the entry, may be null
+     * @return the number of bytes read, which is less than <tt>length</tt> only at the end of the
+     * value, or -1 if the key does not exist
+     * @throws LevelDBException
+     */
+    public abstract int get(byte[] key, int offset, int length, byte[] dest, int destOffset, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException;
+
+    /**
+     * Reads part of the value into the start of <tt>dest</tt>, with an implicit snapshot.
+     *
+     * @see #get(byte[], int, int, byte[], int, Snapshot)
+     */
+    public int get(byte[] key, int offset, int length, byte[] dest) throws LevelDBException {
+        return get(key, offset, length, dest, 0, null);
+    }
+
+    /**
+     * Checks whether the database has an entry for the key, without copying its value into Java.
+     * Unlike <tt>get(key) != null</tt>, this is true for keys with empty values.
+     *
+     * @param key non-null, if null throws {@link java.lang.IllegalArgumentException}
+     * @param snapshot the snapshot from which to read the entry, may be null
+     * @return whether the key exists
+     * @throws LevelDBException
+     */
+    public boolean contains(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return valueLength(key, snapshot) >= 0;
+    }
+
+    /**
+     * @see #contains(byte[], Snapshot)
+     */
+    public boolean contains(byte[] key) throws LevelDBException {
+        return contains(key, null);
+    }
+
+    /**
+     * Looks up the length of the value for the key, without copying the value into Java.
+     *
+     * @param key non-null, if null throws {@link java.lang.IllegalArgumentException}
+     * @param snapshot the snapshot from which to read the entry, may be null
+     * @return the length of the value in bytes, or -1 if the key does not exist
+     * @throws LevelDBException
+     */
+    public abstract int valueLength(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException;
+
+    /**
+     * @see #valueLength(byte[], Snapshot)
+     */
+    public int valueLength(byte[] key) throws LevelDBException {
+        return valueLength(key, null);
+    }
+
     /**
      * Deletes key from database, if it exists.
      *
@@ -195,6 +322,274 @@ public abstract class LevelDB implements Closeable {
         del(key, false);
     }
 
+    /**
+     * Atomically replaces the value of a key if it is the expected one. Atomic with respect to
+     * other compare-and-set operations and merges of the key, but a concurrent
+     * {@link #put(byte[], byte[], boolean)} of the key may be overwritten.
+     *
+     * @param key non-null
+     * @param expected the expected value, or null if the key is expected to be missing
+     * @param newValue the new value, or null to delete the key
+     * @param ttlMillis time to live of the new value, or 0 if it never expires, see {@link #put(byte[], byte[], long, boolean)}
+     * @param sync whether this write will be forced to disk
+     * @return whether the value was the expected one and was replaced
+     * @throws LevelDBException
+     */
+    public abstract boolean compareAndSet(byte[] key, byte[] expected, byte[] newValue, long ttlMillis, boolean sync) throws LevelDBException;
+
+    /**
+     * {@link #compareAndSet(byte[], byte[], byte[], long, boolean)} with a value that never expires.
+     */
+    public boolean compareAndSet(byte[] key, byte[] expected, byte[] newValue, boolean sync) throws LevelDBException {
+        return compareAndSet(key, expected, newValue, 0, sync);
+    }
+
+    /**
+     * Asynchronous {@link #compareAndSet(byte[], byte[], byte[], boolean)}.
+     */
+    public boolean compareAndSet(byte[] key, byte[] expected, byte[] newValue) throws LevelDBException {
+        return compareAndSet(key, expected, newValue, 0, false);
+    }
+
+    /**
+     * Atomically puts the pair if the key is missing.
+     *
+     * @return whether the key was missing and the pair was put
+     * @see #compareAndSet(byte[], byte[], byte[], long, boolean)
+     */
+    public boolean putIfAbsent(byte[] key, byte[] value, long ttlMillis, boolean sync) throws LevelDBException {
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+
+        return compareAndSet(key, null, value, ttlMillis, sync);
+    }
+
+    public boolean putIfAbsent(byte[] key, byte[] value, boolean sync) throws LevelDBException {
+        return putIfAbsent(key, value, 0, sync);
+    }
+
+    public boolean putIfAbsent(byte[] key, byte[] value) throws LevelDBException {
+        return putIfAbsent(key, value, 0, false);
+    }
+
+    /**
+     * Atomically deletes the key if its value is the expected one.
+     *
+     * @return whether the value was the expected one and was deleted
+     * @see #compareAndSet(byte[], byte[], byte[], long, boolean)
+     */
+    public boolean compareAndDelete(byte[] key, byte[] expected, boolean sync) throws LevelDBException {
+        if (expected == null) {
+            throw new IllegalArgumentException("Expected value must not be null.");
+        }
+
+        return compareAndSet(key, expected, null, 0, sync);
+    }
+
+    public boolean compareAndDelete(byte[] key, byte[] expected) throws LevelDBException {
+        return compareAndDelete(key, expected, false);
+    }
+
+    /**
+     * Atomically replaces the value of a key with the result of a merge operator, applied to the
+     * current value (or none) and an operand. Merges of the same key never interleave, but a
+     * concurrent {@link #put(byte[], byte[], boolean)} of the key may be overwritten.
+     *
+     * @param operator the merge operator, e.g. {@link #MERGE_ADD}
+     * @param key non-null
+     * @param operand non-null
+     * @param sync whether this write will be forced to disk
+     * @return the new value
+     * @throws LevelDBException if the value or operand can't be merged
+     */
+    public byte[] merge(String operator, byte[] key, byte[] operand, boolean sync) throws LevelDBException {
+        return merge(operator, key, operand, sync, true);
+    }
+
+    /**
+     * Merges, returning the new value only if <tt>returnValue</tt> is set.
+     *
+     * @see #merge(String, byte[], byte[], boolean)
+     */
+    protected abstract byte[] merge(String operator, byte[] key, byte[] operand, boolean sync, boolean returnValue) throws LevelDBException;
+
+    /**
+     * Begins an optimistic transaction reading from a new snapshot of this database. Make sure it is
+     * committed or closed.
+     *
+     * @return a new transaction
+     * @throws LevelDBClosedException
+     * @see Transaction
+     */
+    public Transaction beginTransaction() throws LevelDBClosedException {
+        return new Transaction(this);
+    }
+
+    /**
+     * Atomically writes a transaction's batch if none of the keys has changed since the snapshot.
+     *
+     * @param snapshot the snapshot the transaction read from
+     * @param keys the keys read or written by the transaction, sorted and unique
+     * @param writeBatch the transaction's writes
+     * @param sync whether this write will be forced to disk
+     * @return whether no key had changed and the batch was written
+     * @throws LevelDBException
+     */
+    protected abstract boolean commit(Snapshot snapshot, List<byte[]> keys, WriteBatch writeBatch, boolean sync) throws LevelDBException;
+
+    /**
+     * Atomically adds to a counter, stored as an 8-byte big-endian signed integer.
+     *
+     * @param key non-null
+     * @param delta the amount to add, may be negative
+     * @param sync whether this write will be forced to disk
+     * @return the new value of the counter
+     * @throws LevelDBException if the value is not a counter
+     */
+    public long increment(byte[] key, long delta, boolean sync) throws LevelDBException {
+        byte[] value = merge(MERGE_ADD, key, ByteBuffer.allocate(8).putLong(delta).array(), sync, true);
+
+        return ByteBuffer.wrap(value).getLong();
+    }
+
+    /**
+     * Asynchronous {@link #increment(byte[], long, boolean)}.
+     */
+    public long increment(byte[] key, long delta) throws LevelDBException {
+        return increment(key, delta, false);
+    }
+
+    /**
+     * Atomically appends to a value, or writes the bytes if there is none.
+     *
+     * @param key non-null
+     * @param bytes non-null
+     * @param sync whether this write will be forced to disk
+     * @throws LevelDBException
+     */
+    public void append(byte[] key, byte[] bytes, boolean sync) throws LevelDBException {
+        merge(MERGE_APPEND, key, bytes, sync, false);
+    }
+
+    /**
+     * Asynchronous {@link #append(byte[], byte[], boolean)}.
+     */
+    public void append(byte[] key, byte[] bytes) throws LevelDBException {
+        append(key, bytes, false);
+    }
+
+    /**
+     * Compacts the underlying storage for the key range <tt>[begin, end]</tt>, discarding deleted and
+     * overwritten values and rewriting the data to the last level. This is expensive and blocks the
+     * caller until done; prefer to run it in the background.
+     *
+     * @param begin first key of the range, or null for the beginning of the database
+     * @param end last key of the range, or null for the end of the database
+     * @throws LevelDBException
+     */
+    public abstract void compactRange(byte[] begin, byte[] end) throws LevelDBException;
+
+    /**
+     * Writes the memtable to a table file and starts a new write-ahead log, so that opening the
+     * database again replays none of the writes made so far. Blocks until done, but is much cheaper
+     * than {@link #compactRange(byte[], byte[])}; call it e.g. when the app goes to the background.
+     *
+     * @return the size of the write-ahead log afterwards, see {@link #logSize()}
+     * @throws LevelDBException
+     * @see Configuration#flushAfterBytes(long)
+     */
+    public abstract long flush() throws LevelDBException;
+
+    /**
+     * Makes all writes that have completed durable, as if the last of them had been synchronous.
+     * A synchronous write only syncs the current write-ahead log, while writes in a log that the
+     * memtable has since been switched away from are only durable once the memtable is flushed, so
+     * this also waits for that flush when there is one.
+     *
+     * @throws LevelDBException
+     */
+    public abstract void sync() throws LevelDBException;
+
+    /**
+     * The size of the write-ahead log, which is replayed when the database is opened. It grows with
+     * every write until the memtable is full or {@link #flush()}ed.
+     *
+     * @return the size in bytes
+     * @throws LevelDBClosedException
+     */
+    public abstract long logSize() throws LevelDBClosedException;
+
+    /**
+     * Deletes all keys in the range <tt>[begin, end)</tt>, in batches of asynchronous deletes.
+     * Deletes only hide the data until compacted, so follow up with
+     * {@link #compactRange(byte[], byte[])} to reclaim the space.
+     *
+     * @param begin first key of the range, non-null
+     * @param end key after the range, or null for the end of the database
+     * @return the number of keys deleted
+     * @throws LevelDBException
+     */
+    public abstract long deleteRange(byte[] begin, byte[] end) throws LevelDBException;
+
+    /**
+     * Loads the table index and data blocks of the key ranges into the block cache, on a background
+     * thread, so that the first reads of them don't have to go to disk. Warming up stops early if
+     * the database is closed. Values in a value log are not loaded.
+     *
+     * @param ranges the key ranges, non-null
+     * @throws LevelDBClosedException
+     */
+    public abstract void warmUp(Collection<KeyRange> ranges) throws LevelDBClosedException;
+
+    /**
+     * @see #warmUp(Collection)
+     */
+    public void warmUp(KeyRange... ranges) throws LevelDBClosedException {
+        warmUp(Arrays.asList(ranges));
+    }
+
+    /**
+     * Approximates the size on disk of the keys in the range <tt>[begin, end)</tt>. Writes that are
+     * still in memory are not counted, and neither are values in a value log.
+     *
+     * @param begin first key of the range, non-null
+     * @param end key after the range, non-null
+     * @return the approximate size in bytes
+     * @throws LevelDBClosedException
+     */
+    public abstract long approximateSize(byte[] begin, byte[] end) throws LevelDBClosedException;
+
+    /**
+     * Rewrites the live values of value log files that are mostly garbage, and deletes those files.
+     * Also runs in the background while the database is open.
+     *
+     * @return the number of bytes of value log files reclaimed, 0 without a value log
+     * @throws LevelDBException
+     * @see Configuration#valueLogThreshold(int)
+     */
+    public abstract long collectValueLogGarbage() throws LevelDBException;
+
+    /**
+     * Deletes all expired pairs and compacts the ranges they were in. Also runs in the background
+     * while the database is open, at a limited rate.
+     *
+     * @return the number of pairs deleted, 0 without expiring entries
+     * @throws LevelDBException
+     * @see Configuration#expiringEntries(boolean)
+     */
+    public abstract long sweepExpired() throws LevelDBException;
+
+    /**
+     * Creates a consistent copy of this database at <tt>targetPath</tt>, which can be opened like
+     * any other database. Table files are hard-linked where possible, so this is fast and takes
+     * little extra space. Writes can continue meanwhile, and end up in the copy or not.
+     *
+     * @param targetPath path of the copy, must not exist
+     * @throws LevelDBException
+     */
+    public abstract void checkpoint(String targetPath) throws LevelDBException;
+
     /**
      * Raw form of {@link #getProperty(String)}.
      *
@@ -230,6 +625,84 @@ public abstract class LevelDB implements Closeable {
         return getProperty(key == null ? null : key.getBytes());
     }
 
+    /**
+     * Reads and parses the <tt>leveldb.stats</tt>, <tt>leveldb.sstables</tt> and
+     * <tt>leveldb.approximate-memory-usage</tt> properties.
+     *
+     * @return parsed statistics, never null
+     * @throws LevelDBClosedException
+     * @see com.github.hf.leveldb.DbStats
+     */
+    public DbStats getStats() throws LevelDBClosedException {
+        return DbStats.parse(getProperty("leveldb.stats"),
+                getProperty("leveldb.sstables"),
+                getProperty("leveldb.approximate-memory-usage"));
+    }
+
+    /**
+     * Reads the block cache counters of this database. Compare two observations with
+     * {@link com.github.hf.leveldb.CacheStats#since(CacheStats)} to get the hit ratio over a period.
+     *
+     * @return cache counters since the database was opened
+     * @throws LevelDBClosedException
+     */
+    public abstract CacheStats getCacheStats() throws LevelDBClosedException;
+
+    /**
+     * Reads the file I/O counters of this database.
+     *
+     * @return I/O performed since the database was opened, or null if the database was not
+     * configured to {@link com.github.hf.leveldb.LevelDB.Configuration#collectIOStats(boolean)}
+     * @throws LevelDBClosedException
+     */
+    public abstract IOStats getIOStats() throws LevelDBClosedException;
+
+    /**
+     * Keeps memtable flushes and compactions from starting, and waits for any that are running to
+     * finish. Use this to keep background I/O out of latency-critical windows, like app startup.
+     *
+     * Background work is resumed automatically before writes would stall on it, i.e. when level-0
+     * approaches LevelDB's slowdown trigger or a write waits for a memtable flush.
+     *
+     * {@link #flush()} and {@link #compactRange(byte[], byte[])} let background work run while they
+     * wait for it, and pause it again before returning. Flushes by the
+     * {@link Configuration#flushAfterBytes(long)} policy are skipped while paused.
+     *
+     * @throws LevelDBClosedException
+     * @see #resumeBackgroundWork()
+     */
+    public abstract void pauseBackgroundWork() throws LevelDBClosedException;
+
+    /**
+     * Lets background work that was paused with {@link #pauseBackgroundWork()} run again. Does
+     * nothing if it is not paused.
+     *
+     * @throws LevelDBClosedException
+     */
+    public abstract void resumeBackgroundWork() throws LevelDBClosedException;
+
+    /**
+     * @return whether background work is paused, it may have been resumed automatically
+     * @throws LevelDBClosedException
+     */
+    public abstract boolean isBackgroundWorkPaused() throws LevelDBClosedException;
+
+    /**
+     * Adds a listener for write stalls, memtable flushes and compactions. Listeners are called on a
+     * dedicated thread, started when the first listener is added and stopped on {@link #close()}.
+     *
+     * @param listener the listener, non-null
+     * @throws LevelDBClosedException
+     */
+    public abstract void addEventListener(DbEvent.Listener listener) throws LevelDBClosedException;
+
+    /**
+     * Removes a listener added with {@link #addEventListener(DbEvent.Listener)}.
+     *
+     * @param listener the listener
+     */
+    public abstract void removeEventListener(DbEvent.Listener listener);
+
     /**
      * Creates a new {@link com.github.hf.leveldb.Iterator} for this database.
      *
@@ -244,6 +717,93 @@ public abstract class LevelDB implements Closeable {
      */
     public abstract Iterator iterator(boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException;
 
+    /**
+     * Creates a new {@link com.github.hf.leveldb.Iterator} over the keys that start with
+     * <tt>prefix</tt>. Keys are returned, and sought, without the prefix. The iterator becomes
+     * invalid when it would leave the prefix, so it never reads neighbouring keys.
+     *
+     * @param prefix the prefix, non-null
+     * @param fillCache whether to fill the internal cache while iterating over the database
+     * @param snapshot the snapshot from which to read the entries, may be null
+     * @return new iterator
+     * @throws LevelDBClosedException
+     */
+    public abstract Iterator prefixIterator(byte[] prefix, boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException;
+
+    /**
+     * Gets the keyspace with the name, registering it if new.
+     *
+     * @param name the name, non-empty
+     * @return the keyspace
+     * @throws LevelDBException
+     * @see com.github.hf.leveldb.Keyspace
+     */
+    public Keyspace keyspace(String name) throws LevelDBException {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("Keyspace name must not be empty.");
+        }
+
+        synchronized (keyspaces) {
+            Keyspace keyspace = keyspaces.get(name);
+
+            if (keyspace != null) {
+                return keyspace;
+            }
+
+            // The registry maps names to IDs, and the empty key to the last ID.
+            Keyspace registry = new Keyspace(this, "", 0);
+
+            byte[] nameKey = name.getBytes(UTF_8);
+            byte[] stored = registry.get(nameKey);
+
+            long id;
+
+            if (stored != null) {
+                id = Keyspace.readVarint(stored);
+            } else {
+                byte[] last = registry.get(new byte[0]);
+
+                id = last == null ? 1 : Keyspace.readVarint(last) + 1;
+
+                ByteArrayOutputStream idBytes = new ByteArrayOutputStream(10);
+                Keyspace.writeVarint(idBytes, id);
+
+                registry.write(new SimpleWriteBatch()
+                        .put(nameKey, idBytes.toByteArray())
+                        .put(new byte[0], idBytes.toByteArray()), true);
+            }
+
+            keyspace = new Keyspace(this, name, id);
+            keyspaces.put(name, keyspace);
+
+            return keyspace;
+        }
+    }
+
+    /**
+     * @return the names of all registered keyspaces, in byte order of their UTF-8 encoding
+     * @throws LevelDBClosedException
+     */
+    public List<String> keyspaceNames() throws LevelDBClosedException {
+        List<String> names = new ArrayList<String>();
+
+        Iterator iterator = prefixIterator(Keyspace.prefix(0), false, null);
+
+        try {
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+
+                if (key.length > 0) {
+                    names.add(new String(key, UTF_8));
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        return names;
+    }
+
     /**
      * Iterate over the database with an implicit snapshot created at the time of creation
      * of the iterator.
@@ -317,17 +877,46 @@ public abstract class LevelDB implements Closeable {
      */
     public abstract void releaseSnapshot(Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException;
 
+    /**
+     * Eviction policy of the block cache.
+     */
+    public enum CachePolicy {
+        /**
+         * LevelDB's default least-recently-used cache. A single scan over the database with
+         * <tt>fillCache</tt> enabled may evict every other block from it.
+         */
+        LRU,
+
+        /**
+         * Segmented LRU cache. Blocks enter a probationary segment and are only promoted into a
+         * protected segment (80% of the capacity) when read again, so scans only evict other
+         * probationary blocks and frequently read blocks stay cached.
+         */
+        SEGMENTED_LRU
+    }
+
     /**
      * Specifies a configuration to open the database with.
      */
     public static final class Configuration {
         private boolean createIfMissing;
         private int cacheSize;
+        private CachePolicy cachePolicy;
         private int blockSize;
         private int writeBufferSize;
+        private boolean collectIOStats;
+        private int backgroundThreadPriority;
+        private boolean throttleWrites;
+        private ValueCache valueCache;
+        private int valueLogThreshold;
+        private boolean expiringEntries;
+        private boolean profileReads;
+        private long flushAfterBytes;
+        private long flushAfterMillis;
 
         private Configuration() {
             createIfMissing = true;
+            cachePolicy = CachePolicy.LRU;
         }
 
         public boolean createIfMissing() {
@@ -350,6 +939,20 @@ public abstract class LevelDB implements Closeable {
             return this;
         }
 
+        public CachePolicy cachePolicy() {
+            return cachePolicy;
+        }
+
+        public Configuration cachePolicy(CachePolicy cachePolicy) {
+            if (cachePolicy == null) {
+                throw new IllegalArgumentException("Cache policy must not be null.");
+            }
+
+            this.cachePolicy = cachePolicy;
+
+            return this;
+        }
+
         public int blockSize() {
             return this.blockSize;
         }
@@ -369,5 +972,168 @@ public abstract class LevelDB implements Closeable {
 
             return this;
         }
+
+        public boolean collectIOStats() {
+            return collectIOStats;
+        }
+
+        /**
+         * Whether to count reads, appends and syncs of the database files. Counting adds two clock
+         * reads per file operation.
+         *
+         * @see com.github.hf.leveldb.LevelDB#getIOStats()
+         */
+        public Configuration collectIOStats(boolean collectIOStats) {
+            this.collectIOStats = collectIOStats;
+
+            return this;
+        }
+
+        public int backgroundThreadPriority() {
+            return backgroundThreadPriority;
+        }
+
+        /**
+         * Linux nice value at which memtable flushes and compactions run, like
+         * <tt>android.os.Process.THREAD_PRIORITY_BACKGROUND</tt>. 0 leaves the priority unchanged.
+         *
+         * The background thread is shared by all open databases, so the priority is only applied
+         * while running work for this one.
+         */
+        public Configuration backgroundThreadPriority(int backgroundThreadPriority) {
+            if (backgroundThreadPriority < -20 || backgroundThreadPriority > 19) {
+                throw new IllegalArgumentException("Background thread priority must be between -20 and 19.");
+            }
+
+            this.backgroundThreadPriority = backgroundThreadPriority;
+
+            return this;
+        }
+
+        public boolean throttleWrites() {
+            return throttleWrites;
+        }
+
+        /**
+         * Whether to delay writes a little as level-0 fills up, so that compactions can keep up
+         * before LevelDB's own slowdown and stop triggers cause long stalls. Trades some peak write
+         * throughput for steadier write latency.
+         */
+        public Configuration throttleWrites(boolean throttleWrites) {
+            this.throttleWrites = throttleWrites;
+
+            return this;
+        }
+
+        public ValueCache valueCache() {
+            return valueCache;
+        }
+
+        /**
+         * Java-side cache for the values of hot keys, null for none. Reads without a snapshot go
+         * through it, and writes through the database invalidate it. Writes from other instances
+         * opened on the same path are not seen by it.
+         *
+         * Cached values are shared between readers and must not be modified.
+         *
+         * @see com.github.hf.leveldb.util.LruValueCache
+         */
+        public Configuration valueCache(ValueCache valueCache) {
+            this.valueCache = valueCache;
+
+            return this;
+        }
+
+        public int valueLogThreshold() {
+            return valueLogThreshold;
+        }
+
+        /**
+         * Size from which values are stored in a separate value log, leaving only a small pointer
+         * in LevelDB, so that compactions do not rewrite them over and over. 0 turns it off.
+         *
+         * The value log can only be turned on for a new database. Once turned on, it stays in use
+         * for existing values even if this is later set to 0.
+         *
+         * @see com.github.hf.leveldb.LevelDB#collectValueLogGarbage()
+         */
+        public Configuration valueLogThreshold(int valueLogThreshold) {
+            if (valueLogThreshold < 0) {
+                throw new IllegalArgumentException("Value log threshold must not be negative.");
+            }
+
+            this.valueLogThreshold = valueLogThreshold;
+
+            return this;
+        }
+
+        public boolean expiringEntries() {
+            return expiringEntries;
+        }
+
+        /**
+         * Allows pairs to expire, see {@link LevelDB#put(byte[], byte[], long, boolean)}. Every
+         * value is stored with an 8-byte expiry time, which reads check and strip in native code.
+         *
+         * Can only be turned on for a new database, and stays on once turned on. It can't be
+         * combined with a value cache or the value log.
+         */
+        public Configuration expiringEntries(boolean expiringEntries) {
+            this.expiringEntries = expiringEntries;
+
+            return this;
+        }
+
+        public boolean profileReads() {
+            return profileReads;
+        }
+
+        /**
+         * Whether to count a sample of reads by key prefix, save the hottest prefixes on
+         * {@link LevelDB#close()}, and warm their key ranges up at low priority when the database
+         * is opened again, see {@link LevelDB#warmUp(Collection)}. Suits apps that read much the
+         * same data after every start.
+         */
+        public Configuration profileReads(boolean profileReads) {
+            this.profileReads = profileReads;
+
+            return this;
+        }
+
+        public long flushAfterBytes() {
+            return flushAfterBytes;
+        }
+
+        /**
+         * Log size from which a background thread {@link LevelDB#flush()}es the database, to bound
+         * how much is replayed when it is opened. 0 turns it off.
+         */
+        public Configuration flushAfterBytes(long flushAfterBytes) {
+            if (flushAfterBytes < 0) {
+                throw new IllegalArgumentException("Flush size must not be negative.");
+            }
+
+            this.flushAfterBytes = flushAfterBytes;
+
+            return this;
+        }
+
+        public long flushAfterMillis() {
+            return flushAfterMillis;
+        }
+
+        /**
+         * Time after which a background thread {@link LevelDB#flush()}es the database if anything
+         * was written since the last flush. 0 turns it off.
+         */
+        public Configuration flushAfterMillis(long flushAfterMillis) {
+            if (flushAfterMillis < 0) {
+                throw new IllegalArgumentException("Flush interval must not be negative.");
+            }
+
+            this.flushAfterMillis = flushAfterMillis;
+
+            return this;
+        }
     }
 }
@@ -0,0 +1,210 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBTransactionConflictException;
+import com.github.hf.leveldb.util.Bytes;
+import com.github.hf.leveldb.util.IndexedWriteBatch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * An optimistic transaction. Obtain one with {@link LevelDB#beginTransaction()}.
+ *
+ * Reads see the database as of when the transaction began, together with the transaction's own
+ * writes. Writes are buffered until {@link #commit(boolean)}, which checks that none of the keys the
+ * transaction read or wrote was changed since it began, and then writes them all in one
+ * {@link WriteBatch}. Otherwise it throws {@link LevelDBTransactionConflictException}, and nothing
+ * is written.
+ *
+ * Keys are checked by comparing their stored values, under the same per-key locks as
+ * {@link LevelDB#compareAndSet(byte[], byte[], byte[], boolean)}. Changes by other transactions,
+ * merges and compare-and-set are detected reliably, plain writes only if they are not concurrent
+ * with the commit.
+ *
+ * Transactions are not thread safe, and must be committed or closed to release their snapshot.
+ */
+public final class Transaction implements Closeable {
+    private final LevelDB levelDB;
+    private final Snapshot snapshot;
+
+    private final IndexedWriteBatch writes = new IndexedWriteBatch();
+    private final TreeSet<byte[]> reads = new TreeSet<byte[]>(Bytes.BYTEWISE_COMPARATOR);
+
+    private boolean finished;
+
+    Transaction(LevelDB levelDB) throws LevelDBClosedException {
+        this.levelDB = levelDB;
+        this.snapshot = levelDB.obtainSnapshot();
+    }
+
+    public LevelDB levelDB() {
+        return levelDB;
+    }
+
+    /**
+     * Reads a value as of when the transaction began, or as written by this transaction.
+     *
+     * @param key non-null
+     * @return the value, or null
+     * @throws LevelDBException
+     */
+    public byte[] get(byte[] key) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        checkIfFinished();
+
+        WriteBatch.Operation write = writes.getOperation(key);
+
+        if (write != null) {
+            return write.value();
+        }
+
+        reads.add(key);
+
+        return levelDB.get(key, snapshot);
+    }
+
+    /**
+     * Buffers a put until the transaction commits.
+     *
+     * @param key non-null
+     * @param value non-null
+     * @return this
+     */
+    public Transaction put(byte[] key, byte[] value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+
+        checkIfFinished();
+
+        writes.put(key, value);
+
+        return this;
+    }
+
+    /**
+     * Buffers a delete until the transaction commits.
+     *
+     * @param key non-null
+     * @return this
+     */
+    public Transaction del(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        checkIfFinished();
+
+        writes.del(key);
+
+        return this;
+    }
+
+    /**
+     * Validates and writes the transaction, and releases its snapshot. The transaction can't be used
+     * afterwards, whether or not it committed.
+     *
+     * @param sync whether the write will be forced to disk
+     * @throws LevelDBTransactionConflictException if a key read or written was changed meanwhile
+     * @throws LevelDBException
+     */
+    public void commit(boolean sync) throws LevelDBException {
+        checkIfFinished();
+
+        finished = true;
+
+        try {
+            if (writes.isEmpty()) {
+                return;
+            }
+
+            TreeSet<byte[]> checked = new TreeSet<byte[]>(reads);
+
+            for (WriteBatch.Operation write : writes) {
+                checked.add(write.key());
+            }
+
+            List<byte[]> keys = new ArrayList<byte[]>(checked);
+
+            if (!levelDB.commit(snapshot, keys, writes, sync)) {
+                throw new LevelDBTransactionConflictException();
+            }
+        } finally {
+            levelDB.releaseSnapshot(snapshot);
+        }
+    }
+
+    public void commit() throws LevelDBException {
+        commit(false);
+    }
+
+    /**
+     * Discards the buffered writes and releases the snapshot, unless already committed. Can be
+     * called more than once.
+     */
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+
+        try {
+            levelDB.releaseSnapshot(snapshot);
+        } catch (LevelDBException e) {
+            // Closing the database released it already.
+        }
+    }
+
+    private void checkIfFinished() {
+        if (finished) {
+            throw new IllegalStateException("Transaction has already been committed or closed.");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.hf.leveldb;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Java-side cache of values, in front of a database's native reads.
+ *
+ * The database reads through the cache for reads without a snapshot, and invalidates keys written
+ * through it. Implementations decide what to keep and what to evict, and must be thread-safe.
+ *
+ * The database copies values on their way in and out of the cache, so callers of
+ * {@link com.github.hf.leveldb.LevelDB#get(byte[])} get their own array, as without a cache.
+ *
+ * @see com.github.hf.leveldb.LevelDB.Configuration#valueCache(ValueCache)
+ * @see com.github.hf.leveldb.util.LruValueCache
+ */
+public interface ValueCache {
+
+    /**
+     * @param key the key, non-null
+     * @return the cached value, or null if not cached
+     */
+    byte[] get(byte[] key);
+
+    /**
+     * Offers a value read from the database. The cache may decline to keep it.
+     *
+     * @param key   the key, non-null
+     * @param value the value, non-null
+     */
+    void put(byte[] key, byte[] value);
+
+    /**
+     * Removes the key, called after it has been written.
+     *
+     * @param key the key, non-null
+     */
+    void invalidate(byte[] key);
+
+    /**
+     * Removes all keys.
+     */
+    void invalidateAll();
+}
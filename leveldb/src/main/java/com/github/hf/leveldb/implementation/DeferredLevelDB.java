@@ -0,0 +1,391 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.CacheStats;
+import com.github.hf.leveldb.DbEvent;
+import com.github.hf.leveldb.IOStats;
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.KeyRange;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.WriteBatch;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link NativeLevelDB} that is being opened on a background thread. Every operation waits until
+ * opening is done, and then runs on the opened database, or throws the exception opening failed
+ * with. Obtain one with {@link LevelDB#openAsync(String, LevelDB.Configuration)}.
+ */
+public class DeferredLevelDB extends LevelDB {
+    private final String path;
+
+    // Guarded by this, both null until opening is done.
+    private NativeLevelDB levelDB;
+    private LevelDBException failure;
+
+    private boolean opened;
+
+    // Guarded by this, warmed up once open.
+    private final List<KeyRange> pendingWarmUp = new ArrayList<KeyRange>();
+
+    public DeferredLevelDB(final String path, final Configuration configuration) {
+        if (path == null) {
+            throw new IllegalArgumentException("Path must not be null.");
+        }
+
+        this.path = path;
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                openInBackground(path, configuration);
+            }
+        }, "LevelDB-Open");
+
+        thread.start();
+    }
+
+    private void openInBackground(String path, Configuration configuration) {
+        NativeLevelDB opened = null;
+        LevelDBException failure = null;
+
+        try {
+            opened = new NativeLevelDB(path, configuration);
+        } catch (LevelDBException e) {
+            failure = e;
+        } catch (Throwable e) {
+            // Also errors like UnsatisfiedLinkError, or waiting operations would never return.
+            failure = new LevelDBException(e.toString());
+        }
+
+        List<KeyRange> warmUp;
+
+        synchronized (this) {
+            this.levelDB = opened;
+            this.failure = failure;
+            this.opened = true;
+
+            warmUp = new ArrayList<KeyRange>(pendingWarmUp);
+            pendingWarmUp.clear();
+
+            notifyAll();
+        }
+
+        if (opened != null && !warmUp.isEmpty()) {
+            try {
+                opened.warmUp(warmUp);
+            } catch (LevelDBClosedException e) {
+                // Closed right away.
+            }
+        }
+    }
+
+    /**
+     * Whether opening is done, successfully or not. Operations don't wait once it is.
+     */
+    public synchronized boolean isOpened() {
+        return opened;
+    }
+
+    /**
+     * Waits until the database is open.
+     *
+     * @return the open database
+     * @throws LevelDBException if opening failed
+     */
+    public NativeLevelDB awaitOpen() throws LevelDBException {
+        boolean interrupted = false;
+
+        try {
+            synchronized (this) {
+                while (!opened) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+
+                if (failure != null) {
+                    throw failure;
+                }
+
+                return levelDB;
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Like {@link #awaitOpen()}, for operations that can only fail because the database is closed.
+     */
+    private NativeLevelDB awaitOpenOrClosed() throws LevelDBClosedException {
+        try {
+            return awaitOpen();
+        } catch (LevelDBClosedException e) {
+            throw e;
+        } catch (LevelDBException e) {
+            throw new LevelDBClosedException("Database failed to open: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits until opening is done, and closes the database if it was opened.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitOpen().close();
+        } catch (LevelDBException e) {
+            // Nothing to close.
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value, boolean sync) throws LevelDBException {
+        awaitOpen().put(key, value, sync);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value, long ttlMillis, boolean sync) throws LevelDBException {
+        awaitOpen().put(key, value, ttlMillis, sync);
+    }
+
+    @Override
+    public void write(WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        awaitOpen().write(writeBatch, sync);
+    }
+
+    @Override
+    public byte[] get(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return awaitOpen().get(key, snapshot);
+    }
+
+    @Override
+    public int get(byte[] key, int offset, int length, byte[] dest, int destOffset, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return awaitOpen().get(key, offset, length, dest, destOffset, snapshot);
+    }
+
+    @Override
+    public int valueLength(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return awaitOpen().valueLength(key, snapshot);
+    }
+
+    @Override
+    public void del(byte[] key, boolean sync) throws LevelDBException {
+        awaitOpen().del(key, sync);
+    }
+
+    @Override
+    public boolean compareAndSet(byte[] key, byte[] expected, byte[] newValue, long ttlMillis, boolean sync) throws LevelDBException {
+        return awaitOpen().compareAndSet(key, expected, newValue, ttlMillis, sync);
+    }
+
+    @Override
+    protected byte[] merge(String operator, byte[] key, byte[] operand, boolean sync, boolean returnValue) throws LevelDBException {
+        return awaitOpen().merge(operator, key, operand, sync, returnValue);
+    }
+
+    @Override
+    protected boolean commit(Snapshot snapshot, List<byte[]> keys, WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        return awaitOpen().commit(snapshot, keys, writeBatch, sync);
+    }
+
+    @Override
+    public void compactRange(byte[] begin, byte[] end) throws LevelDBException {
+        awaitOpen().compactRange(begin, end);
+    }
+
+    @Override
+    public long flush() throws LevelDBException {
+        return awaitOpen().flush();
+    }
+
+    @Override
+    public void sync() throws LevelDBException {
+        awaitOpen().sync();
+    }
+
+    @Override
+    public long logSize() throws LevelDBClosedException {
+        return awaitOpenOrClosed().logSize();
+    }
+
+    @Override
+    public long deleteRange(byte[] begin, byte[] end) throws LevelDBException {
+        return awaitOpen().deleteRange(begin, end);
+    }
+
+    /**
+     * Queues the ranges without waiting while the database is being opened.
+     */
+    @Override
+    public void warmUp(Collection<KeyRange> ranges) throws LevelDBClosedException {
+        if (ranges == null) {
+            throw new IllegalArgumentException("Ranges must not be null.");
+        }
+
+        synchronized (this) {
+            if (!opened) {
+                pendingWarmUp.addAll(ranges);
+                return;
+            }
+        }
+
+        awaitOpenOrClosed().warmUp(ranges);
+    }
+
+    @Override
+    public long approximateSize(byte[] begin, byte[] end) throws LevelDBClosedException {
+        return awaitOpenOrClosed().approximateSize(begin, end);
+    }
+
+    @Override
+    public long collectValueLogGarbage() throws LevelDBException {
+        return awaitOpen().collectValueLogGarbage();
+    }
+
+    @Override
+    public long sweepExpired() throws LevelDBException {
+        return awaitOpen().sweepExpired();
+    }
+
+    @Override
+    public void checkpoint(String targetPath) throws LevelDBException {
+        awaitOpen().checkpoint(targetPath);
+    }
+
+    @Override
+    public byte[] getPropertyBytes(byte[] key) throws LevelDBClosedException {
+        return awaitOpenOrClosed().getPropertyBytes(key);
+    }
+
+    @Override
+    public CacheStats getCacheStats() throws LevelDBClosedException {
+        return awaitOpenOrClosed().getCacheStats();
+    }
+
+    @Override
+    public IOStats getIOStats() throws LevelDBClosedException {
+        return awaitOpenOrClosed().getIOStats();
+    }
+
+    @Override
+    public void pauseBackgroundWork() throws LevelDBClosedException {
+        awaitOpenOrClosed().pauseBackgroundWork();
+    }
+
+    @Override
+    public void resumeBackgroundWork() throws LevelDBClosedException {
+        awaitOpenOrClosed().resumeBackgroundWork();
+    }
+
+    @Override
+    public boolean isBackgroundWorkPaused() throws LevelDBClosedException {
+        return awaitOpenOrClosed().isBackgroundWorkPaused();
+    }
+
+    @Override
+    public void addEventListener(DbEvent.Listener listener) throws LevelDBClosedException {
+        awaitOpenOrClosed().addEventListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(DbEvent.Listener listener) {
+        try {
+            awaitOpen().removeEventListener(listener);
+        } catch (LevelDBException e) {
+            // Never added.
+        }
+    }
+
+    @Override
+    public Iterator iterator(boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        return awaitOpenOrClosed().iterator(fillCache, snapshot);
+    }
+
+    @Override
+    public Iterator prefixIterator(byte[] prefix, boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        return awaitOpenOrClosed().prefixIterator(prefix, fillCache, snapshot);
+    }
+
+    /**
+     * Known before opening is done.
+     */
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Does nothing, the path is fixed when opening starts.
+     */
+    @Override
+    protected void setPath(String path) {
+        // Never called.
+    }
+
+    /**
+     * Does not wait. A database that failed to open counts as closed.
+     */
+    @Override
+    public synchronized boolean isClosed() {
+        if (!opened) {
+            return false;
+        }
+
+        return levelDB == null || levelDB.isClosed();
+    }
+
+    @Override
+    public Snapshot obtainSnapshot() throws LevelDBClosedException {
+        return awaitOpenOrClosed().obtainSnapshot();
+    }
+
+    @Override
+    public void releaseSnapshot(Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        awaitOpenOrClosed().releaseSnapshot(snapshot);
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import android.util.Log;
+import com.github.hf.leveldb.DbEvent;
+
+import java.util.List;
+
+/**
+ * Moves events out of the native queue and hands them to the listeners.
+ */
+final class EventThread extends Thread {
+
+    /**
+     * Access to the native event queue of a database.
+     */
+    interface Source {
+        /**
+         * Waits for events, recognizing them from the info log from the first call on.
+         *
+         * @param timeoutMillis maximum time to wait for an event
+         * @return four longs per event: type ordinal, time in milliseconds, level and bytes; may be empty
+         */
+        long[] poll(int timeoutMillis);
+
+        /**
+         * Makes all current and future polls return immediately.
+         */
+        void wakeUp();
+    }
+
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+
+    private final Source source;
+    private final List<DbEvent.Listener> listeners;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param source    the event queue, must stay valid until the thread has exited
+     * @param listeners the listeners, may change while polling
+     */
+    EventThread(Source source, List<DbEvent.Listener> listeners) {
+        super("LevelDB-Events");
+        setDaemon(true);
+
+        this.source = source;
+        this.listeners = listeners;
+    }
+
+    /**
+     * Called with the database lock held, while the database is still open.
+     */
+    void stopPolling() {
+        stopped = true;
+
+        source.wakeUp();
+    }
+
+    /**
+     * Waits for the thread to exit after {@link #stopPolling()}, unless called from it: a listener
+     * that closes the database is on this thread, and will not poll again.
+     */
+    void awaitExit() {
+        if (this == Thread.currentThread()) {
+            return;
+        }
+
+        boolean interrupted = false;
+
+        while (isAlive()) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        DbEvent.Type[] types = DbEvent.Type.values();
+
+        while (!stopped) {
+            long[] events = source.poll(POLL_TIMEOUT_MILLIS);
+
+            for (int i = 0; i + 3 < events.length && !stopped; i += 4) {
+                DbEvent event = new DbEvent(types[(int) events[i]], events[i + 1], (int) events[i + 2], events[i + 3]);
+
+                for (DbEvent.Listener listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        Log.e(NativeLevelDB.class.getName(), "Event listener failed.", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically sweeps expired pairs, pausing between batches to limit its rate.
+ */
+final class ExpirySweepThread extends PeriodicThread {
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long PAUSE_MILLIS = 100;
+
+    private final NativeLevelDB levelDB;
+
+    ExpirySweepThread(NativeLevelDB levelDB) {
+        super("LevelDB-ExpirySweep", INTERVAL_MILLIS);
+
+        this.levelDB = levelDB;
+    }
+
+    /**
+     * @return false if the thread was shut down meanwhile
+     */
+    boolean pause() {
+        return await(PAUSE_MILLIS);
+    }
+
+    @Override
+    void work() throws LevelDBException {
+        levelDB.sweepExpired(this);
+    }
+
+    @Override
+    String failureMessage() {
+        return "Sweeping expired pairs failed.";
+    }
+}
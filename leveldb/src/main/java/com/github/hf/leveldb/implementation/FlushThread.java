@@ -0,0 +1,86 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes when the log has grown past a size or not been flushed for a while, checking every
+ * {@link #CHECK_INTERVAL_MILLIS} at most, unless background work is paused.
+ */
+final class FlushThread extends PeriodicThread {
+    private static final long CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final NativeLevelDB levelDB;
+
+    private final long afterBytes;
+    private final long afterMillis;
+
+    /**
+     * @param afterBytes  log size to flush at, or 0 not to flush by size
+     * @param afterMillis time since the last flush to flush after, or 0 not to flush by age
+     */
+    FlushThread(NativeLevelDB levelDB, long afterBytes, long afterMillis) {
+        super("LevelDB-Flush", afterMillis > 0 ? Math.min(afterMillis, CHECK_INTERVAL_MILLIS) : CHECK_INTERVAL_MILLIS);
+
+        this.levelDB = levelDB;
+        this.afterBytes = afterBytes;
+        this.afterMillis = afterMillis;
+    }
+
+    @Override
+    void work() throws LevelDBException {
+        // Flushing would have to resume the paused work.
+        if (levelDB.isBackgroundWorkPaused()) {
+            return;
+        }
+
+        long size = levelDB.logSize();
+
+        boolean tooLarge = afterBytes > 0 && size >= afterBytes;
+        boolean tooOld = afterMillis > 0 && size > 0 && System.currentTimeMillis() - levelDB.lastFlushAt() >= afterMillis;
+
+        if (tooLarge || tooOld) {
+            levelDB.flush();
+        }
+    }
+
+    @Override
+    String failureMessage() {
+        return "Flushing failed.";
+    }
+}
@@ -34,13 +34,33 @@ package com.github.hf.leveldb.implementation;
  */
 
 import android.util.Log;
+import com.github.hf.leveldb.CacheStats;
+import com.github.hf.leveldb.DbEvent;
+import com.github.hf.leveldb.IOStats;
 import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.KeyRange;
 import com.github.hf.leveldb.LevelDB;
 import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.ValueCache;
 import com.github.hf.leveldb.WriteBatch;
 import com.github.hf.leveldb.exception.LevelDBClosedException;
 import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBIOException;
 import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
+import com.github.hf.leveldb.util.SimpleWriteBatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Object for interacting with the native LevelDB implementation.
@@ -55,6 +75,37 @@ public class NativeLevelDB extends LevelDB {
      */
     public static void destroy(String path) throws LevelDBException {
         nativeDestroy(path);
+
+        boolean leftovers = false;
+
+        if (ValueLog.exists(path)) {
+            ValueLog.destroy(path);
+            leftovers = true;
+        }
+
+        if (new File(path, ReadProfile.FILE_NAME).exists()) {
+            ReadProfile.destroy(path);
+            leftovers = true;
+        }
+
+        File expiringMarker = new File(path, EXPIRING_MARKER);
+
+        if (expiringMarker.exists()) {
+            if (!expiringMarker.delete()) {
+                Log.w(NativeLevelDB.class.getName(), "Unable to delete " + expiringMarker);
+            }
+
+            leftovers = true;
+        }
+
+        if (leftovers) {
+            // LevelDB leaves the directory behind as it was not empty.
+            File directory = new File(path);
+
+            if (!directory.delete()) {
+                Log.w(NativeLevelDB.class.getName(), "Unable to delete " + directory);
+            }
+        }
     }
 
     /**
@@ -69,6 +120,85 @@ public class NativeLevelDB extends LevelDB {
 
     private volatile String path;
 
+    // LevelDB is safe for concurrent use, so operations share the read lock. Only closing takes the
+    // write lock, as it invalidates ndb.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by this, so that no event thread is started once closing has begun.
+    private boolean eventsClosed;
+
+    private final CopyOnWriteArrayList<DbEvent.Listener> eventListeners = new CopyOnWriteArrayList<DbEvent.Listener>();
+
+    // Guarded by this.
+    private EventThread eventThread;
+
+    // LevelDB compacts level-0 at 4 files and slows down writes at 8 (config::kL0_CompactionTrigger
+    // and config::kL0_SlowdownWritesTrigger).
+    private static final int THROTTLE_LEVEL0_START = 4;
+    private static final int THROTTLE_LEVEL0_SLOWDOWN = 8;
+    private static final long THROTTLE_STEP_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+    private static final long THROTTLE_MAX_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+    private static final long THROTTLE_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final boolean throttleWrites;
+
+    private final ValueCache valueCache;
+
+    // Guarded by valueCache. Incremented on every write, so that reads which raced with a write
+    // don't cache a stale value.
+    private long valueCacheGeneration;
+
+    private static final double VALUE_LOG_GARBAGE_RATIO = 0.5;
+
+    // Null without a value log.
+    private final ValueLog valueLog;
+
+    // Writes take the read lock, ahead of the database lock, and garbage collection takes the write
+    // lock so that the pointers it replaces stay current.
+    private final ReentrantReadWriteLock valueLogLock = new ReentrantReadWriteLock();
+
+    // Only one garbage collection at a time.
+    private final Object valueLogGarbageLock = new Object();
+
+    // Guarded by this, null without a value log.
+    private ValueLogGarbageThread valueLogGarbageThread;
+
+    private static final int WARM_UP_BATCH_SIZE = 10000;
+
+    // Guarded by itself. IDs of the merge operators in the process-wide native registry.
+    private static final Map<String, Integer> MERGE_OPERATORS = new HashMap<String, Integer>();
+
+    // Marks a database whose values start with an expiry header.
+    private static final String EXPIRING_MARKER = "EXPIRING";
+
+    private static final int EXPIRY_HEADER_SIZE = 8;
+
+    private static final int EXPIRY_SWEEP_BATCH_SIZE = 1000;
+
+    private final boolean expiring;
+
+    // Null unless reads are profiled.
+    private final ReadProfile readProfile;
+
+    // Writes take the read lock, and the sweeper takes the write lock for every batch, so that it
+    // never deletes a pair that was rewritten after it was found to be expired.
+    private final ReentrantReadWriteLock expiryLock = new ReentrantReadWriteLock();
+
+    // Only one sweep at a time.
+    private final Object expirySweepLock = new Object();
+
+    // Guarded by this, null without expiring entries.
+    private ExpirySweepThread expirySweepThread;
+
+    // Guarded by this, null without a flush policy.
+    private FlushThread flushThread;
+
+    private volatile long lastFlushAt;
+
+    // Races on these are harmless, at worst the level-0 file count is sampled twice.
+    private volatile long throttleSampledAt;
+    private volatile long throttleDelayNanos;
+
     /**
      * Opens a new LevelDB database.
      *
@@ -82,13 +212,100 @@ public class NativeLevelDB extends LevelDB {
             configuration = configure();
         }
 
+        boolean useValueLog = ValueLog.exists(path);
+
+        if (!useValueLog && configuration.valueLogThreshold() > 0) {
+            if (new File(path, "CURRENT").exists()) {
+                throw new LevelDBException("The value log can only be turned on for a new database.");
+            }
+
+            useValueLog = true;
+        }
+
+        File expiringMarker = new File(path, EXPIRING_MARKER);
+
+        boolean useExpiry = expiringMarker.exists();
+
+        if (!useExpiry && configuration.expiringEntries()) {
+            if (new File(path, "CURRENT").exists()) {
+                throw new LevelDBException("Expiring entries can only be turned on for a new database.");
+            }
+
+            useExpiry = true;
+        }
+
+        if (useExpiry && (useValueLog || configuration.valueCache() != null)) {
+            throw new LevelDBException("Expiring entries can't be combined with a value cache or the value log.");
+        }
+
+        // Created ahead of the database, so that no database exists without it.
+        if (useExpiry && !expiringMarker.exists() && configuration.createIfMissing()) {
+            try {
+                expiringMarker.getParentFile().mkdirs();
+
+                if (!expiringMarker.createNewFile() && !expiringMarker.exists()) {
+                    throw new IOException("Unable to create " + expiringMarker);
+                }
+            } catch (IOException e) {
+                throw new LevelDBIOException(e.getMessage());
+            }
+        }
+
         ndb = nativeOpen(configuration.createIfMissing(),
                 configuration.cacheSize(),
+                configuration.cachePolicy().ordinal(),
                 configuration.blockSize(),
                 configuration.writeBufferSize(),
+                configuration.collectIOStats(),
+                configuration.backgroundThreadPriority(),
+                useExpiry,
                 path);
 
+        expiring = useExpiry;
+        readProfile = configuration.profileReads() ? ReadProfile.load(path) : null;
+
+        throttleWrites = configuration.throttleWrites();
+        valueCache = configuration.valueCache();
+        throttleSampledAt = System.nanoTime() - THROTTLE_SAMPLE_NANOS;
+
+        if (useValueLog) {
+            try {
+                valueLog = new ValueLog(path, configuration.valueLogThreshold());
+            } catch (LevelDBException e) {
+                nativeClose(ndb);
+                ndb = 0;
+
+                throw e;
+            }
+
+            valueLogGarbageThread = new ValueLogGarbageThread(this);
+            valueLogGarbageThread.start();
+        } else {
+            valueLog = null;
+        }
+
+        if (expiring) {
+            expirySweepThread = new ExpirySweepThread(this);
+            expirySweepThread.start();
+        }
+
         setPath(path);
+
+        lastFlushAt = System.currentTimeMillis();
+
+        if (configuration.flushAfterBytes() > 0 || configuration.flushAfterMillis() > 0) {
+            flushThread = new FlushThread(this, configuration.flushAfterBytes(), configuration.flushAfterMillis());
+            flushThread.start();
+        }
+
+        if (readProfile != null) {
+            List<KeyRange> hotRanges = readProfile.hotRanges();
+
+            if (!hotRanges.isEmpty()) {
+                // LevelDB's default block cache holds 8 MB.
+                startWarmUp(hotRanges, configuration.cacheSize() > 0 ? configuration.cacheSize() : 8 * 1024 * 1024);
+            }
+        }
     }
 
     /**
@@ -110,13 +327,68 @@ public class NativeLevelDB extends LevelDB {
     public void close() {
         boolean closeMultiple = false;
 
+        EventThread stoppedEventThread;
+        ValueLogGarbageThread stoppedGarbageThread;
+        ExpirySweepThread stoppedSweepThread;
+        FlushThread stoppedFlushThread;
+
         synchronized (this) {
+            eventsClosed = true;
+
+            stoppedGarbageThread = valueLogGarbageThread;
+            valueLogGarbageThread = null;
+
+            stoppedSweepThread = expirySweepThread;
+            expirySweepThread = null;
+
+            stoppedFlushThread = flushThread;
+            flushThread = null;
+
+            stoppedEventThread = eventThread;
+            eventThread = null;
+
+            if (stoppedEventThread != null) {
+                stoppedEventThread.stopPolling();
+            }
+        }
+
+        // The event thread must have left nativePollEvents before the database is closed.
+        if (stoppedEventThread != null) {
+            stoppedEventThread.awaitExit();
+        }
+
+        if (stoppedGarbageThread != null) {
+            stoppedGarbageThread.shutdown();
+        }
+
+        if (stoppedSweepThread != null) {
+            stoppedSweepThread.shutdown();
+        }
+
+        if (stoppedFlushThread != null) {
+            stoppedFlushThread.shutdown();
+        }
+
+        // Waits for all operations in progress, and keeps new ones out until ndb is 0.
+        lock.writeLock().lock();
+
+        try {
             if (ndb != 0) {
                 nativeClose(ndb);
                 ndb = 0;
+
+                if (valueLog != null) {
+                    valueLog.close();
+                }
+
+                if (readProfile != null) {
+                    readProfile.save();
+                }
             } else {
                 closeMultiple = true;
             }
+        } finally {
+            lock.writeLock().unlock();
         }
 
         if (closeMultiple) {
@@ -149,150 +421,1593 @@ public class NativeLevelDB extends LevelDB {
             throw new IllegalArgumentException("Key must not be null!");
         }
 
-        synchronized (this) {
+        putValue(key, value, 0, sync);
+    }
+
+    /**
+     * Writes the pair with an expiry header, which native reads check and strip.
+     *
+     * @throws LevelDBException if the database was not opened with expiring entries
+     */
+    @Override
+    public void put(byte[] key, byte[] value, long ttlMillis, boolean sync) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null!");
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("TTL must be positive.");
+        }
+
+        if (!expiring) {
+            throw new LevelDBException("Open the database with expiring entries to put pairs with a TTL.");
+        }
+
+        putValue(key, value, System.currentTimeMillis() + ttlMillis, sync);
+    }
+
+    /**
+     * @param expiresAt expiry time in milliseconds since the epoch, 0 for never
+     */
+    private void putValue(byte[] key, byte[] value, long expiresAt, boolean sync) throws LevelDBException {
+        throttleWrite();
+
+        if (expiring) {
+            value = withExpiry(value, expiresAt);
+
+            expiryLock.readLock().lock();
+        }
+
+        try {
+            putEncoded(key, value, sync);
+        } finally {
+            if (expiring) {
+                expiryLock.readLock().unlock();
+            }
+        }
+    }
+
+    private void putEncoded(byte[] key, byte[] value, boolean sync) throws LevelDBException {
+        if (valueLog != null) {
+            valueLogLock.readLock().lock();
+        }
+
+        try {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                byte[] previous = null;
+
+                if (valueLog != null) {
+                    previous = storedPointer(key);
+
+                    value = valueLog.encode(key, value);
+
+                    // Also makes pointers from earlier asynchronous writes durable.
+                    if (sync) {
+                        valueLog.sync();
+                    }
+                }
+
+                nativePut(ndb, sync, key, value);
+
+                if (valueLog != null) {
+                    valueLog.dead(key, previous);
+                }
+            } finally {
+                lock.readLock().unlock();
+
+                invalidateCachedValue(key);
+            }
+        } finally {
+            if (valueLog != null) {
+                valueLogLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes a {@link com.github.hf.leveldb.WriteBatch} to the database.
+     *
+     * @param writeBatch the WriteBatch to write
+     * @param sync       whether this is a synchronous (true) or asynchronous (false) write
+     * @throws LevelDBException
+     */
+    @Override
+    public void write(WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        if (writeBatch == null) {
+            throw new IllegalArgumentException("Write batch must not be null.");
+        }
+
+        throttleWrite();
+
+        if (expiring) {
+            expiryLock.readLock().lock();
+        }
+
+        if (valueLog != null) {
+            valueLogLock.readLock().lock();
+        }
+
+        try {
+            writeLocked(writeBatch, sync);
+        } finally {
+            if (valueLog != null) {
+                valueLogLock.readLock().unlock();
+            }
+
+            if (expiring) {
+                expiryLock.readLock().unlock();
+            }
+
+            if (valueCache != null) {
+                synchronized (valueCache) {
+                    valueCacheGeneration++;
+
+                    for (WriteBatch.Operation operation : writeBatch.getAllOperations()) {
+                        valueCache.invalidate(operation.key());
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeLocked(WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        lock.readLock().lock();
+
+        try {
             checkIfClosed();
 
-            nativePut(ndb, sync, key, value);
+            List<byte[]> replacedKeys = null;
+            List<byte[]> replacedPointers = null;
+
+            if (valueLog != null) {
+                replacedKeys = new ArrayList<byte[]>();
+                replacedPointers = new ArrayList<byte[]>();
+
+                writeBatch = encodeWriteBatch(writeBatch, sync, replacedKeys, replacedPointers);
+            } else if (expiring) {
+                writeBatch = withExpiry(writeBatch);
+            }
+
+            NativeWriteBatch nativeWriteBatch = new NativeWriteBatch(writeBatch);
+
+            try {
+                nativeWrite(ndb, sync, nativeWriteBatch.nativePointer());
+            } finally {
+                nativeWriteBatch.close();
+                nativeWriteBatch = null;
+            }
+
+            if (valueLog != null) {
+                markDead(replacedKeys, replacedPointers);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Encodes the values of a batch for the value log, forcing appended values to disk before a
+     * synchronous write can make pointers to them, or those of earlier asynchronous writes,
+     * durable.
+     *
+     * @param replacedKeys     receives the keys that currently have a pointer
+     * @param replacedPointers receives their pointers, to be counted as garbage once written
+     */
+    private WriteBatch encodeWriteBatch(WriteBatch writeBatch, boolean sync, List<byte[]> replacedKeys, List<byte[]> replacedPointers) throws LevelDBException {
+        SimpleWriteBatch encoded = new SimpleWriteBatch();
+
+        for (WriteBatch.Operation operation : writeBatch) {
+            byte[] previous = storedPointer(operation.key());
+
+            if (previous != null) {
+                replacedKeys.add(operation.key());
+                replacedPointers.add(previous);
+            }
+
+            if (operation.isPut()) {
+                byte[] stored = valueLog.encode(operation.key(), operation.value());
+
+                encoded.put(operation.key(), stored);
+            } else {
+                encoded.del(operation.key());
+            }
+        }
+
+        if (sync) {
+            valueLog.sync();
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Reads the stored value of the key if it is a value log pointer, without copying a large
+     * inline value. Call with the lock held.
+     *
+     * @return the pointer, or null
+     */
+    private byte[] storedPointer(byte[] key) throws LevelDBException {
+        byte[] stored = new byte[ValueLog.POINTER_SIZE];
+
+        int read = nativeGetRange(ndb, key, 0, 0, stored.length, stored, 0);
+
+        return read == stored.length && stored[0] == ValueLog.POINTER ? stored : null;
+    }
+
+    private void markDead(List<byte[]> keys, List<byte[]> pointers) throws LevelDBException {
+        for (int i = 0; i < keys.size(); i++) {
+            valueLog.dead(keys.get(i), pointers.get(i));
+        }
+    }
+
+    /**
+     * Prepends the expiry header: the expiry time in milliseconds since the epoch, big-endian.
+     */
+    private static byte[] withExpiry(byte[] value, long expiresAt) {
+        byte[] stored = new byte[EXPIRY_HEADER_SIZE + value.length];
+
+        for (int i = EXPIRY_HEADER_SIZE - 1; i >= 0; i--) {
+            stored[i] = (byte) expiresAt;
+            expiresAt >>>= 8;
+        }
+
+        System.arraycopy(value, 0, stored, EXPIRY_HEADER_SIZE, value.length);
+
+        return stored;
+    }
+
+    /**
+     * Prepends a header to the values of a batch, so that they never expire.
+     */
+    private static WriteBatch withExpiry(WriteBatch writeBatch) {
+        SimpleWriteBatch stored = new SimpleWriteBatch();
+
+        for (WriteBatch.Operation operation : writeBatch) {
+            if (operation.isPut()) {
+                stored.put(operation.key(), withExpiry(operation.value(), 0));
+            } else {
+                stored.del(operation.key());
+            }
+        }
+
+        return stored;
+    }
+
+    /**
+     * Gets the value associated with the key, or <tt>null</tt>.
+     *
+     * @param key the key
+     * @param snapshot the snapshot from which to read the pair, or null
+     * @return the value, or <tt>null</tt>
+     * @throws LevelDBException
+     */
+    @Override
+    public byte[] get(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null!");
+        }
+
+        if (snapshot != null) {
+            if (!(snapshot instanceof NativeSnapshot)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            if (!((NativeSnapshot) snapshot).checkOwner(this)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+        }
+
+        if (readProfile != null) {
+            readProfile.record(key);
+        }
+
+        if (snapshot == null && valueCache != null) {
+            return getCached(key);
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            return getLocked(key, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a value, resolving value log pointers. Call with the lock held.
+     */
+    private byte[] getLocked(byte[] key, long nsnapshot) throws LevelDBException {
+        if (valueLog == null) {
+            return nativeGet(ndb, key, nsnapshot);
+        }
+
+        byte[] value;
+
+        // Keeps garbage collection from deleting the file between reading the pointer and the value.
+        valueLog.retain();
+
+        try {
+            value = valueLog.decode(nativeGet(ndb, key, nsnapshot));
+        } finally {
+            valueLog.release();
+        }
+
+        // nativeGet() returns null for an empty value, and so does get() with the value log.
+        return value != null && value.length == 0 ? null : value;
+    }
+
+    /**
+     * Copies part of a value in native code straight into <tt>dest</tt>. LevelDB still reads the
+     * whole value into a native buffer, so store large values in chunks, as
+     * {@link com.github.hf.leveldb.util.ChunkedValueOutputStream} does, to bound native memory too.
+     *
+     * Bypasses the value cache.
+     */
+    @Override
+    public int get(byte[] key, int offset, int length, byte[] dest, int destOffset, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null!");
+        }
+
+        if (dest == null) {
+            throw new IllegalArgumentException("Destination must not be null.");
+        }
+
+        if (offset < 0 || length < 0 || destOffset < 0 || destOffset > dest.length - length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length.");
+        }
+
+        if (snapshot != null) {
+            if (!(snapshot instanceof NativeSnapshot)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            if (!((NativeSnapshot) snapshot).checkOwner(this)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+        }
+
+        if (readProfile != null) {
+            readProfile.record(key);
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            if (valueLog == null) {
+                return nativeGetRange(ndb, key, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id(), offset, length, dest, destOffset);
+            }
+
+            // The tag and the value must be read from the same version of the pair.
+            long nsnapshot = snapshot == null ? nativeSnapshot(ndb) : ((NativeSnapshot) snapshot).id();
+
+            valueLog.retain();
+
+            try {
+                byte[] stored = new byte[ValueLog.POINTER_SIZE];
+
+                int read = nativeGetRange(ndb, key, nsnapshot, 0, stored.length, stored, 0);
+
+                if (read < 1) {
+                    return read;
+                }
+
+                if (stored[0] == ValueLog.INLINE) {
+                    return nativeGetRange(ndb, key, nsnapshot, offset + 1, length, dest, destOffset);
+                }
+
+                return valueLog.read(ValueLog.Pointer.decode(Arrays.copyOf(stored, read)), offset, dest, destOffset, length);
+            } finally {
+                valueLog.release();
+
+                if (snapshot == null) {
+                    nativeReleaseSnapshot(ndb, nsnapshot);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up the length of a value in native code, where the value is copied at most once into a
+     * native buffer and never into a Java array. Cached values are used if there is a value cache.
+     *
+     * @param key the key
+     * @param snapshot the snapshot from which to read the pair, or null
+     * @return the length of the value, or -1 if the key does not exist
+     * @throws LevelDBException
+     */
+    @Override
+    public int valueLength(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null!");
+        }
+
+        if (snapshot != null) {
+            if (!(snapshot instanceof NativeSnapshot)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            if (!((NativeSnapshot) snapshot).checkOwner(this)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+        }
+
+        if (readProfile != null) {
+            readProfile.record(key);
+        }
+
+        if (snapshot == null && valueCache != null) {
+            byte[] value = valueCache.get(key);
+
+            if (value != null) {
+                return value.length;
+            }
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            if (valueLog == null) {
+                return nativeValueLength(ndb, key, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id());
+            }
+
+            long nsnapshot = snapshot == null ? nativeSnapshot(ndb) : ((NativeSnapshot) snapshot).id();
+
+            try {
+                byte[] stored = new byte[ValueLog.POINTER_SIZE];
+
+                int read = nativeGetRange(ndb, key, nsnapshot, 0, stored.length, stored, 0);
+
+                if (read < 1) {
+                    return read;
+                }
+
+                if (stored[0] == ValueLog.INLINE) {
+                    return nativeValueLength(ndb, key, nsnapshot) - 1;
+                }
+
+                return ValueLog.Pointer.decode(Arrays.copyOf(stored, read)).length;
+            } finally {
+                if (snapshot == null) {
+                    nativeReleaseSnapshot(ndb, nsnapshot);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads through the value cache. Hits take neither the lock nor a trip through JNI, only a
+     * copy, so that callers can't modify the cached array.
+     *
+     * A value read from the database is only cached if no write went through this database while
+     * it was being read, as it might be stale already.
+     */
+    private byte[] getCached(byte[] key) throws LevelDBException {
+        checkIfClosed();
+
+        byte[] value = valueCache.get(key);
+
+        if (value != null) {
+            return value.clone();
+        }
+
+        long generation;
+
+        synchronized (valueCache) {
+            generation = valueCacheGeneration;
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            value = getLocked(key, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (value != null) {
+            synchronized (valueCache) {
+                if (generation == valueCacheGeneration) {
+                    valueCache.put(key, value.clone());
+                }
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Called after writing a key, whether or not the write succeeded.
+     */
+    private void invalidateCachedValue(byte[] key) {
+        if (valueCache == null) {
+            return;
+        }
+
+        synchronized (valueCache) {
+            valueCacheGeneration++;
+            valueCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Deletes the specified entry from the database. Deletion can be synchronous or asynchronous.
+     *
+     * @param key  the key
+     * @param sync whether this is a synchronous (true) or asynchronous (false) delete
+     * @throws LevelDBException
+     */
+    @Override
+    public void del(byte[] key, boolean sync) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        throttleWrite();
+
+        // Keeps value log garbage collection from bringing the key back.
+        if (valueLog != null) {
+            valueLogLock.readLock().lock();
+        }
+
+        try {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                byte[] previous = null;
+
+                if (valueLog != null) {
+                    previous = storedPointer(key);
+
+                    // A synchronous delete makes earlier asynchronous writes durable too.
+                    if (sync) {
+                        valueLog.sync();
+                    }
+                }
+
+                nativeDelete(ndb, sync, key);
+
+                if (valueLog != null) {
+                    valueLog.dead(key, previous);
+                }
+            } finally {
+                lock.readLock().unlock();
+
+                invalidateCachedValue(key);
+            }
+        } finally {
+            if (valueLog != null) {
+                valueLogLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads, merges and writes in native code, under one of 64 native locks picked by the key's
+     * hash, so a merge takes a single trip through JNI. Custom operators can be registered with
+     * <tt>RegisterMergeOperator()</tt> from <tt>jni/MergeOperators.h</tt>.
+     *
+     * Not supported with the value log, as native code can't read values stored in it.
+     */
+    @Override
+    protected byte[] merge(String operator, byte[] key, byte[] operand, boolean sync, boolean returnValue) throws LevelDBException {
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator must not be null.");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (operand == null) {
+            throw new IllegalArgumentException("Operand must not be null.");
+        }
+
+        if (valueLog != null) {
+            throw new LevelDBException("Merges are not supported with the value log.");
+        }
+
+        int mergeOperator = mergeOperator(operator);
+
+        throttleWrite();
+
+        if (expiring) {
+            expiryLock.readLock().lock();
+        }
+
+        try {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                return nativeMerge(ndb, mergeOperator, sync, key, operand, returnValue);
+            } finally {
+                lock.readLock().unlock();
+
+                invalidateCachedValue(key);
+            }
+        } finally {
+            if (expiring) {
+                expiryLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Compares and writes in native code, under the same native lock for the key as
+     * {@link #merge(String, byte[], byte[], boolean, boolean)}, rather than a database-wide one.
+     *
+     * Not supported with the value log, as native code can't read values stored in it.
+     */
+    @Override
+    public boolean compareAndSet(byte[] key, byte[] expected, byte[] newValue, long ttlMillis, boolean sync) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (expected == null && newValue == null) {
+            throw new IllegalArgumentException("Expected and new value must not both be null.");
+        }
+
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("TTL must not be negative.");
+        }
+
+        if (ttlMillis > 0 && !expiring) {
+            throw new LevelDBException("Open the database with expiring entries to put pairs with a TTL.");
+        }
+
+        if (valueLog != null) {
+            throw new LevelDBException("Compare-and-set is not supported with the value log.");
+        }
+
+        long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+
+        throttleWrite();
+
+        if (expiring) {
+            expiryLock.readLock().lock();
+        }
+
+        try {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                return nativeCompareAndSet(ndb, sync, key, expected, newValue, expiresAt);
+            } finally {
+                lock.readLock().unlock();
+
+                invalidateCachedValue(key);
+            }
+        } finally {
+            if (expiring) {
+                expiryLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Validates and writes in native code, holding the native locks of all the keys, so commits are
+     * atomic with respect to each other, merges and compare-and-set.
+     */
+    @Override
+    protected boolean commit(Snapshot snapshot, List<byte[]> keys, WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        if (!(snapshot instanceof NativeSnapshot) || !((NativeSnapshot) snapshot).checkOwner(this)) {
+            throw new LevelDBSnapshotOwnershipException();
+        }
+
+        throttleWrite();
+
+        if (expiring) {
+            expiryLock.readLock().lock();
+        }
+
+        if (valueLog != null) {
+            valueLogLock.readLock().lock();
+        }
+
+        try {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                WriteBatch stored = writeBatch;
+
+                List<byte[]> replacedKeys = null;
+                List<byte[]> replacedPointers = null;
+
+                if (valueLog != null) {
+                    replacedKeys = new ArrayList<byte[]>();
+                    replacedPointers = new ArrayList<byte[]>();
+
+                    stored = encodeWriteBatch(writeBatch, sync, replacedKeys, replacedPointers);
+                } else if (expiring) {
+                    stored = withExpiry(writeBatch);
+                }
+
+                NativeWriteBatch nativeWriteBatch = new NativeWriteBatch(stored);
+
+                boolean committed;
+
+                try {
+                    committed = nativeCommit(ndb, ((NativeSnapshot) snapshot).id(), keys.toArray(new byte[keys.size()][]),
+                            nativeWriteBatch.nativePointer(), sync);
+                } finally {
+                    nativeWriteBatch.close();
+                    nativeWriteBatch = null;
+                }
+
+                if (committed && valueLog != null) {
+                    markDead(replacedKeys, replacedPointers);
+                }
+
+                return committed;
+            } finally {
+                lock.readLock().unlock();
+
+                for (WriteBatch.Operation operation : writeBatch.getAllOperations()) {
+                    invalidateCachedValue(operation.key());
+                }
+            }
+        } finally {
+            if (valueLog != null) {
+                valueLogLock.readLock().unlock();
+            }
+
+            if (expiring) {
+                expiryLock.readLock().unlock();
+            }
+        }
+    }
+
+    private static int mergeOperator(String operator) {
+        synchronized (MERGE_OPERATORS) {
+            Integer id = MERGE_OPERATORS.get(operator);
+
+            if (id == null) {
+                id = nativeFindMergeOperator(operator);
+
+                if (id < 0) {
+                    throw new IllegalArgumentException("Unknown merge operator " + operator + ".");
+                }
+
+                MERGE_OPERATORS.put(operator, id);
+            }
+
+            return id;
+        }
+    }
+
+    /**
+     * Deletes the range in native code, iterating and writing batches of 1000 deletes without
+     * crossing into Java for every key. Clears the value cache.
+     *
+     * @param begin first key of the range, non-null
+     * @param end key after the range, or null for the end of the database
+     * @return the number of keys deleted
+     * @throws LevelDBException
+     */
+    @Override
+    public long deleteRange(byte[] begin, byte[] end) throws LevelDBException {
+        if (begin == null) {
+            throw new IllegalArgumentException("Begin must not be null.");
+        }
+
+        if (valueLog != null) {
+            valueLogLock.readLock().lock();
+        }
+
+        try {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                long deleted = nativeDeleteRange(ndb, begin, end);
+
+                // The deleted pointers are not looked up, so all files need a scan.
+                if (valueLog != null && deleted > 0) {
+                    valueLog.rangeDeleted();
+                }
+
+                return deleted;
+            } finally {
+                lock.readLock().unlock();
+
+                if (valueCache != null) {
+                    synchronized (valueCache) {
+                        valueCacheGeneration++;
+                        valueCache.invalidateAll();
+                    }
+                }
+            }
+        } finally {
+            if (valueLog != null) {
+                valueLogLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Approximates the size through <tt>leveldb::DB::GetApproximateSizes()</tt>.
+     *
+     * @param begin first key of the range, non-null
+     * @param end key after the range, non-null
+     * @return the approximate size in bytes
+     * @throws LevelDBClosedException
+     */
+    @Override
+    public long approximateSize(byte[] begin, byte[] end) throws LevelDBClosedException {
+        if (begin == null || end == null) {
+            throw new IllegalArgumentException("Begin and end must not be null.");
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            return nativeApproximateSize(ndb, begin, end);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Iterates over the ranges in native code, with <tt>fill_cache</tt> set, in batches of
+     * {@link #WARM_UP_BATCH_SIZE} keys so that closing never waits long for it.
+     *
+     * @param ranges the key ranges, non-null
+     * @throws LevelDBClosedException
+     */
+    @Override
+    public void warmUp(Collection<KeyRange> ranges) throws LevelDBClosedException {
+        if (ranges == null) {
+            throw new IllegalArgumentException("Ranges must not be null.");
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        startWarmUp(new ArrayList<KeyRange>(ranges), Long.MAX_VALUE);
+    }
+
+    /**
+     * Warms up the ranges in order on a new thread, until their approximate size exceeds the
+     * budget.
+     */
+    private void startWarmUp(final List<KeyRange> ranges, final long budgetBytes) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long remaining = budgetBytes;
+
+                    for (KeyRange range : ranges) {
+                        if (budgetBytes < Long.MAX_VALUE && range.begin() != null && range.end() != null) {
+                            remaining -= approximateSize(range.begin(), range.end());
+
+                            if (remaining < 0) {
+                                return;
+                            }
+                        }
+
+                        warmUp(range);
+                    }
+                } catch (LevelDBClosedException e) {
+                    // Closed meanwhile.
+                } catch (LevelDBException e) {
+                    Log.e(NativeLevelDB.class.getName(), "Warming up the block cache failed.", e);
+                }
+            }
+        }, "LevelDB-WarmUp");
+
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void warmUp(KeyRange range) throws LevelDBException {
+        byte[] next = range.begin();
+
+        do {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+
+                next = nativeWarmUp(ndb, next, range.end(), WARM_UP_BATCH_SIZE);
+            } finally {
+                lock.readLock().unlock();
+            }
+        } while (next != null);
+    }
+
+    /**
+     * Compacts the key range through <tt>leveldb::DB::CompactRange()</tt>. Other operations,
+     * including writes, can proceed while compacting. Paused background work is resumed while
+     * compacting, and paused again afterwards.
+     *
+     * @param begin first key of the range, or null for the beginning of the database
+     * @param end last key of the range, or null for the end of the database
+     * @throws LevelDBException
+     */
+    @Override
+    public void compactRange(byte[] begin, byte[] end) throws LevelDBException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            nativeCompactRange(ndb, begin, end);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes through <tt>leveldb::DB::CompactRange()</tt> over an empty range, which writes the
+     * memtable to a level-0 table and rolls the log without compacting anything else. Paused
+     * background work is resumed while flushing, as the flush runs on the background thread, and
+     * paused again afterwards.
+     */
+    @Override
+    public long flush() throws LevelDBException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            nativeFlush(ndb);
+
+            lastFlushAt = System.currentTimeMillis();
+
+            return logSizeLocked();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Syncs the log with an empty synchronous write, which also syncs the value log. LevelDB
+     * deletes a log once its memtable has been flushed, so if older logs are still there, writes in
+     * them are not durable yet, and this flushes through {@link #flush()}.
+     */
+    @Override
+    public void sync() throws LevelDBException {
+        write(new SimpleWriteBatch(), true);
+
+        lock.readLock().lock();
+
+        boolean olderLogs;
+
+        try {
+            checkIfClosed();
+
+            olderLogs = logCountLocked() > 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (olderLogs) {
+            flush();
+        }
+    }
+
+    @Override
+    public long logSize() throws LevelDBClosedException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            return logSizeLocked();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long logSizeLocked() {
+        File[] files = new File(getPath()).listFiles();
+
+        long size = 0;
+
+        if (files != null) {
+            // Only the current log, unless a flush is in progress. The info log is named LOG.
+            for (File file : files) {
+                if (file.getName().endsWith(".log")) {
+                    size += file.length();
+                }
+            }
+        }
+
+        return size;
+    }
+
+    private int logCountLocked() {
+        File[] files = new File(getPath()).listFiles();
+
+        int count = 0;
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".log")) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return when this database was opened or last flushed, in milliseconds
+     */
+    long lastFlushAt() {
+        return lastFlushAt;
+    }
+
+    /**
+     * Rewrites the live values of sealed value log files in which at least half of the bytes are
+     * garbage, as estimated from the pointers that writes replaced. Writes wait while a chunk of
+     * live values is checked and rewritten. A file is deleted once the new pointers are durable, or
+     * later if open snapshots or iterators may still read it.
+     *
+     * @return the number of bytes of value log files reclaimed, 0 without a value log
+     * @throws LevelDBException
+     */
+    @Override
+    public long collectValueLogGarbage() throws LevelDBException {
+        if (valueLog == null) {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return 0;
+        }
+
+        synchronized (valueLogGarbageLock) {
+            return valueLog.collectGarbage(new ValueLog.Store() {
+                @Override
+                public byte[] getStored(byte[] key) throws LevelDBException {
+                    lock.readLock().lock();
+
+                    try {
+                        checkIfClosed();
+
+                        return nativeGet(ndb, key, 0);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+
+                @Override
+                public void putStored(List<byte[]> keys, List<byte[]> stored) throws LevelDBException {
+                    SimpleWriteBatch writeBatch = new SimpleWriteBatch();
+
+                    for (int i = 0; i < keys.size(); i++) {
+                        writeBatch.put(keys.get(i), stored.get(i));
+                    }
+
+                    writeStored(writeBatch, true);
+                }
+            }, VALUE_LOG_GARBAGE_RATIO, valueLogLock.writeLock());
+        }
+    }
+
+    /**
+     * Sweeps in native code, in batches of 1000 pairs. Writes wait while a batch is checked and
+     * its expired pairs deleted. Each run of batches that deleted pairs is compacted afterwards.
+     *
+     * @return the number of pairs deleted, 0 without expiring entries
+     * @throws LevelDBException
+     */
+    @Override
+    public long sweepExpired() throws LevelDBException {
+        return sweepExpired(null);
+    }
+
+    /**
+     * @param sweeper the background sweeper to pause on between batches, or null not to pause
+     */
+    long sweepExpired(ExpirySweepThread sweeper) throws LevelDBException {
+        if (!expiring) {
+            lock.readLock().lock();
+
+            try {
+                checkIfClosed();
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return 0;
+        }
+
+        synchronized (expirySweepLock) {
+            long[] counts = new long[2];
+            long deleted = 0;
+
+            byte[] next = null;
+            byte[] rangeBegin = null;
+            byte[] rangeEnd = null;
+
+            do {
+                byte[][] keys;
+
+                expiryLock.writeLock().lock();
+
+                try {
+                    lock.readLock().lock();
+
+                    try {
+                        checkIfClosed();
+
+                        keys = nativeSweepExpired(ndb, next, EXPIRY_SWEEP_BATCH_SIZE, counts);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                } finally {
+                    expiryLock.writeLock().unlock();
+                }
+
+                deleted += counts[1];
+                next = keys[0];
+
+                if (keys[1] != null) {
+                    if (rangeBegin == null) {
+                        rangeBegin = keys[1];
+                    }
+
+                    rangeEnd = keys[2];
+                } else if (rangeBegin != null) {
+                    compactRange(rangeBegin, rangeEnd);
+                    rangeBegin = null;
+                }
+
+                // Stopped for closing, which should not wait for a compaction.
+                if (next != null && sweeper != null && !sweeper.pause()) {
+                    return deleted;
+                }
+            } while (next != null);
+
+            if (rangeBegin != null) {
+                compactRange(rangeBegin, rangeEnd);
+            }
+
+            return deleted;
+        }
+    }
+
+    /**
+     * Checkpoints in native code while background work is held off, so that no compaction
+     * replaces table files or rewrites the manifest meanwhile. Table files are hard-linked,
+     * falling back to copying across file systems, and the manifest, CURRENT and log files are
+     * copied. Sealed value log files are linked too, and garbage collection waits.
+     *
+     * A partial copy is deleted if checkpointing fails.
+     *
+     * @param targetPath path of the copy, must not exist
+     * @throws LevelDBException
+     */
+    @Override
+    public void checkpoint(String targetPath) throws LevelDBException {
+        if (targetPath == null) {
+            throw new IllegalArgumentException("Target path must not be null.");
+        }
+
+        File target = new File(targetPath);
+
+        if (target.exists()) {
+            throw new LevelDBException("Checkpoint target " + targetPath + " already exists.");
+        }
+
+        try {
+            if (valueLog == null) {
+                checkpointLocked(targetPath);
+
+                return;
+            }
+
+            // Taken ahead of the database lock, like garbage collection itself does.
+            synchronized (valueLogGarbageLock) {
+                checkpointLocked(targetPath);
+            }
+        } catch (LevelDBException e) {
+            deleteRecursively(target);
+
+            throw e;
+        }
+    }
+
+    private void checkpointLocked(String targetPath) throws LevelDBException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            if (valueLog == null) {
+                nativeCheckpoint(ndb, targetPath);
+
+                return;
+            }
+
+            // Keeps files that garbage collection has already rewritten until they are linked.
+            valueLog.retain();
+
+            try {
+                nativeCheckpoint(ndb, targetPath);
+            } finally {
+                valueLog.release();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            Log.w(NativeLevelDB.class.getName(), "Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Writes already encoded values, bypassing the value log.
+     */
+    private void writeStored(WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            NativeWriteBatch nativeWriteBatch = new NativeWriteBatch(writeBatch);
+
+            try {
+                nativeWrite(ndb, sync, nativeWriteBatch.nativePointer());
+            } finally {
+                nativeWriteBatch.close();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a property of LevelDB, or null.
+     *
+     * Valid property names include:
+     *
+     * <ul> <li>"leveldb.num-files-at-level<N>" - return the number of files at level <N>, where <N> is an ASCII
+     * representation of a level number (e.g. "0").</li>
+     *
+     * <li>"leveldb.stats" - returns a multi-line string that describes statistics about the internal operation of the
+     * DB.</li>
+     *
+     * <li>"leveldb.sstables" - returns a multi-line string that describes all of the sstables that make up the db
+     * contents.</li>
+     *
+     * <li>"leveldb.approximate-memory-usage" - returns the approximate number of bytes of memory in use by the DB.</li>
+     *
+     * </ul>
+     *
+     * @param key the key
+     * @return property data, or <tt>null</tt>
+     * @throws LevelDBClosedException
+     */
+    @Override
+    public byte[] getPropertyBytes(byte[] key) throws LevelDBClosedException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            return nativeGetProperty(ndb, key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the counters of the block cache. When the configuration does not specify a cache size,
+     * LevelDB's default 8MB cache is used and counted.
+     *
+     * @return the cache counters
+     * @throws LevelDBClosedException
+     */
+    @Override
+    public CacheStats getCacheStats() throws LevelDBClosedException {
+        long[] stats;
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            stats = nativeCacheStats(ndb);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new CacheStats(stats[0], stats[1], stats[2], stats[3], stats[4], stats[5], stats[6], stats[7]);
+    }
+
+    /**
+     * Reads the file I/O counters, collected by a wrapping <tt>leveldb::Env</tt>.
+     *
+     * @return the I/O counters, or null if not configured to collect them
+     * @throws LevelDBClosedException
+     */
+    @Override
+    public IOStats getIOStats() throws LevelDBClosedException {
+        long[] stats;
+
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            stats = nativeIOStats(ndb);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (stats == null) {
+            return null;
         }
+
+        return IOStats.fromArray(stats);
     }
 
     /**
-     * Writes a {@link com.github.hf.leveldb.WriteBatch} to the database.
+     * Pauses background work through a wrapping <tt>leveldb::Env</tt>. Work that gets scheduled
+     * while paused is parked, not run, so the background thread shared with other databases is not
+     * blocked.
      *
-     * @param writeBatch the WriteBatch to write
-     * @param sync       whether this is a synchronous (true) or asynchronous (false) write
-     * @throws LevelDBException
+     * @throws LevelDBClosedException
      */
     @Override
-    public void write(WriteBatch writeBatch, boolean sync) throws LevelDBException {
-        if (writeBatch == null) {
-            throw new IllegalArgumentException("Write batch must not be null.");
+    public void pauseBackgroundWork() throws LevelDBClosedException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            nativePauseBackgroundWork(ndb);
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        synchronized (this) {
+    @Override
+    public void resumeBackgroundWork() throws LevelDBClosedException {
+        lock.readLock().lock();
+
+        try {
             checkIfClosed();
 
-            NativeWriteBatch nativeWriteBatch = new NativeWriteBatch(writeBatch);
+            nativeResumeBackgroundWork(ndb);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-            try {
-                nativeWrite(ndb, sync, nativeWriteBatch.nativePointer());
-            } finally {
-                nativeWriteBatch.close();
-                nativeWriteBatch = null;
-            }
+    @Override
+    public boolean isBackgroundWorkPaused() throws LevelDBClosedException {
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            return nativeIsBackgroundWorkPaused(ndb);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
-    /**
-     * Gets the value associated with the key, or <tt>null</tt>.
-     *
-     * @param key the key
-     * @param snapshot the snapshot from which to read the pair, or null
-     * @return the value, or <tt>null</tt>
-     * @throws LevelDBException
-     */
     @Override
-    public byte[] get(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
-        if (key == null) {
-            throw new IllegalArgumentException("Key must not be null!");
+    public void addEventListener(DbEvent.Listener listener) throws LevelDBClosedException {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null.");
         }
 
-        if (snapshot != null) {
-            if (!(snapshot instanceof NativeSnapshot)) {
-                throw new LevelDBSnapshotOwnershipException();
+        synchronized (this) {
+            if (eventsClosed) {
+                throw new LevelDBClosedException();
             }
 
-            if (!((NativeSnapshot) snapshot).checkOwner(this)) {
-                throw new LevelDBSnapshotOwnershipException();
-            }
-        }
+            eventListeners.add(listener);
 
-        synchronized (this) {
-            checkIfClosed();
+            if (eventThread == null) {
+                eventThread = new EventThread(new EventThread.Source() {
+                    @Override
+                    public long[] poll(int timeoutMillis) {
+                        // Closing the database waits for the event thread, so ndb stays valid while polling.
+                        return nativePollEvents(ndb, timeoutMillis);
+                    }
+
+                    @Override
+                    public void wakeUp() {
+                        nativeInterruptEvents(ndb);
+                    }
+                }, eventListeners);
 
-            return nativeGet(ndb, key, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id());
+                eventThread.start();
+            }
         }
     }
 
+    @Override
+    public void removeEventListener(DbEvent.Listener listener) {
+        eventListeners.remove(listener);
+    }
+
     /**
-     * Deletes the specified entry from the database. Deletion can be synchronous or asynchronous.
-     *
-     * @param key  the key
-     * @param sync whether this is a synchronous (true) or asynchronous (false) delete
-     * @throws LevelDBException
+     * Delays the calling writer depending on the number of level-0 files, which is sampled at most
+     * every 50ms. The delay grows from 250us at 5 files, and keeps growing past LevelDB's own
+     * slowdown trigger, up to 4ms.
      */
-    @Override
-    public void del(byte[] key, boolean sync) throws LevelDBException {
-        if (key == null) {
-            throw new IllegalArgumentException("Key must not be null.");
+    private void throttleWrite() throws LevelDBClosedException {
+        if (!throttleWrites) {
+            return;
         }
 
-        synchronized (this) {
-            checkIfClosed();
+        long now = System.nanoTime();
+
+        if (now - throttleSampledAt >= THROTTLE_SAMPLE_NANOS) {
+            throttleSampledAt = now;
+
+            String files = getProperty("leveldb.num-files-at-level0");
+
+            int level0 = files == null ? 0 : Integer.parseInt(files.trim());
+
+            if (level0 <= THROTTLE_LEVEL0_START) {
+                throttleDelayNanos = 0;
+            } else if (level0 < THROTTLE_LEVEL0_SLOWDOWN) {
+                throttleDelayNanos = (level0 - THROTTLE_LEVEL0_START) * THROTTLE_STEP_NANOS;
+            } else {
+                throttleDelayNanos = Math.min(THROTTLE_MAX_NANOS,
+                        (level0 - THROTTLE_LEVEL0_START) * 2 * THROTTLE_STEP_NANOS);
+            }
+        }
+
+        long delay = throttleDelayNanos;
 
-            nativeDelete(ndb, sync, key);
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
         }
     }
 
     /**
-     * Get a property of LevelDB, or null.
-     *
-     * Valid property names include:
-     *
-     * <ul> <li>"leveldb.num-files-at-level<N>" - return the number of files at level <N>, where <N> is an ASCII
-     * representation of a level number (e.g. "0").</li>
-     *
-     * <li>"leveldb.stats" - returns a multi-line string that describes statistics about the internal operation of the
-     * DB.</li>
-     *
-     * <li>"leveldb.sstables" - returns a multi-line string that describes all of the sstables that make up the db
-     * contents.</li>
+     * Creates a new {@link com.github.hf.leveldb.Iterator} that iterates over this database.
      *
-     * </ul>
+     * The returned iterator is not thread safe and must be closed with {@link com.github.hf.leveldb.Iterator#close()} before closing this
+     * database.
      *
-     * @param key the key
-     * @return property data, or <tt>null</tt>
+     * @param fillCache whether iterating fills the internal cache
+     * @return a new iterator
      * @throws LevelDBClosedException
      */
     @Override
-    public byte[] getPropertyBytes(byte[] key) throws LevelDBClosedException {
-        if (key == null) {
-            throw new IllegalArgumentException("Key must not be null.");
+    public Iterator iterator(boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        if (snapshot != null) {
+            if (!(snapshot instanceof NativeSnapshot)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            if (!((NativeSnapshot) snapshot).checkOwner(this)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
         }
 
-        synchronized (this) {
+        lock.readLock().lock();
+
+        try {
             checkIfClosed();
 
-            return nativeGetProperty(ndb, key);
+            NativeIterator iterator = new NativeIterator(nativeIterate(ndb, fillCache, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id()));
+
+            if (valueLog == null) {
+                return iterator;
+            }
+
+            valueLog.retain();
+
+            return new ValueLogIterator(iterator, valueLog);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     /**
-     * Creates a new {@link com.github.hf.leveldb.Iterator} that iterates over this database.
+     * Creates a new iterator over the keys with the prefix, bounded in native code.
      *
-     * The returned iterator is not thread safe and must be closed with {@link com.github.hf.leveldb.Iterator#close()} before closing this
-     * database.
+     * The returned iterator is not thread safe and must be closed before closing this database.
      *
+     * @param prefix the prefix, non-null
      * @param fillCache whether iterating fills the internal cache
+     * @param snapshot the snapshot from which to read the entries, may be null
      * @return a new iterator
      * @throws LevelDBClosedException
      */
     @Override
-    public Iterator iterator(boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+    public Iterator prefixIterator(byte[] prefix, boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix must not be null.");
+        }
+
         if (snapshot != null) {
             if (!(snapshot instanceof NativeSnapshot)) {
                 throw new LevelDBSnapshotOwnershipException();
             }
 
-            if (((NativeSnapshot) snapshot).checkOwner(this)) {
+            if (!((NativeSnapshot) snapshot).checkOwner(this)) {
                 throw new LevelDBSnapshotOwnershipException();
             }
         }
 
-        synchronized (this) {
+        lock.readLock().lock();
+
+        try {
             checkIfClosed();
 
-            return new NativeIterator(nativeIterate(ndb, fillCache, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id()));
+            NativeIterator iterator = new NativeIterator(nativeIteratePrefix(ndb, prefix, fillCache, snapshot == null ? 0 : ((NativeSnapshot) snapshot).id()));
+
+            if (valueLog == null) {
+                return iterator;
+            }
+
+            valueLog.retain();
+
+            return new ValueLogIterator(iterator, valueLog);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -328,7 +2043,21 @@ public class NativeLevelDB extends LevelDB {
 
     @Override
     public Snapshot obtainSnapshot() throws LevelDBClosedException {
-        return new NativeSnapshot(this, nativeSnapshot(ndb));
+        lock.readLock().lock();
+
+        try {
+            checkIfClosed();
+
+            NativeSnapshot snapshot = new NativeSnapshot(this, nativeSnapshot(ndb));
+
+            if (valueLog != null) {
+                valueLog.retain();
+            }
+
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
@@ -345,10 +2074,20 @@ public class NativeLevelDB extends LevelDB {
             throw new LevelDBSnapshotOwnershipException();
         }
 
-        synchronized (this) {
+        lock.readLock().lock();
+
+        try {
             checkIfClosed();
 
-            nativeReleaseSnapshot(ndb, ((NativeSnapshot) snapshot).release());
+            long nsnapshot = ((NativeSnapshot) snapshot).release();
+
+            nativeReleaseSnapshot(ndb, nsnapshot);
+
+            if (valueLog != null && nsnapshot != 0) {
+                valueLog.release();
+            }
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -357,7 +2096,7 @@ public class NativeLevelDB extends LevelDB {
      *
      * Use before calling any of the nat functions that require the ndb pointer.
      *
-     * Don't call this outside a synchronized context.
+     * Don't call this without holding the read lock.
      *
      * @throws LevelDBClosedException
      */
@@ -371,11 +2110,18 @@ public class NativeLevelDB extends LevelDB {
      * Natively opens the database.
      *
      * @param createIfMissing
+     * @param cacheSize
+     * @param cachePolicy ordinal of {@link com.github.hf.leveldb.LevelDB.CachePolicy}
+     * @param blockSize
+     * @param writeBufferSize
+     * @param ioStats whether to install a <tt>leveldb::Env</tt> that counts file I/O
+     * @param backgroundPriority nice value for background work, 0 to leave unchanged
+     * @param expiring whether values start with an expiry header
      * @param path
      * @return the nat structure pointer
      * @throws LevelDBException
      */
-    private static native long nativeOpen(boolean createIfMissing, int cacheSize, int blockSize, int writeBufferSize, String path) throws LevelDBException;
+    private static native long nativeOpen(boolean createIfMissing, int cacheSize, int cachePolicy, int blockSize, int writeBufferSize, boolean ioStats, int backgroundPriority, boolean expiring, String path) throws LevelDBException;
 
     /**
      * Natively closes pointers and memory. Pointer is unchecked.
@@ -451,6 +2197,210 @@ public class NativeLevelDB extends LevelDB {
      */
     private static native long nativeIterate(long ndb, boolean fillCache, long nsnapshot);
 
+    /**
+     * Natively reads the block cache counters. Pointer is unchecked.
+     *
+     * @param ndb
+     * @return lookups, hits, inserts, inserted bytes, evictions, evicted bytes, usage and capacity
+     */
+    private static native long[] nativeCacheStats(long ndb);
+
+    /**
+     * Natively reads the file I/O counters. Pointer is unchecked.
+     *
+     * @param ndb
+     * @return the counters as described in {@link IOStats#fromArray(long[])}, or null if not collected
+     */
+    private static native long[] nativeIOStats(long ndb);
+
+    /**
+     * Natively pauses background work, waiting for running work to finish. Pointer is unchecked.
+     *
+     * @param ndb
+     */
+    private static native void nativePauseBackgroundWork(long ndb);
+
+    /**
+     * Natively resumes background work. Pointer is unchecked.
+     *
+     * @param ndb
+     */
+    private static native void nativeResumeBackgroundWork(long ndb);
+
+    /**
+     * Natively checks whether background work is paused. Pointer is unchecked.
+     *
+     * @param ndb
+     * @return whether paused
+     */
+    private static native boolean nativeIsBackgroundWorkPaused(long ndb);
+
+    /**
+     * Natively waits for events recognized from the info log. The first call enables recognizing
+     * them. Pointer is unchecked.
+     *
+     * @param ndb
+     * @param timeoutMillis maximum time to wait for an event
+     * @return four longs per event: type ordinal, time in milliseconds, level and bytes; may be empty
+     */
+    private static native long[] nativePollEvents(long ndb, int timeoutMillis);
+
+    /**
+     * Natively makes all current and future {@link #nativePollEvents(long, int)} calls return
+     * immediately. Pointer is unchecked.
+     *
+     * @param ndb
+     */
+    private static native void nativeInterruptEvents(long ndb);
+
+    /**
+     * Natively compacts a key range. Pointer is unchecked.
+     *
+     * @param ndb
+     * @param begin may be null
+     * @param end may be null
+     */
+    private static native void nativeCompactRange(long ndb, byte[] begin, byte[] end);
+
+    /**
+     * Natively copies part of a value into an array. Pointer is unchecked, offsets are checked.
+     *
+     * @param ndb
+     * @param key
+     * @param nsnapshot
+     * @param offset offset into the value
+     * @param length maximum number of bytes to copy
+     * @param dest
+     * @param destOffset
+     * @return the number of bytes copied, or -1 if not found
+     * @throws LevelDBException
+     */
+    private static native int nativeGetRange(long ndb, byte[] key, long nsnapshot, int offset, int length, byte[] dest, int destOffset) throws LevelDBException;
+
+    /**
+     * Natively looks up the length of a value. Pointer is unchecked.
+     *
+     * @param ndb
+     * @param key
+     * @param nsnapshot
+     * @return the length, or -1 if not found
+     * @throws LevelDBException
+     */
+    private static native int nativeValueLength(long ndb, byte[] key, long nsnapshot) throws LevelDBException;
+
     private static native long nativeSnapshot(long ndb);
     private static native void nativeReleaseSnapshot(long ndb, long nsnapshot);
+
+    /**
+     * Natively creates a checkpoint, holding off background work meanwhile. Pointer is unchecked.
+     *
+     * @param ndb
+     * @param targetPath
+     * @throws LevelDBException
+     */
+    private static native void nativeCheckpoint(long ndb, String targetPath) throws LevelDBException;
+
+    /**
+     * Natively creates an iterator over the keys with the prefix, which it strips. Pointer is
+     * unchecked.
+     *
+     * @param ndb
+     * @param prefix
+     * @param fillCache
+     * @param nsnapshot
+     * @return pointer to the native iterator
+     */
+    private static native long nativeIteratePrefix(long ndb, byte[] prefix, boolean fillCache, long nsnapshot);
+
+    private static native long nativeApproximateSize(long ndb, byte[] begin, byte[] end);
+
+    /**
+     * Natively deletes the keys in a range. Pointer is unchecked.
+     *
+     * @param ndb
+     * @param begin
+     * @param end may be null
+     * @return the number of keys deleted
+     * @throws LevelDBException
+     */
+    private static native long nativeDeleteRange(long ndb, byte[] begin, byte[] end) throws LevelDBException;
+
+    /**
+     * Checks up to <tt>limit</tt> pairs from <tt>begin</tt> on, and deletes the expired ones.
+     *
+     * @param ndb
+     * @param begin the key to start from, or null for the first key
+     * @param limit the number of pairs to check
+     * @param counts receives the number of pairs checked and deleted
+     * @return the key to continue from or null at the end, and the first and last deleted keys or nulls
+     * @throws LevelDBException
+     */
+    private static native byte[][] nativeSweepExpired(long ndb, byte[] begin, int limit, long[] counts) throws LevelDBException;
+
+    /**
+     * @param name
+     * @return the ID of the merge operator, or -1 if there is none
+     */
+    private static native int nativeFindMergeOperator(String name);
+
+    /**
+     * Merges under a native lock for the key.
+     *
+     * @param ndb
+     * @param mergeOperator ID of the merge operator
+     * @param sync
+     * @param key
+     * @param operand
+     * @param returnValue whether to return the new value
+     * @return the new value, or null if not returned
+     * @throws LevelDBException
+     */
+    private static native byte[] nativeMerge(long ndb, int mergeOperator, boolean sync, byte[] key, byte[] operand, boolean returnValue) throws LevelDBException;
+
+    /**
+     * Writes the new value, or deletes the key if it is null, if the current value is the
+     * expected one, under a native lock for the key.
+     *
+     * @param ndb
+     * @param sync
+     * @param key
+     * @param expected the expected value, or null if the key is expected to be missing
+     * @param newValue the new value, or null to delete the key
+     * @param expiresAt expiry time of the new value in milliseconds since the epoch, 0 for never
+     * @return whether the value was replaced
+     * @throws LevelDBException
+     */
+    private static native boolean nativeCompareAndSet(long ndb, boolean sync, byte[] key, byte[] expected, byte[] newValue, long expiresAt) throws LevelDBException;
+
+    /**
+     * Natively writes a batch if no key changed since a snapshot.
+     *
+     * @param ndb
+     * @param nsnapshot
+     * @param keys the keys to check
+     * @param nwb
+     * @param sync
+     * @return whether no key had changed and the batch was written
+     * @throws LevelDBException
+     */
+    private static native boolean nativeCommit(long ndb, long nsnapshot, byte[][] keys, long nwb, boolean sync) throws LevelDBException;
+
+    /**
+     * Iterates over keys from begin to fill the block cache.
+     *
+     * @param ndb
+     * @param begin the first key, or null for the first key in the database
+     * @param end the key to stop at, or null for none
+     * @param limit the maximum number of keys to iterate over
+     * @return the key to continue from, or null if the range is done
+     * @throws LevelDBException
+     */
+    private static native byte[] nativeWarmUp(long ndb, byte[] begin, byte[] end, int limit) throws LevelDBException;
+
+    /**
+     * Writes the memtable to a table and rolls the log, waiting for it.
+     *
+     * @param ndb
+     */
+    private static native void nativeFlush(long ndb);
 }
@@ -0,0 +1,129 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import android.util.Log;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+
+/**
+ * A daemon thread that works on a database at an interval, until it is shut down or the database
+ * is closed.
+ */
+abstract class PeriodicThread extends Thread {
+    private final long intervalMillis;
+
+    // Guarded by this.
+    private boolean stopped;
+
+    PeriodicThread(String name, long intervalMillis) {
+        super(name);
+        setDaemon(true);
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Does the work once.
+     *
+     * @throws LevelDBException
+     */
+    abstract void work() throws LevelDBException;
+
+    /**
+     * @return the message logged when {@link #work()} fails
+     */
+    abstract String failureMessage();
+
+    /**
+     * Stops the thread and waits for the work in progress to finish. Does not interrupt, as that
+     * would close the file channels the work may be using.
+     */
+    final void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+
+        if (this == Thread.currentThread()) {
+            return;
+        }
+
+        boolean interrupted = false;
+
+        while (isAlive()) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false if the thread was shut down meanwhile
+     */
+    final synchronized boolean await(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining;
+
+        while (!stopped && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+
+        return !stopped;
+    }
+
+    @Override
+    public final void run() {
+        while (await(intervalMillis)) {
+            try {
+                work();
+            } catch (LevelDBClosedException e) {
+                return;
+            } catch (LevelDBException e) {
+                Log.e(NativeLevelDB.class.getName(), failureMessage(), e);
+            }
+        }
+    }
+}
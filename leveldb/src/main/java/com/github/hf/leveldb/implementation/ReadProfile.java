@@ -0,0 +1,278 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import android.util.Log;
+import com.github.hf.leveldb.KeyRange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts a sample of the reads of a database by key prefix, so that the hottest key ranges of one
+ * session can be warmed up at the start of the next.
+ *
+ * The profile is saved as <tt>path/READ_PROFILE</tt>: a version, the number of prefixes, and
+ * each prefix with its count, hottest first. Counts carried over from the previous session are
+ * halved, so that the profile follows changes in the access pattern within a few sessions.
+ */
+final class ReadProfile {
+    static final String FILE_NAME = "READ_PROFILE";
+
+    private static final int VERSION = 1;
+
+    // Long enough to tell keyspaces and top-level key namespaces apart, short enough that a hot
+    // range covers many keys.
+    static final int PREFIX_LENGTH = 4;
+
+    // One in this many reads is counted, must be a power of two.
+    private static final int SAMPLE_INTERVAL = 16;
+
+    // Past this, counts are halved and the coldest prefixes dropped.
+    private static final int MAX_TRACKED = 4096;
+
+    static final int MAX_SAVED = 64;
+
+    private final File file;
+
+    // Guarded by this.
+    private final HashMap<ByteBuffer, long[]> counts = new HashMap<ByteBuffer, long[]>();
+
+    // Races only make the sample a little less regular.
+    private int reads;
+
+    private ReadProfile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the profile of the database at path, or starts an empty one if there is none or it
+     * can't be read.
+     */
+    static ReadProfile load(String path) {
+        ReadProfile profile = new ReadProfile(new File(path, FILE_NAME));
+
+        if (!profile.file.exists()) {
+            return profile;
+        }
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(profile.file)));
+
+            if (in.readInt() != VERSION) {
+                return profile;
+            }
+
+            int size = in.readInt();
+
+            for (int i = 0; i < size; i++) {
+                byte[] prefix = new byte[in.readUnsignedByte()];
+                in.readFully(prefix);
+
+                long count = in.readLong() / 2;
+
+                if (count > 0) {
+                    profile.counts.put(ByteBuffer.wrap(prefix), new long[]{count});
+                }
+            }
+        } catch (IOException e) {
+            Log.w(NativeLevelDB.class.getName(), "Unable to read " + profile.file + ", starting a new profile.", e);
+
+            profile.counts.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Only read.
+                }
+            }
+        }
+
+        return profile;
+    }
+
+    static void destroy(String path) {
+        File file = new File(path, FILE_NAME);
+
+        if (file.exists() && !file.delete()) {
+            Log.w(NativeLevelDB.class.getName(), "Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Counts a read of the key, if it is sampled.
+     */
+    void record(byte[] key) {
+        if ((++reads & (SAMPLE_INTERVAL - 1)) != 0) {
+            return;
+        }
+
+        ByteBuffer prefix = ByteBuffer.wrap(key, 0, Math.min(key.length, PREFIX_LENGTH)).slice();
+
+        synchronized (this) {
+            long[] count = counts.get(prefix);
+
+            if (count == null) {
+                if (counts.size() >= MAX_TRACKED) {
+                    decay();
+                }
+
+                counts.put(ByteBuffer.wrap(Arrays.copyOf(key, prefix.remaining())), new long[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+    }
+
+    private void decay() {
+        Iterator<long[]> iterator = counts.values().iterator();
+
+        while (iterator.hasNext()) {
+            long[] count = iterator.next();
+
+            count[0] /= 2;
+
+            if (count[0] == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the key ranges of the hottest prefixes, hottest first
+     */
+    List<KeyRange> hotRanges() {
+        List<KeyRange> ranges = new ArrayList<KeyRange>();
+
+        for (Map.Entry<ByteBuffer, long[]> entry : hottest()) {
+            ranges.add(KeyRange.prefix(prefix(entry.getKey())));
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Saves the hottest prefixes, replacing the previous profile atomically.
+     */
+    void save() {
+        List<Map.Entry<ByteBuffer, long[]>> hottest = hottest();
+
+        File temporary = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+
+            out.writeInt(VERSION);
+            out.writeInt(hottest.size());
+
+            for (Map.Entry<ByteBuffer, long[]> entry : hottest) {
+                byte[] prefix = prefix(entry.getKey());
+
+                out.writeByte(prefix.length);
+                out.write(prefix);
+                out.writeLong(entry.getValue()[0]);
+            }
+
+            out.close();
+            out = null;
+
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Unable to rename " + temporary + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(NativeLevelDB.class.getName(), "Unable to save the read profile.", e);
+
+            if (!temporary.delete()) {
+                Log.w(NativeLevelDB.class.getName(), "Unable to delete " + temporary);
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Failed anyway.
+                }
+            }
+        }
+    }
+
+    private synchronized List<Map.Entry<ByteBuffer, long[]>> hottest() {
+        List<Map.Entry<ByteBuffer, long[]>> entries = new ArrayList<Map.Entry<ByteBuffer, long[]>>();
+
+        for (Map.Entry<ByteBuffer, long[]> entry : counts.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<ByteBuffer, long[]>(entry.getKey(), new long[]{entry.getValue()[0]}));
+        }
+
+        Collections.sort(entries, new Comparator<Map.Entry<ByteBuffer, long[]>>() {
+            @Override
+            public int compare(Map.Entry<ByteBuffer, long[]> a, Map.Entry<ByteBuffer, long[]> b) {
+                long difference = b.getValue()[0] - a.getValue()[0];
+
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+
+        return entries.subList(0, Math.min(entries.size(), MAX_SAVED));
+    }
+
+    private static byte[] prefix(ByteBuffer buffer) {
+        byte[] prefix = new byte[buffer.remaining()];
+
+        buffer.duplicate().get(prefix);
+
+        return prefix;
+    }
+}
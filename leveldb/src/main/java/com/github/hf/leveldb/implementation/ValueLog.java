@@ -0,0 +1,855 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import android.util.Log;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBCorruptionException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBIOException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of large values, which keeps them out of LevelDB's compactions (WiscKey-style
+ * key-value separation).
+ *
+ * With a value log, every value stored in LevelDB starts with a tag byte. {@link #INLINE} values
+ * follow the tag. {@link #POINTER} values live in a log file under <tt>path/vlog</tt>, and the tag
+ * is followed by the file number, offset, length and CRC32 of the value.
+ *
+ * Log files hold records of <tt>key length, value length, value CRC32, key, value</tt>. The active
+ * file is rolled over at {@link #MAX_FILE_SIZE}. Garbage collection copies the values of older
+ * files that are still referenced into the active file and then deletes the old file, deferring
+ * the deletion while snapshots or iterators that might still reference it are open.
+ *
+ * Writers report the pointers they overwrite or delete, so that the dead bytes of every file are
+ * known without reading it, and collection only scans files whose estimate crosses the garbage
+ * ratio. The estimates are saved as <tt>vlog/GARBAGE</tt>: a version, the number of files, and
+ * each file number with its dead bytes, or -1 if unknown. Files without an estimate, as after a
+ * crash, a range delete or in a checkpoint, are scanned once to measure it.
+ */
+final class ValueLog implements Closeable {
+
+    static final byte INLINE = 0;
+    static final byte POINTER = 1;
+
+    // Tag, file number, value offset, value length, value CRC32.
+    static final int POINTER_SIZE = 1 + 4 + 8 + 4 + 4;
+
+    static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 4;
+
+    private static final String DIRECTORY = "vlog";
+    private static final String SUFFIX = ".vlog";
+
+    private static final String GARBAGE_FILE_NAME = "GARBAGE";
+    private static final int GARBAGE_VERSION = 1;
+
+    /**
+     * Access to the database for garbage collection.
+     */
+    interface Store {
+        /**
+         * @return the stored (encoded) value for the key, or null
+         */
+        byte[] getStored(byte[] key) throws LevelDBException;
+
+        /**
+         * Replaces stored values, pointers in this case, in a single synchronous write.
+         */
+        void putStored(List<byte[]> keys, List<byte[]> stored) throws LevelDBException;
+    }
+
+    /**
+     * Decoded pointer.
+     */
+    static final class Pointer {
+        final int file;
+        final long offset;
+        final int length;
+        final int crc;
+
+        Pointer(int file, long offset, int length, int crc) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+
+        byte[] encode() {
+            return ByteBuffer.allocate(POINTER_SIZE)
+                    .put(POINTER)
+                    .putInt(file)
+                    .putLong(offset)
+                    .putInt(length)
+                    .putInt(crc)
+                    .array();
+        }
+
+        static Pointer decode(byte[] stored) throws LevelDBCorruptionException {
+            if (stored.length != POINTER_SIZE) {
+                throw new LevelDBCorruptionException("Invalid value log pointer.");
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(stored, 1, POINTER_SIZE - 1);
+
+            return new Pointer(buffer.getInt(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    private final File directory;
+    private final int threshold;
+
+    // All guarded by this.
+    private int activeNumber;
+    private FileChannel active;
+    private long activeSize;
+    // Whether values were appended since the active file was last forced.
+    private boolean unsynced;
+    private final Map<Integer, FileChannel> channels = new HashMap<Integer, FileChannel>();
+    private final TreeSet<Integer> sealed = new TreeSet<Integer>();
+    private final List<Integer> pendingDeletes = new ArrayList<Integer>();
+    private int readers;
+    private boolean closed;
+    // Estimated dead bytes per file, and the files that have to be scanned to find out.
+    private final Map<Integer, Long> garbage = new HashMap<Integer, Long>();
+    private final Set<Integer> unknownGarbage = new HashSet<Integer>();
+    private boolean garbageChanged;
+
+    /**
+     * @param path the database path
+     * @return whether the database at the path has a value log
+     */
+    static boolean exists(String path) {
+        return new File(path, DIRECTORY).isDirectory();
+    }
+
+    /**
+     * Deletes the value log of the database at the path, if any.
+     */
+    static void destroy(String path) {
+        File directory = new File(path, DIRECTORY);
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(ValueLog.class.getName(), "Unable to delete " + file);
+                }
+            }
+        }
+
+        if (directory.exists() && !directory.delete()) {
+            Log.w(ValueLog.class.getName(), "Unable to delete " + directory);
+        }
+    }
+
+    /**
+     * Opens the value log of a database, creating it if needed, and starts a new active file.
+     *
+     * @param path      the database path
+     * @param threshold values of at least this many bytes go into the log, 0 to keep all values
+     *                  inline (while still reading existing pointers)
+     * @throws LevelDBIOException
+     */
+    ValueLog(String path, int threshold) throws LevelDBIOException {
+        this.directory = new File(path, DIRECTORY);
+        this.threshold = threshold;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new LevelDBIOException("Unable to create value log directory " + directory);
+        }
+
+        int max = 0;
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                int number = parseNumber(file.getName());
+
+                if (number > 0) {
+                    sealed.add(number);
+                    max = Math.max(max, number);
+                }
+            }
+        }
+
+        loadGarbage();
+
+        // A crash may have left a partial record at the end of the last file, so never append to it.
+        roll(max + 1);
+    }
+
+    /**
+     * Encodes a value for storage in LevelDB, appending it to the log if it is large enough. For
+     * synchronous writes, call {@link #sync()} after encoding and before writing to LevelDB, even if
+     * the value was stored inline, as the write also makes earlier pointers durable.
+     *
+     * @return the tagged value or pointer
+     */
+    byte[] encode(byte[] key, byte[] value) throws LevelDBException {
+        if (threshold == 0 || value.length < threshold) {
+            byte[] stored = new byte[value.length + 1];
+
+            stored[0] = INLINE;
+            System.arraycopy(value, 0, stored, 1, value.length);
+
+            return stored;
+        }
+
+        return append(key, value).encode();
+    }
+
+    /**
+     * Decodes a value read from LevelDB.
+     *
+     * @param stored the stored value, may be null
+     * @return the value, or null if stored is null
+     */
+    byte[] decode(byte[] stored) throws LevelDBException {
+        if (stored == null) {
+            return null;
+        }
+
+        if (stored.length == 0) {
+            throw new LevelDBCorruptionException("Value without value log tag.");
+        }
+
+        if (stored[0] == INLINE) {
+            return Arrays.copyOfRange(stored, 1, stored.length);
+        }
+
+        if (stored[0] != POINTER) {
+            throw new LevelDBCorruptionException("Unknown value log tag " + stored[0]);
+        }
+
+        Pointer pointer = Pointer.decode(stored);
+
+        byte[] value = new byte[pointer.length];
+
+        read(pointer.file, pointer.offset, value, 0, value.length);
+
+        if (crc(value) != pointer.crc) {
+            throw new LevelDBCorruptionException("Value log checksum mismatch in file " + pointer.file);
+        }
+
+        return value;
+    }
+
+    /**
+     * Reads part of a value that a pointer refers to. Not checksummed.
+     *
+     * @return the number of bytes read
+     */
+    int read(Pointer pointer, int offset, byte[] dest, int destOffset, int length) throws LevelDBException {
+        if (offset >= pointer.length) {
+            return 0;
+        }
+
+        int count = Math.min(length, pointer.length - offset);
+
+        read(pointer.file, pointer.offset + offset, dest, destOffset, count);
+
+        return count;
+    }
+
+    /**
+     * Forces appended values to disk, if any were appended since the last time. Files are forced
+     * when sealed, so only the active file can have values that are not on disk.
+     */
+    synchronized void sync() throws LevelDBException {
+        checkIfClosed();
+
+        if (!unsynced) {
+            return;
+        }
+
+        try {
+            active.force(false);
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to sync value log: " + e.getMessage());
+        }
+
+        unsynced = false;
+    }
+
+    /**
+     * Counts the value that a stored value referred to as garbage, once the key has been
+     * overwritten or deleted. Concurrent writes to the same key may count a value twice or miss
+     * one, which only makes collection scan a file early or late.
+     *
+     * @param key    the key
+     * @param stored the stored value the key had before, may be null or inline
+     */
+    synchronized void dead(byte[] key, byte[] stored) throws LevelDBCorruptionException {
+        if (stored == null || stored.length == 0 || stored[0] != POINTER) {
+            return;
+        }
+
+        Pointer pointer = Pointer.decode(stored);
+
+        // Already collected.
+        if (pointer.file != activeNumber && !sealed.contains(pointer.file)) {
+            return;
+        }
+
+        Long bytes = garbage.get(pointer.file);
+
+        garbage.put(pointer.file, (bytes == null ? 0 : bytes) + RECORD_HEADER_SIZE + key.length + pointer.length);
+        garbageChanged = true;
+    }
+
+    /**
+     * Called after keys were deleted without looking up their pointers. Every file is scanned
+     * by the next collection.
+     */
+    synchronized void rangeDeleted() {
+        unknownGarbage.addAll(sealed);
+        unknownGarbage.add(activeNumber);
+        garbageChanged = true;
+    }
+
+    /**
+     * Called when a snapshot or iterator, which may reference values in files that garbage
+     * collection has since rewritten, is opened.
+     */
+    synchronized void retain() {
+        readers++;
+    }
+
+    /**
+     * Called when a snapshot or iterator is closed. Deletes rewritten files once no readers remain.
+     */
+    void release() {
+        List<Integer> deletes = null;
+
+        synchronized (this) {
+            readers--;
+
+            if (readers == 0 && !pendingDeletes.isEmpty()) {
+                deletes = new ArrayList<Integer>(pendingDeletes);
+                pendingDeletes.clear();
+            }
+        }
+
+        if (deletes != null) {
+            for (int number : deletes) {
+                delete(number);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the live values of sealed files in which at least the given fraction of bytes is
+     * garbage, then deletes those files. Only files whose estimated garbage crosses the fraction,
+     * or that have no estimate, are scanned. Writes to the database must be kept out, by the
+     * caller, while live values are checked and rewritten.
+     *
+     * @param store          access to the database
+     * @param garbageRatio   minimum fraction of garbage for a file to be collected
+     * @param writeExclusion held while checking and rewriting live values
+     * @return the number of bytes of log files reclaimed
+     */
+    long collectGarbage(Store store, double garbageRatio, Lock writeExclusion) throws LevelDBException {
+        List<Integer> candidates = new ArrayList<Integer>();
+
+        synchronized (this) {
+            checkIfClosed();
+
+            for (int number : sealed) {
+                Long bytes = garbage.get(number);
+
+                if (unknownGarbage.contains(number) || (bytes != null && bytes >= file(number).length() * garbageRatio)) {
+                    candidates.add(number);
+                }
+            }
+        }
+
+        long reclaimed = 0;
+
+        try {
+            for (int number : candidates) {
+                reclaimed += collectFile(store, number, garbageRatio, writeExclusion);
+            }
+        } finally {
+            saveGarbage();
+        }
+
+        return reclaimed;
+    }
+
+    private long collectFile(Store store, int number, double garbageRatio, Lock writeExclusion) throws LevelDBException {
+        FileChannel channel = channel(number);
+
+        long size;
+
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to read value log file " + number + ": " + e.getMessage());
+        }
+
+        long estimated = estimatedGarbage(number);
+
+        List<byte[]> liveKeys = new ArrayList<byte[]>();
+        List<Pointer> livePointers = new ArrayList<Pointer>();
+        long liveBytes = 0;
+
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            int crc = header.getInt();
+
+            long valueOffset = position + RECORD_HEADER_SIZE + keyLength;
+
+            if (keyLength < 0 || valueLength < 0 || valueOffset + valueLength > size) {
+                // Partial record at the end of a file, written before a crash.
+                break;
+            }
+
+            byte[] key = new byte[keyLength];
+            readFully(channel, ByteBuffer.wrap(key), position + RECORD_HEADER_SIZE);
+
+            Pointer pointer = new Pointer(number, valueOffset, valueLength, crc);
+
+            if (isLive(store.getStored(key), pointer)) {
+                liveKeys.add(key);
+                livePointers.add(pointer);
+                liveBytes += RECORD_HEADER_SIZE + keyLength + valueLength;
+            }
+
+            position = valueOffset + valueLength;
+        }
+
+        if (size > 0 && liveBytes > size * (1 - garbageRatio)) {
+            synchronized (this) {
+                // Values that died during the scan may have been counted twice, which only brings
+                // the next scan forward.
+                garbage.put(number, size - liveBytes + estimatedGarbage(number) - estimated);
+                unknownGarbage.remove(number);
+                garbageChanged = true;
+            }
+
+            return 0;
+        }
+
+        final int batchSize = 64;
+
+        for (int start = 0; start < liveKeys.size(); start += batchSize) {
+            int end = Math.min(liveKeys.size(), start + batchSize);
+
+            writeExclusion.lock();
+
+            try {
+                List<byte[]> keys = new ArrayList<byte[]>();
+                List<byte[]> stored = new ArrayList<byte[]>();
+
+                for (int i = start; i < end; i++) {
+                    byte[] key = liveKeys.get(i);
+                    Pointer pointer = livePointers.get(i);
+
+                    // Overwritten or deleted since the scan.
+                    if (!isLive(store.getStored(key), pointer)) {
+                        continue;
+                    }
+
+                    byte[] value = new byte[pointer.length];
+                    read(pointer.file, pointer.offset, value, 0, value.length);
+
+                    keys.add(key);
+                    stored.add(append(key, value).encode());
+                }
+
+                if (!keys.isEmpty()) {
+                    // The copies must be durable before the pointers to them can be, and the
+                    // pointers before the old file goes. Each batch is synced on its own, as a
+                    // later sync only covers LevelDB's current log, which may have been switched
+                    // since this batch was written.
+                    sync();
+                    store.putStored(keys, stored);
+                }
+            } finally {
+                writeExclusion.unlock();
+            }
+        }
+
+        boolean deleteNow;
+
+        synchronized (this) {
+            sealed.remove(number);
+            garbage.remove(number);
+            unknownGarbage.remove(number);
+            garbageChanged = true;
+
+            deleteNow = readers == 0;
+
+            if (!deleteNow) {
+                pendingDeletes.add(number);
+            }
+        }
+
+        if (deleteNow) {
+            delete(number);
+        }
+
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        saveGarbage();
+
+        closed = true;
+
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.w(ValueLog.class.getName(), "Unable to close value log file.", e);
+            }
+        }
+
+        channels.clear();
+        active = null;
+    }
+
+    private synchronized long estimatedGarbage(int number) {
+        Long bytes = garbage.get(number);
+
+        return bytes == null ? 0 : bytes;
+    }
+
+    /**
+     * Loads the saved garbage estimates. Sealed files without one are scanned by the next
+     * collection.
+     */
+    private void loadGarbage() {
+        File file = new File(directory, GARBAGE_FILE_NAME);
+
+        if (file.exists()) {
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+                if (in.readInt() == GARBAGE_VERSION) {
+                    int size = in.readInt();
+
+                    for (int i = 0; i < size; i++) {
+                        int number = in.readInt();
+                        long bytes = in.readLong();
+
+                        if (bytes >= 0) {
+                            garbage.put(number, bytes);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(ValueLog.class.getName(), "Unable to read " + file + ", scanning all files.", e);
+
+                garbage.clear();
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // Only read.
+                    }
+                }
+            }
+        }
+
+        garbage.keySet().retainAll(sealed);
+
+        for (int number : sealed) {
+            if (!garbage.containsKey(number)) {
+                unknownGarbage.add(number);
+            }
+        }
+    }
+
+    /**
+     * Saves the garbage estimates if they changed, replacing the previous ones atomically.
+     */
+    private synchronized void saveGarbage() {
+        if (!garbageChanged || closed) {
+            return;
+        }
+
+        File file = new File(directory, GARBAGE_FILE_NAME);
+        File temporary = new File(directory, GARBAGE_FILE_NAME + ".tmp");
+
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+
+            Set<Integer> numbers = new TreeSet<Integer>(garbage.keySet());
+            numbers.addAll(unknownGarbage);
+
+            out.writeInt(GARBAGE_VERSION);
+            out.writeInt(numbers.size());
+
+            for (int number : numbers) {
+                Long bytes = garbage.get(number);
+
+                out.writeInt(number);
+                out.writeLong(unknownGarbage.contains(number) || bytes == null ? -1 : bytes);
+            }
+
+            out.close();
+            out = null;
+
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Unable to rename " + temporary + " to " + file);
+            }
+
+            garbageChanged = false;
+        } catch (IOException e) {
+            Log.w(ValueLog.class.getName(), "Unable to save value log garbage estimates.", e);
+
+            if (!temporary.delete()) {
+                Log.w(ValueLog.class.getName(), "Unable to delete " + temporary);
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Failed anyway.
+                }
+            }
+        }
+    }
+
+    private File file(int number) {
+        return new File(directory, String.format("%06d%s", number, SUFFIX));
+    }
+
+    private static boolean isLive(byte[] stored, Pointer pointer) throws LevelDBCorruptionException {
+        if (stored == null || stored.length != POINTER_SIZE || stored[0] != POINTER) {
+            return false;
+        }
+
+        Pointer current = Pointer.decode(stored);
+
+        return current.file == pointer.file && current.offset == pointer.offset;
+    }
+
+    private synchronized Pointer append(byte[] key, byte[] value) throws LevelDBException {
+        checkIfClosed();
+
+        if (activeSize >= MAX_FILE_SIZE) {
+            // Later syncs only force the new active file.
+            try {
+                active.force(false);
+            } catch (IOException e) {
+                throw new LevelDBIOException("Unable to sync value log: " + e.getMessage());
+            }
+
+            sealed.add(activeNumber);
+            roll(activeNumber + 1);
+        }
+
+        int crc = crc(value);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + key.length + value.length)
+                .putInt(key.length)
+                .putInt(value.length)
+                .putInt(crc)
+                .put(key)
+                .put(value);
+
+        record.flip();
+
+        long recordOffset = activeSize;
+
+        try {
+            while (record.hasRemaining()) {
+                active.write(record, recordOffset + record.position());
+            }
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to append to value log: " + e.getMessage());
+        }
+
+        activeSize += record.limit();
+        unsynced = true;
+
+        return new Pointer(activeNumber, recordOffset + RECORD_HEADER_SIZE + key.length, value.length, crc);
+    }
+
+    private void roll(int number) throws LevelDBIOException {
+        File file = file(number);
+
+        try {
+            FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+            channels.put(number, channel);
+
+            active = channel;
+            activeNumber = number;
+            activeSize = channel.size();
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to create value log file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void read(int number, long position, byte[] dest, int destOffset, int length) throws LevelDBException {
+        readFully(channel(number), ByteBuffer.wrap(dest, destOffset, length), position);
+    }
+
+    private synchronized FileChannel channel(int number) throws LevelDBException {
+        checkIfClosed();
+
+        FileChannel channel = channels.get(number);
+
+        if (channel == null) {
+            File file = file(number);
+
+            if (!file.isFile()) {
+                throw new LevelDBCorruptionException("Missing value log file " + file);
+            }
+
+            try {
+                channel = new RandomAccessFile(file, "r").getChannel();
+            } catch (IOException e) {
+                throw new LevelDBIOException("Unable to open value log file " + file + ": " + e.getMessage());
+            }
+
+            channels.put(number, channel);
+        }
+
+        return channel;
+    }
+
+    private void delete(int number) {
+        FileChannel channel;
+
+        synchronized (this) {
+            channel = channels.remove(number);
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.w(ValueLog.class.getName(), "Unable to close value log file " + number, e);
+            }
+        }
+
+        File file = file(number);
+
+        if (!file.delete()) {
+            Log.w(ValueLog.class.getName(), "Unable to delete " + file);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws LevelDBException {
+        int start = buffer.position();
+
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position() - start);
+
+                if (read < 0) {
+                    throw new LevelDBCorruptionException("Value log file is truncated.");
+                }
+            }
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to read value log: " + e.getMessage());
+        }
+    }
+
+    private static int parseNumber(String name) {
+        if (!name.endsWith(SUFFIX)) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int crc(byte[] value) {
+        CRC32 crc = new CRC32();
+
+        crc.update(value, 0, value.length);
+
+        return (int) crc.getValue();
+    }
+
+    private void checkIfClosed() throws LevelDBClosedException {
+        if (closed) {
+            throw new LevelDBClosedException("Value log has been closed.");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.hf.leveldb.implementation;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBIteratorNotValidException;
+
+/**
+ * Iterator that resolves value log pointers. Keeps the value log files it may reference from being
+ * deleted until closed.
+ */
+class ValueLogIterator extends Iterator {
+    private final Iterator iterator;
+    private final ValueLog valueLog;
+
+    /**
+     * @param iterator iterator over the stored values, closed with this iterator
+     * @param valueLog the value log, already retained for this iterator
+     */
+    ValueLogIterator(Iterator iterator, ValueLog valueLog) {
+        this.iterator = iterator;
+        this.valueLog = valueLog;
+    }
+
+    @Override
+    public boolean isValid() throws LevelDBClosedException {
+        return iterator.isValid();
+    }
+
+    @Override
+    public void seekToFirst() throws LevelDBClosedException {
+        iterator.seekToFirst();
+    }
+
+    @Override
+    public void seekToLast() throws LevelDBClosedException {
+        iterator.seekToLast();
+    }
+
+    @Override
+    public void seek(byte[] key) throws LevelDBClosedException {
+        iterator.seek(key);
+    }
+
+    @Override
+    public void next() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+        iterator.next();
+    }
+
+    @Override
+    public void previous() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+        iterator.previous();
+    }
+
+    @Override
+    public byte[] key() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+        return iterator.key();
+    }
+
+    /**
+     * Get the value under the iterator, reading it from the value log if needed.
+     *
+     * @throws IllegalStateException if the value log cannot be read
+     */
+    @Override
+    public byte[] value() throws LevelDBClosedException {
+        byte[] stored = iterator.value();
+
+        try {
+            return valueLog.decode(stored);
+        } catch (LevelDBClosedException e) {
+            throw e;
+        } catch (LevelDBException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return iterator.isClosed();
+    }
+
+    @Override
+    public void close() {
+        if (!iterator.isClosed()) {
+            iterator.close();
+            valueLog.release();
+        }
+    }
+}
@@ -34,7 +34,11 @@ package com.github.hf.leveldb.implementation.mock;
  */
 
 import android.util.Log;
+import com.github.hf.leveldb.CacheStats;
+import com.github.hf.leveldb.DbEvent;
+import com.github.hf.leveldb.IOStats;
 import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.KeyRange;
 import com.github.hf.leveldb.LevelDB;
 import com.github.hf.leveldb.Snapshot;
 import com.github.hf.leveldb.WriteBatch;
@@ -43,6 +47,12 @@ import com.github.hf.leveldb.exception.LevelDBException;
 import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
 import com.github.hf.leveldb.util.Bytes;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -52,6 +62,9 @@ public class MockLevelDB extends LevelDB {
 
     protected final SortedMap<byte[], byte[]> map = new TreeMap<byte[], byte[]>(Bytes.COMPARATOR);
 
+    // Mock LevelDB has no background work, this only tracks the requested state.
+    private boolean backgroundWorkPaused;
+
     @Override
     public void close() {
         boolean multipleClose = false;
@@ -86,6 +99,115 @@ public class MockLevelDB extends LevelDB {
         map.put(key, value);
     }
 
+    @Override
+    public void put(byte[] key, byte[] value, long ttlMillis, boolean sync) throws LevelDBException {
+        throw new UnsupportedOperationException("Mock LevelDB does not support expiring entries.");
+    }
+
+    @Override
+    public synchronized boolean compareAndSet(byte[] key, byte[] expected, byte[] newValue, long ttlMillis, boolean sync) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (expected == null && newValue == null) {
+            throw new IllegalArgumentException("Expected and new value must not both be null.");
+        }
+
+        if (ttlMillis != 0) {
+            throw new UnsupportedOperationException("Mock LevelDB does not support expiring entries.");
+        }
+
+        checkIfClosed();
+
+        byte[] current = map.get(key);
+
+        if (expected == null ? current != null : current == null || !Arrays.equals(current, expected)) {
+            return false;
+        }
+
+        if (newValue == null) {
+            map.remove(key);
+        } else {
+            map.put(key, newValue);
+        }
+
+        return true;
+    }
+
+    @Override
+    protected synchronized boolean commit(Snapshot snapshot, List<byte[]> keys, WriteBatch writeBatch, boolean sync) throws LevelDBException {
+        if (!(snapshot instanceof MockSnapshot) || !((MockSnapshot) snapshot).checkOwnership(this)) {
+            throw new LevelDBSnapshotOwnershipException();
+        }
+
+        checkIfClosed();
+
+        SortedMap<byte[], byte[]> before = ((MockSnapshot) snapshot).getSnapshot();
+
+        for (byte[] key : keys) {
+            if (!Arrays.equals(before.get(key), map.get(key))) {
+                return false;
+            }
+        }
+
+        write(writeBatch, sync);
+
+        return true;
+    }
+
+    @Override
+    protected synchronized byte[] merge(String operator, byte[] key, byte[] operand, boolean sync, boolean returnValue) throws LevelDBException {
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator must not be null.");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (operand == null) {
+            throw new IllegalArgumentException("Operand must not be null.");
+        }
+
+        checkIfClosed();
+
+        byte[] existing = map.get(key);
+        byte[] merged;
+
+        if (MERGE_APPEND.equals(operator)) {
+            int length = existing == null ? 0 : existing.length;
+
+            merged = new byte[length + operand.length];
+
+            if (existing != null) {
+                System.arraycopy(existing, 0, merged, 0, length);
+            }
+
+            System.arraycopy(operand, 0, merged, length, operand.length);
+        } else if (MERGE_ADD.equals(operator) || MERGE_MAX.equals(operator)) {
+            if ((existing != null && existing.length != 8) || operand.length != 8) {
+                throw new LevelDBException("Value or operand can't be merged.");
+            }
+
+            long value = ByteBuffer.wrap(operand).getLong();
+
+            if (existing != null) {
+                long current = ByteBuffer.wrap(existing).getLong();
+
+                value = MERGE_ADD.equals(operator) ? current + value : Math.max(current, value);
+            }
+
+            merged = ByteBuffer.allocate(8).putLong(value).array();
+        } else {
+            throw new IllegalArgumentException("Unknown merge operator " + operator + ".");
+        }
+
+        map.put(key, merged);
+
+        return returnValue ? merged.clone() : null;
+    }
+
     @Override
     public synchronized void write(WriteBatch writeBatch, boolean sync) throws LevelDBException {
         if (writeBatch == null) {
@@ -130,6 +252,54 @@ public class MockLevelDB extends LevelDB {
         }
     }
 
+    @Override
+    public int get(byte[] key, int offset, int length, byte[] dest, int destOffset, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        if (dest == null) {
+            throw new IllegalArgumentException("Destination must not be null.");
+        }
+
+        if (offset < 0 || length < 0 || destOffset < 0 || destOffset > dest.length - length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length.");
+        }
+
+        byte[] value = get(key, snapshot);
+
+        if (value == null) {
+            return -1;
+        }
+
+        int read = Math.max(0, Math.min(length, value.length - offset));
+
+        System.arraycopy(value, Math.min(offset, value.length), dest, destOffset, read);
+
+        return read;
+    }
+
+    @Override
+    public int valueLength(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (snapshot != null) {
+            if (!(snapshot instanceof MockSnapshot)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            if (!((MockSnapshot) snapshot).checkOwnership(this)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+        }
+
+        synchronized (this) {
+            checkIfClosed();
+
+            byte[] value = snapshot != null ? ((MockSnapshot) snapshot).getSnapshot().get(key) : map.get(key);
+
+            return value == null ? -1 : value.length;
+        }
+    }
+
     @Override
     public synchronized void del(byte[] key, boolean sync) throws LevelDBException {
         if (key == null) {
@@ -141,11 +311,147 @@ public class MockLevelDB extends LevelDB {
         map.remove(key);
     }
 
+    @Override
+    public synchronized long deleteRange(byte[] begin, byte[] end) throws LevelDBException {
+        if (begin == null) {
+            throw new IllegalArgumentException("Begin must not be null.");
+        }
+
+        checkIfClosed();
+
+        List<byte[]> keys = new ArrayList<byte[]>((end == null ? map.tailMap(begin) : map.subMap(begin, end)).keySet());
+
+        for (byte[] key : keys) {
+            map.remove(key);
+        }
+
+        return keys.size();
+    }
+
+    @Override
+    public synchronized long flush() throws LevelDBException {
+        checkIfClosed();
+
+        return 0;
+    }
+
+    @Override
+    public synchronized void sync() throws LevelDBException {
+        checkIfClosed();
+    }
+
+    @Override
+    public synchronized long logSize() throws LevelDBClosedException {
+        checkIfClosed();
+
+        return 0;
+    }
+
+    @Override
+    public synchronized void warmUp(Collection<KeyRange> ranges) throws LevelDBClosedException {
+        if (ranges == null) {
+            throw new IllegalArgumentException("Ranges must not be null.");
+        }
+
+        checkIfClosed();
+    }
+
+    @Override
+    public synchronized long approximateSize(byte[] begin, byte[] end) throws LevelDBClosedException {
+        if (begin == null || end == null) {
+            throw new IllegalArgumentException("Begin and end must not be null.");
+        }
+
+        checkIfClosed();
+
+        long size = 0;
+
+        for (Map.Entry<byte[], byte[]> entry : map.subMap(begin, end).entrySet()) {
+            size += entry.getKey().length + entry.getValue().length;
+        }
+
+        return size;
+    }
+
+    @Override
+    public synchronized void compactRange(byte[] begin, byte[] end) throws LevelDBException {
+        checkIfClosed();
+
+        // Mock LevelDB has no storage to compact.
+    }
+
+    @Override
+    public void checkpoint(String targetPath) throws LevelDBException {
+        throw new UnsupportedOperationException("Mock LevelDB does not have files to checkpoint.");
+    }
+
+    @Override
+    public synchronized long collectValueLogGarbage() throws LevelDBException {
+        checkIfClosed();
+
+        // Mock LevelDB has no value log.
+        return 0;
+    }
+
+    @Override
+    public synchronized long sweepExpired() throws LevelDBException {
+        checkIfClosed();
+
+        // Mock LevelDB has no expiring entries.
+        return 0;
+    }
+
     @Override
     public byte[] getPropertyBytes(byte[] key) throws LevelDBClosedException {
         throw new UnsupportedOperationException("Mock LevelDB does not support properties.");
     }
 
+    @Override
+    public CacheStats getCacheStats() throws LevelDBClosedException {
+        throw new UnsupportedOperationException("Mock LevelDB does not have a cache.");
+    }
+
+    @Override
+    public IOStats getIOStats() throws LevelDBClosedException {
+        throw new UnsupportedOperationException("Mock LevelDB does not perform I/O.");
+    }
+
+    @Override
+    public synchronized void pauseBackgroundWork() throws LevelDBClosedException {
+        checkIfClosed();
+
+        backgroundWorkPaused = true;
+    }
+
+    @Override
+    public synchronized void resumeBackgroundWork() throws LevelDBClosedException {
+        checkIfClosed();
+
+        backgroundWorkPaused = false;
+    }
+
+    @Override
+    public synchronized boolean isBackgroundWorkPaused() throws LevelDBClosedException {
+        checkIfClosed();
+
+        return backgroundWorkPaused;
+    }
+
+    @Override
+    public void addEventListener(DbEvent.Listener listener) throws LevelDBClosedException {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null.");
+        }
+
+        checkIfClosed();
+
+        // Mock LevelDB has no background work, so there are never any events.
+    }
+
+    @Override
+    public void removeEventListener(DbEvent.Listener listener) {
+    }
+
     @Override
     public Iterator iterator(boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
         if (snapshot != null) {
@@ -166,6 +472,45 @@ public class MockLevelDB extends LevelDB {
         }
     }
 
+    @Override
+    public Iterator prefixIterator(byte[] prefix, boolean fillCache, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix must not be null.");
+        }
+
+        SortedMap<byte[], byte[]> source;
+
+        if (snapshot != null) {
+            if (!(snapshot instanceof MockSnapshot)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            if (!((MockSnapshot) snapshot).checkOwnership(this)) {
+                throw new LevelDBSnapshotOwnershipException();
+            }
+
+            source = ((MockSnapshot) snapshot).getSnapshot();
+        } else {
+            source = map;
+        }
+
+        SortedMap<byte[], byte[]> stripped = new TreeMap<byte[], byte[]>(Bytes.COMPARATOR);
+
+        synchronized (this) {
+            for (Map.Entry<byte[], byte[]> entry : source.tailMap(prefix).entrySet()) {
+                byte[] key = entry.getKey();
+
+                if (key.length < prefix.length || !Arrays.equals(prefix, Arrays.copyOf(key, prefix.length))) {
+                    break;
+                }
+
+                stripped.put(Arrays.copyOfRange(key, prefix.length, key.length), entry.getValue());
+            }
+        }
+
+        return new MockIterator(stripped);
+    }
+
     @Override
     public synchronized Iterator iterator(boolean fillCache) throws LevelDBClosedException {
         return new MockIterator(map);
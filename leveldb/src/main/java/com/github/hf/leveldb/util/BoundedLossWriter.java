@@ -0,0 +1,370 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import android.util.Log;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.WriteBatch;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.io.Closeable;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes asynchronously, and makes the writes durable with one synchronous write every so many
+ * milliseconds or bytes, whichever comes first. This bounds what an OS crash or power loss can
+ * lose, at close to the throughput of asynchronous writes.
+ *
+ * Every write returns a ticket. Tickets grow with every write, and all successful writes up to
+ * {@link #durableUpTo()} have been synced to disk. Use {@link #awaitDurable(long, long)} to wait
+ * for a particular write.
+ *
+ * Syncing goes through {@link LevelDB#sync()}, which also waits for a memtable flush when writes
+ * may still be in a log that LevelDB has switched away from.
+ */
+public class BoundedLossWriter implements Closeable {
+
+    private final LevelDB levelDB;
+    private final long syncIntervalMillis;
+    private final long syncBytes;
+
+    private final Thread syncThread;
+
+    // All guarded by this.
+    private long issued;
+    private final TreeSet<Long> inFlight = new TreeSet<Long>();
+    private final TreeSet<Long> failed = new TreeSet<Long>();
+    private long durable;
+    private long unsyncedBytes;
+    private boolean syncRequested;
+    private boolean closed;
+
+    /**
+     * Creates a new writer and starts its sync thread.
+     *
+     * @param levelDB            the database, non-null
+     * @param syncIntervalMillis maximum time between syncs while there are unsynced writes, must be positive
+     * @param syncBytes          number of unsynced key and value bytes that triggers a sync, must be positive
+     */
+    public BoundedLossWriter(LevelDB levelDB, long syncIntervalMillis, long syncBytes) {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (syncIntervalMillis < 1) {
+            throw new IllegalArgumentException("Sync interval must be positive.");
+        }
+
+        if (syncBytes < 1) {
+            throw new IllegalArgumentException("Sync bytes must be positive.");
+        }
+
+        this.levelDB = levelDB;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.syncBytes = syncBytes;
+
+        syncThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                syncLoop();
+            }
+        }, "LevelDB-BoundedLossSync");
+
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    public LevelDB levelDB() {
+        return levelDB;
+    }
+
+    /**
+     * Asynchronously puts a key-value pair.
+     *
+     * @return the ticket of this write
+     * @throws LevelDBException
+     */
+    public long put(byte[] key, byte[] value) throws LevelDBException {
+        long ticket = begin();
+        boolean written = false;
+
+        try {
+            levelDB.put(key, value, false);
+            written = true;
+        } finally {
+            end(ticket, size(key) + size(value), written);
+        }
+
+        return ticket;
+    }
+
+    /**
+     * Asynchronously deletes a key.
+     *
+     * @return the ticket of this write
+     * @throws LevelDBException
+     */
+    public long del(byte[] key) throws LevelDBException {
+        long ticket = begin();
+        boolean written = false;
+
+        try {
+            levelDB.del(key, false);
+            written = true;
+        } finally {
+            end(ticket, size(key), written);
+        }
+
+        return ticket;
+    }
+
+    /**
+     * Asynchronously writes a batch.
+     *
+     * @return the ticket of this write
+     * @throws LevelDBException
+     */
+    public long write(WriteBatch writeBatch) throws LevelDBException {
+        if (writeBatch == null) {
+            throw new IllegalArgumentException("Write batch must not be null.");
+        }
+
+        long ticket = begin();
+        long bytes = 0;
+        boolean written = false;
+
+        try {
+            levelDB.write(writeBatch, false);
+            written = true;
+
+            for (WriteBatch.Operation operation : writeBatch.getAllOperations()) {
+                bytes += size(operation.key()) + size(operation.value());
+            }
+        } finally {
+            end(ticket, bytes, written);
+        }
+
+        return ticket;
+    }
+
+    /**
+     * @return the highest ticket for which it and all lower tickets of successful writes have been
+     * synced, 0 if none
+     */
+    public synchronized long durableUpTo() {
+        return durable;
+    }
+
+    /**
+     * @return the ticket of the most recent write, 0 if none
+     */
+    public synchronized long lastTicket() {
+        return issued;
+    }
+
+    /**
+     * Waits until a write has been synced. Waiting does not speed up syncing, use
+     * {@link #sync()} for that.
+     *
+     * @param ticket        the ticket returned by a write
+     * @param timeoutMillis maximum time to wait, 0 to wait indefinitely
+     * @return whether the write is durable
+     * @throws LevelDBException if the write with the ticket failed
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitDurable(long ticket, long timeoutMillis) throws LevelDBException, InterruptedException {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative.");
+        }
+
+        if (failed.contains(ticket)) {
+            throw new LevelDBException("Write " + ticket + " failed, it will never be durable.");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (durable < ticket) {
+            if (timeoutMillis == 0) {
+                wait();
+            } else {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Syncs all completed writes right away, on the calling thread.
+     *
+     * @return the new {@link #durableUpTo()}
+     * @throws LevelDBException
+     */
+    public long sync() throws LevelDBException {
+        long watermark;
+
+        synchronized (this) {
+            watermark = inFlight.isEmpty() ? issued : inFlight.first() - 1;
+
+            if (watermark <= durable) {
+                return durable;
+            }
+
+            unsyncedBytes = 0;
+        }
+
+        levelDB.sync();
+
+        synchronized (this) {
+            if (watermark > durable) {
+                durable = watermark;
+                notifyAll();
+            }
+
+            return durable;
+        }
+    }
+
+    /**
+     * Stops the sync thread and syncs all completed writes. Does not close the database.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            notifyAll();
+        }
+
+        boolean interrupted = false;
+
+        while (syncThread.isAlive()) {
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            sync();
+        } catch (LevelDBClosedException e) {
+            Log.i(BoundedLossWriter.class.getName(), "Database closed before the final sync.");
+        } catch (LevelDBException e) {
+            Log.w(BoundedLossWriter.class.getName(), "Final sync failed.", e);
+        }
+    }
+
+    private synchronized long begin() throws LevelDBClosedException {
+        if (closed) {
+            throw new LevelDBClosedException("Bounded loss writer has been closed.");
+        }
+
+        long ticket = ++issued;
+
+        inFlight.add(ticket);
+
+        return ticket;
+    }
+
+    private synchronized void end(long ticket, long bytes, boolean written) {
+        inFlight.remove(ticket);
+
+        // Never made durable, even once the watermark passes it.
+        if (!written) {
+            failed.add(ticket);
+
+            return;
+        }
+
+        unsyncedBytes += bytes;
+
+        if (unsyncedBytes >= syncBytes && !syncRequested) {
+            syncRequested = true;
+            notifyAll();
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+                long remaining;
+
+                while (!closed && !syncRequested && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                syncRequested = false;
+            }
+
+            try {
+                sync();
+            } catch (LevelDBClosedException e) {
+                return;
+            } catch (LevelDBException e) {
+                Log.w(BoundedLossWriter.class.getName(), "Periodic sync failed, retrying next period.", e);
+            } catch (RuntimeException e) {
+                Log.w(BoundedLossWriter.class.getName(), "Periodic sync failed, retrying next period.", e);
+            }
+        }
+    }
+
+    private static long size(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
@@ -0,0 +1,483 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import android.util.Log;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBIOException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Loads large amounts of key-value pairs in any order, by sorting them externally and writing them
+ * in key order.
+ *
+ * Pairs are buffered up to a memory limit, then sorted and spilled to a run file. {@link #finish(boolean)}
+ * merges the runs and writes the pairs in large asynchronous batches, followed by a flush, so that
+ * LevelDB mostly appends to its tables instead of repeatedly compacting overlapping level-0 files.
+ * If a key is put more than once, the last value wins.
+ *
+ * A loader is not thread-safe. Always close it, which deletes its run files.
+ */
+public class BulkLoader implements Closeable {
+
+    // Rough per-pair overhead of buffering: the pair, two arrays and a list slot.
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final int DEFAULT_BATCH_BYTES = 4 * 1024 * 1024;
+
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    private final LevelDB levelDB;
+    private final File directory;
+    private final long memoryLimit;
+    private final int batchBytes;
+
+    private ArrayList<Entry> buffer = new ArrayList<Entry>();
+    private long buffered;
+
+    private final List<File> runs = new ArrayList<File>();
+
+    private long count;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Creates a new loader, writing in batches of 4MB.
+     *
+     * @param levelDB     the database, non-null
+     * @param directory   directory for the run files, non-null
+     * @param memoryLimit approximate number of bytes to buffer before spilling a run, must be positive
+     */
+    public BulkLoader(LevelDB levelDB, File directory, long memoryLimit) {
+        this(levelDB, directory, memoryLimit, DEFAULT_BATCH_BYTES);
+    }
+
+    /**
+     * Creates a new loader.
+     *
+     * @param levelDB     the database, non-null
+     * @param directory   directory for the run files, non-null
+     * @param memoryLimit approximate number of bytes to buffer before spilling a run, must be positive
+     * @param batchBytes  number of key and value bytes per write batch, must be positive
+     */
+    public BulkLoader(LevelDB levelDB, File directory, long memoryLimit, int batchBytes) {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory must not be null.");
+        }
+
+        if (memoryLimit < 1) {
+            throw new IllegalArgumentException("Memory limit must be positive.");
+        }
+
+        if (batchBytes < 1) {
+            throw new IllegalArgumentException("Batch bytes must be positive.");
+        }
+
+        this.levelDB = levelDB;
+        this.directory = directory;
+        this.memoryLimit = memoryLimit;
+        this.batchBytes = batchBytes;
+    }
+
+    /**
+     * Adds a key-value pair to load. Spills a sorted run when over the memory limit.
+     *
+     * The arrays are kept until spilled or written, so they must not be modified after this.
+     *
+     * @param key   the key, non-null
+     * @param value the value, non-null
+     * @throws LevelDBIOException if a run can not be spilled
+     */
+    public void put(byte[] key, byte[] value) throws LevelDBIOException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+
+        checkIfOpen();
+
+        buffer.add(new Entry(key, value));
+        buffered += key.length + value.length + ENTRY_OVERHEAD;
+        count++;
+
+        if (buffered >= memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the number of pairs put so far, including duplicate keys
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the number of runs spilled to disk so far
+     */
+    public int runCount() {
+        return runs.size();
+    }
+
+    /**
+     * Writes all pairs put so far to the database in key order, makes them durable, and deletes the
+     * run files. The loader can not be used after this.
+     *
+     * @param compact whether to compact the loaded key range afterwards, which takes a while but
+     *                leaves the database fully compacted for reads
+     * @return the number of distinct keys written
+     * @throws LevelDBException
+     */
+    public long finish(boolean compact) throws LevelDBException {
+        checkIfOpen();
+
+        finished = true;
+
+        sort(buffer);
+
+        List<Run> sources = new ArrayList<Run>();
+
+        try {
+            for (File file : runs) {
+                sources.add(new FileRun(file, sources.size()));
+            }
+
+            // The buffer is the newest run.
+            sources.add(new BufferRun(buffer, sources.size()));
+
+            buffer = null;
+
+            return merge(sources, compact);
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to read run: " + e.getMessage());
+        } finally {
+            for (Run source : sources) {
+                source.close();
+            }
+
+            close();
+        }
+    }
+
+    /**
+     * Deletes the run files. Pairs not yet written are discarded.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        buffer = null;
+
+        for (File run : runs) {
+            if (!run.delete()) {
+                Log.w(BulkLoader.class.getName(), "Unable to delete run " + run);
+            }
+        }
+
+        runs.clear();
+    }
+
+    private long merge(List<Run> sources, boolean compact) throws IOException, LevelDBException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, sources.size()), new Comparator<Run>() {
+            @Override
+            public int compare(Run a, Run b) {
+                int compare = Bytes.bytewiseCompare(a.key, b.key);
+
+                if (compare != 0) {
+                    return compare;
+                }
+
+                // Newer runs first, so that their values win.
+                return b.index - a.index;
+            }
+        });
+
+        for (Run source : sources) {
+            if (source.advance()) {
+                queue.add(source);
+            }
+        }
+
+        byte[] first = null;
+        byte[] last = null;
+        long written = 0;
+
+        SimpleWriteBatch batch = new SimpleWriteBatch();
+        long batched = 0;
+
+        while (!queue.isEmpty()) {
+            Run run = queue.poll();
+
+            byte[] key = run.key;
+            byte[] value = run.value;
+
+            if (run.advance()) {
+                queue.add(run);
+            }
+
+            // Older values of the same key.
+            while (!queue.isEmpty() && Bytes.bytewiseCompare(queue.peek().key, key) == 0) {
+                Run older = queue.poll();
+
+                if (older.advance()) {
+                    queue.add(older);
+                }
+            }
+
+            if (first == null) {
+                first = key;
+            }
+
+            last = key;
+
+            batch.put(key, value);
+            batched += key.length + value.length;
+            written++;
+
+            if (batched >= batchBytes) {
+                levelDB.write(batch, false);
+
+                batch = new SimpleWriteBatch();
+                batched = 0;
+            }
+        }
+
+        levelDB.write(batch, false);
+
+        // A synchronous write would only sync the current log, while a load this large has
+        // switched logs along the way. Flushing writes everything to synced table files.
+        levelDB.flush();
+
+        if (compact && first != null) {
+            levelDB.compactRange(first, last);
+        }
+
+        return written;
+    }
+
+    private void spill() throws LevelDBIOException {
+        sort(buffer);
+
+        File file = new File(directory, String.format("bulk-%08x-%d.run", System.identityHashCode(this), runs.size()));
+
+        // Recorded first, so that close() deletes partial runs.
+        runs.add(file);
+
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), RUN_BUFFER_SIZE));
+
+            for (Entry entry : buffer) {
+                out.writeInt(entry.key.length);
+                out.write(entry.key);
+                out.writeInt(entry.value.length);
+                out.write(entry.value);
+            }
+
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new LevelDBIOException("Unable to spill run " + file + ": " + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.w(BulkLoader.class.getName(), "Unable to close run " + file, e);
+                }
+            }
+        }
+
+        buffer = new ArrayList<Entry>();
+        buffered = 0;
+    }
+
+    /**
+     * Sorts by key and drops all but the last value of each key.
+     */
+    private static void sort(ArrayList<Entry> entries) {
+        // A stable sort, which keeps values of the same key in insertion order.
+        Collections.sort(entries, Entry.COMPARATOR);
+
+        int size = 0;
+
+        for (int i = 0; i < entries.size(); i++) {
+            if (size > 0 && Bytes.bytewiseCompare(entries.get(size - 1).key, entries.get(i).key) == 0) {
+                entries.set(size - 1, entries.get(i));
+            } else {
+                entries.set(size++, entries.get(i));
+            }
+        }
+
+        entries.subList(size, entries.size()).clear();
+    }
+
+    private void checkIfOpen() {
+        if (closed || finished) {
+            throw new IllegalStateException("Bulk loader has been finished or closed.");
+        }
+    }
+
+    private static final class Entry {
+        static final Comparator<Entry> COMPARATOR = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Bytes.bytewiseCompare(a.key, b.key);
+            }
+        };
+
+        final byte[] key;
+        final byte[] value;
+
+        Entry(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A sorted run, positioned on its current pair.
+     */
+    private abstract static class Run implements Closeable {
+        final int index;
+
+        byte[] key;
+        byte[] value;
+
+        Run(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Moves to the next pair.
+         *
+         * @return false if there are no more pairs
+         */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class BufferRun extends Run {
+        private final List<Entry> entries;
+        private int position;
+
+        BufferRun(List<Entry> entries, int index) {
+            super(index);
+
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (position == entries.size()) {
+                return false;
+            }
+
+            Entry entry = entries.get(position++);
+
+            key = entry.key;
+            value = entry.value;
+
+            return true;
+        }
+    }
+
+    private static final class FileRun extends Run {
+        private final DataInputStream in;
+
+        FileRun(File file, int index) throws IOException {
+            super(index);
+
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), RUN_BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            int keyLength;
+
+            try {
+                keyLength = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            key = new byte[keyLength];
+            in.readFully(key);
+
+            value = new byte[in.readInt()];
+            in.readFully(value);
+
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.w(BulkLoader.class.getName(), "Unable to close run.", e);
+            }
+        }
+    }
+}
@@ -55,6 +55,19 @@ public final class Bytes {
         }
     };
 
+    /**
+     * Utility {@link java.util.Comparator} for bytewise comparisons of byte arrays, the order in
+     * which LevelDB stores keys.
+     *
+     * @see #bytewiseCompare(byte[], byte[])
+     */
+    public static final Comparator<byte[]> BYTEWISE_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            return bytewiseCompare(a, b);
+        }
+    };
+
     /**
      * Lexicographically compares two byte arrays, the way the default comparator in a
      * {@link com.github.hf.leveldb.implementation.NativeLevelDB} instance works.
@@ -106,4 +119,27 @@ public final class Bytes {
 
         return 0;
     }
+
+    /**
+     * Compares two byte arrays as unsigned bytes, with a shorter array before a longer one that it
+     * is a prefix of, exactly like <tt>leveldb::BytewiseComparator()</tt>. Unlike
+     * {@link #lexicographicCompare(byte[], byte[])}, trailing zero bytes are significant.
+     *
+     * @param a non-null byte array
+     * @param b non-null byte array
+     * @return greater than 0 if a > b, less than 0 if a < b, or 0 if a = b
+     */
+    public static int bytewiseCompare(byte[] a, byte[] b) {
+        final int length = Math.min(a.length, b.length);
+
+        for (int i = 0; i < length; i++) {
+            int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return a.length - b.length;
+    }
 }
@@ -0,0 +1,232 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.exception.LevelDBCorruptionException;
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a value written by {@link ChunkedValueOutputStream}, one chunk at a time, from a snapshot
+ * taken when the stream was opened. Closing the stream releases the snapshot.
+ */
+public class ChunkedValueInputStream extends InputStream {
+
+    private final LevelDB levelDB;
+    private final byte[] key;
+    private final Snapshot snapshot;
+    private final ChunkedValues.Header header;
+
+    // Reused for every chunk, filled through a partial get.
+    private final byte[] chunk;
+    private int chunkLength;
+    private int chunkPosition;
+    private int nextChunk;
+
+    private long position;
+    private boolean closed;
+
+    private ChunkedValueInputStream(LevelDB levelDB, byte[] key, Snapshot snapshot, ChunkedValues.Header header) {
+        this.levelDB = levelDB;
+        this.key = key.clone();
+        this.snapshot = snapshot;
+        this.header = header;
+        this.chunk = new byte[(int) Math.min(header.chunkSize, Math.max(header.length, 1))];
+    }
+
+    static ChunkedValueInputStream open(LevelDB levelDB, byte[] key) throws LevelDBException {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        Snapshot snapshot = levelDB.obtainSnapshot();
+
+        try {
+            ChunkedValues.Header header = ChunkedValues.readHeader(levelDB, key, snapshot);
+
+            if (header != null) {
+                ChunkedValueInputStream stream = new ChunkedValueInputStream(levelDB, key, snapshot, header);
+
+                snapshot = null;
+
+                return stream;
+            }
+
+            return null;
+        } finally {
+            if (snapshot != null) {
+                levelDB.releaseSnapshot(snapshot);
+            }
+        }
+    }
+
+    /**
+     * @return the length of the whole value
+     */
+    public long length() {
+        return header.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        position++;
+
+        return chunk[chunkPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        int count = Math.min(len, chunkLength - chunkPosition);
+
+        System.arraycopy(chunk, chunkPosition, b, off, count);
+
+        chunkPosition += count;
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed.");
+        }
+
+        if (n <= 0) {
+            return 0;
+        }
+
+        long target = Math.min(header.length, position + n);
+        long skipped = target - position;
+
+        long chunkStart = position - chunkPosition;
+
+        if (target < chunkStart + chunkLength) {
+            chunkPosition = (int) (target - chunkStart);
+        } else {
+            // Chunks before the target are never read.
+            nextChunk = (int) (target / header.chunkSize);
+            chunkLength = 0;
+            chunkPosition = 0;
+
+            int offsetInChunk = (int) (target % header.chunkSize);
+
+            if (offsetInChunk > 0) {
+                fill();
+                chunkPosition = offsetInChunk;
+            }
+        }
+
+        position = target;
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return chunkLength - chunkPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            if (!levelDB.isClosed()) {
+                levelDB.releaseSnapshot(snapshot);
+            }
+        } catch (LevelDBException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return false at the end of the value
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed.");
+        }
+
+        if (chunkPosition < chunkLength) {
+            return true;
+        }
+
+        if (position >= header.length) {
+            return false;
+        }
+
+        int expected = (int) Math.min(header.chunkSize, header.length - (long) nextChunk * header.chunkSize);
+
+        try {
+            int read = levelDB.get(ChunkedValues.chunkKey(key, header.generation, nextChunk), 0, expected, chunk, 0, snapshot);
+
+            if (read != expected) {
+                throw new LevelDBCorruptionException("Chunk " + nextChunk + " is missing or too short.");
+            }
+        } catch (LevelDBException e) {
+            throw new IOException(e);
+        }
+
+        nextChunk++;
+        chunkLength = expected;
+        chunkPosition = 0;
+
+        return true;
+    }
+}
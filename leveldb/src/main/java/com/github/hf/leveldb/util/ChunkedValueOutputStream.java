@@ -0,0 +1,224 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a value in chunks, see {@link ChunkedValues}. Each full chunk is put into the database as
+ * soon as it is written; closing the stream writes the last chunk and switches the key over to the
+ * new value atomically, deleting the chunks of the previous value and any other stale chunks of
+ * the key.
+ *
+ * Call {@link #abort()} instead of {@link #close()} to drop the value, and its chunks.
+ */
+public class ChunkedValueOutputStream extends OutputStream {
+
+    private final LevelDB levelDB;
+    private final byte[] key;
+    private final boolean sync;
+    private final long generation;
+
+    private final byte[] chunk;
+    private int chunkLength;
+    private int chunkIndex;
+    private long length;
+
+    private boolean closed;
+
+    /**
+     * @param levelDB   the database, non-null
+     * @param key       the key, non-null
+     * @param chunkSize the size of chunks, must be positive
+     * @param sync      whether the final write is synchronous; chunks are always written
+     *                  asynchronously, as the header is what makes them visible
+     */
+    public ChunkedValueOutputStream(LevelDB levelDB, byte[] key, int chunkSize, boolean sync) {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+
+        this.levelDB = levelDB;
+        this.key = key.clone();
+        this.sync = sync;
+        this.generation = ChunkedValues.newGeneration();
+        this.chunk = new byte[chunkSize];
+
+        ChunkedValues.startWriting(this.key, generation);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkIfClosed();
+
+        chunk[chunkLength++] = (byte) b;
+        length++;
+
+        if (chunkLength == chunk.length) {
+            putChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkIfClosed();
+
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            int count = Math.min(len, chunk.length - chunkLength);
+
+            System.arraycopy(b, off, chunk, chunkLength, count);
+
+            chunkLength += count;
+            length += count;
+            off += count;
+            len -= count;
+
+            if (chunkLength == chunk.length) {
+                putChunk();
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining data and makes the value visible under the key.
+     *
+     * @throws IOException wrapping a {@link LevelDBException}
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            // Keeps another writer of the key from switching at the same time, and deleting the
+            // chunks of this value after it was switched over.
+            synchronized (ChunkedValues.lockFor(key)) {
+                SimpleWriteBatch writeBatch = new SimpleWriteBatch();
+
+                if (chunkLength > 0) {
+                    writeBatch.put(ChunkedValues.chunkKey(key, generation, chunkIndex), copyOfChunk());
+                }
+
+                writeBatch.put(key, new ChunkedValues.Header(generation, length, chunk.length).encode());
+
+                ChunkedValues.deleteStaleChunks(levelDB, writeBatch, key, generation);
+
+                levelDB.write(writeBatch, sync);
+            }
+        } catch (LevelDBException e) {
+            throw new IOException(e);
+        } finally {
+            ChunkedValues.stopWriting(key, generation);
+        }
+    }
+
+    /**
+     * Deletes the chunks written so far and leaves the previous value in place.
+     *
+     * @throws IOException wrapping a {@link LevelDBException}
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        SimpleWriteBatch writeBatch = new SimpleWriteBatch();
+
+        for (int i = 0; i < chunkIndex; i++) {
+            writeBatch.del(ChunkedValues.chunkKey(key, generation, i));
+        }
+
+        try {
+            levelDB.write(writeBatch, false);
+        } catch (LevelDBException e) {
+            throw new IOException(e);
+        } finally {
+            ChunkedValues.stopWriting(key, generation);
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long length() {
+        return length;
+    }
+
+    private void putChunk() throws IOException {
+        try {
+            // Not every implementation copies the value, and the chunk buffer is reused.
+            levelDB.put(ChunkedValues.chunkKey(key, generation, chunkIndex), copyOfChunk(), false);
+        } catch (LevelDBException e) {
+            throw new IOException(e);
+        }
+
+        chunkIndex++;
+        chunkLength = 0;
+    }
+
+    private byte[] copyOfChunk() {
+        byte[] copy = new byte[chunkLength];
+
+        System.arraycopy(chunk, 0, copy, 0, chunkLength);
+
+        return copy;
+    }
+
+    private void checkIfClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed.");
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.exception.LevelDBCorruptionException;
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Stores large values in fixed-size chunks, so that they can be written and read as streams
+ * without ever holding the whole value in memory.
+ *
+ * The value's key holds a small header. Chunks are stored under
+ * <tt>key + 0x00 + generation + index</tt>, with the 8-byte generation and the 4-byte index in
+ * big-endian order, so keep other keys that start with <tt>key + 0x00</tt> out of the database.
+ * Every write of a value uses a new generation and only switches the header over once all chunks
+ * are written, so readers never see a partially written value.
+ *
+ * Switching the header over, and deleting a value, removes every chunk under <tt>key + 0x00</tt>
+ * except those of the new value and of values still being written in this process. Chunks left
+ * behind by a writer that lost a race for the key, or that died before closing, go with the next
+ * switch. Switches and deletes of the same key are serialized within the process.
+ *
+ * @see ChunkedValueOutputStream
+ * @see ChunkedValueInputStream
+ */
+public final class ChunkedValues {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final byte VERSION = 1;
+
+    // Version, generation, length, chunk size.
+    static final int HEADER_SIZE = 1 + 8 + 8 + 4;
+
+    private static final Random GENERATIONS = new Random();
+
+    private static final int KEY_LOCKS = 64;
+
+    // Picked by the hash of the key.
+    private static final Object[] LOCKS = new Object[KEY_LOCKS];
+
+    static {
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    // Guarded by itself. Generations of the values being written, by key.
+    private static final Map<ByteBuffer, List<Long>> WRITING = new HashMap<ByteBuffer, List<Long>>();
+
+    /**
+     * Parsed value header.
+     */
+    static final class Header {
+        final long generation;
+        final long length;
+        final int chunkSize;
+
+        Header(long generation, long length, int chunkSize) {
+            this.generation = generation;
+            this.length = length;
+            this.chunkSize = chunkSize;
+        }
+
+        int chunkCount() {
+            return (int) ((length + chunkSize - 1) / chunkSize);
+        }
+
+        byte[] encode() {
+            return ByteBuffer.allocate(HEADER_SIZE)
+                    .put(VERSION)
+                    .putLong(generation)
+                    .putLong(length)
+                    .putInt(chunkSize)
+                    .array();
+        }
+
+        static Header decode(byte[] header) throws LevelDBCorruptionException {
+            if (header.length != HEADER_SIZE || header[0] != VERSION) {
+                throw new LevelDBCorruptionException("Not a chunked value header.");
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(header, 1, HEADER_SIZE - 1);
+
+            long generation = buffer.getLong();
+            long length = buffer.getLong();
+            int chunkSize = buffer.getInt();
+
+            if (length < 0 || chunkSize < 1) {
+                throw new LevelDBCorruptionException("Invalid chunked value header.");
+            }
+
+            return new Header(generation, length, chunkSize);
+        }
+    }
+
+    private ChunkedValues() {
+    }
+
+    /**
+     * Opens a stream that replaces the value of the key once closed.
+     *
+     * @param levelDB the database, non-null
+     * @param key     the key, non-null
+     * @return a new stream
+     */
+    public static ChunkedValueOutputStream openOutputStream(LevelDB levelDB, byte[] key) {
+        return new ChunkedValueOutputStream(levelDB, key, DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * Opens a stream over the value of the key, as it is now.
+     *
+     * @param levelDB the database, non-null
+     * @param key     the key, non-null
+     * @return a new stream, or null if there is no value
+     * @throws LevelDBException
+     */
+    public static ChunkedValueInputStream openInputStream(LevelDB levelDB, byte[] key) throws LevelDBException {
+        return ChunkedValueInputStream.open(levelDB, key);
+    }
+
+    /**
+     * @param levelDB the database, non-null
+     * @param key     the key, non-null
+     * @return the length of the value, or -1 if there is none
+     * @throws LevelDBException
+     */
+    public static long length(LevelDB levelDB, byte[] key) throws LevelDBException {
+        Header header = readHeader(levelDB, key, null);
+
+        return header == null ? -1 : header.length;
+    }
+
+    /**
+     * Deletes the value and all its chunks.
+     *
+     * @param levelDB the database, non-null
+     * @param key     the key, non-null
+     * @param sync    whether the delete is synchronous
+     * @throws LevelDBException
+     */
+    public static void delete(LevelDB levelDB, byte[] key, boolean sync) throws LevelDBException {
+        // Checks the arguments, and that the key holds a chunked value if any.
+        readHeader(levelDB, key, null);
+
+        synchronized (lockFor(key)) {
+            SimpleWriteBatch writeBatch = new SimpleWriteBatch();
+
+            writeBatch.del(key);
+            deleteStaleChunks(levelDB, writeBatch, key, null);
+
+            levelDB.write(writeBatch, sync);
+        }
+    }
+
+    static Header readHeader(LevelDB levelDB, byte[] key, Snapshot snapshot) throws LevelDBException {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        byte[] header = levelDB.get(key, snapshot);
+
+        return header == null ? null : Header.decode(header);
+    }
+
+    /**
+     * @return the lock to hold while switching or deleting the value of the key
+     */
+    static Object lockFor(byte[] key) {
+        return LOCKS[(Arrays.hashCode(key) & Integer.MAX_VALUE) % KEY_LOCKS];
+    }
+
+    static void startWriting(byte[] key, long generation) {
+        synchronized (WRITING) {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+
+            List<Long> generations = WRITING.get(buffer);
+
+            if (generations == null) {
+                generations = new ArrayList<Long>();
+                WRITING.put(buffer, generations);
+            }
+
+            generations.add(Long.valueOf(generation));
+        }
+    }
+
+    static void stopWriting(byte[] key, long generation) {
+        synchronized (WRITING) {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+
+            List<Long> generations = WRITING.get(buffer);
+
+            if (generations != null) {
+                generations.remove(Long.valueOf(generation));
+
+                if (generations.isEmpty()) {
+                    WRITING.remove(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds deletes for all chunks of the key to the batch, except those of the generation to keep
+     * and of values still being written. Call holding {@link #lockFor(byte[])}.
+     *
+     * @param keep the generation to keep, or null
+     */
+    static void deleteStaleChunks(LevelDB levelDB, SimpleWriteBatch writeBatch, byte[] key, Long keep) throws LevelDBException {
+        byte[] prefix = Arrays.copyOf(key, key.length + 1);
+
+        Iterator iterator = levelDB.iterator(false);
+
+        try {
+            // Read after the iterator is created, so that every generation visible to it is either
+            // still being written or done.
+            Set<Long> kept = new HashSet<Long>();
+
+            synchronized (WRITING) {
+                List<Long> generations = WRITING.get(ByteBuffer.wrap(key));
+
+                if (generations != null) {
+                    kept.addAll(generations);
+                }
+            }
+
+            if (keep != null) {
+                kept.add(keep);
+            }
+
+            iterator.seek(prefix);
+
+            while (iterator.isValid()) {
+                byte[] chunkKey = iterator.key();
+
+                if (!startsWith(chunkKey, prefix)) {
+                    break;
+                }
+
+                if (chunkKey.length != prefix.length + 8 + 4) {
+                    iterator.next();
+                    continue;
+                }
+
+                long generation = ByteBuffer.wrap(chunkKey, prefix.length, 8).getLong();
+
+                if (!kept.contains(generation)) {
+                    writeBatch.del(chunkKey);
+                    iterator.next();
+                } else if (generation == -1) {
+                    // Last generation in key order.
+                    break;
+                } else {
+                    // Skip the chunks of the generation.
+                    iterator.seek(ByteBuffer.allocate(prefix.length + 8).put(prefix).putLong(generation + 1).array());
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static long newGeneration() {
+        return GENERATIONS.nextLong();
+    }
+
+    static byte[] chunkKey(byte[] key, long generation, int index) {
+        return ByteBuffer.allocate(key.length + 1 + 8 + 4)
+                .put(key)
+                .put((byte) 0)
+                .putLong(generation)
+                .putInt(index)
+                .array();
+    }
+}
@@ -0,0 +1,510 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.exception.LevelDBCorruptionException;
+import com.github.hf.leveldb.exception.LevelDBException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Exports the contents of a database to a stream, and imports them into another database.
+ *
+ * The format starts with the magic bytes <tt>LDBX</tt> and a version byte, followed by blocks of
+ * records in key order. Each block is deflated and stored as its uncompressed length, compressed
+ * length, CRC32 of the compressed bytes and the compressed bytes, all lengths as big-endian ints.
+ * A record is a varint key length, the key, a varint value length and the value. An empty block
+ * ends the stream, followed by the number of records as a big-endian long.
+ *
+ * Blocks are compressed and decompressed on a pool of threads, while the calling thread iterates
+ * over or writes to the database.
+ */
+public final class DatabaseDump {
+    private static final byte[] MAGIC = { 'L', 'D', 'B', 'X' };
+    private static final int VERSION = 1;
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    // Larger blocks than this can only come from a corrupt stream.
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private static final int IMPORT_BATCH_BYTES = 4 * 1024 * 1024;
+
+    private DatabaseDump() {
+        // No instances.
+    }
+
+    /**
+     * Exports using as many compression threads as there are processors.
+     *
+     * @see #export(com.github.hf.leveldb.LevelDB, com.github.hf.leveldb.Snapshot, java.io.OutputStream, int)
+     */
+    public static long export(LevelDB levelDB, Snapshot snapshot, OutputStream out) throws LevelDBException, IOException {
+        return export(levelDB, snapshot, out, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Writes all pairs of the database, as of the snapshot, to the stream. The stream is not closed.
+     *
+     * @param levelDB the database, non-null
+     * @param snapshot the snapshot to export, or null for a snapshot taken just for the export
+     * @param out the stream, non-null
+     * @param threads number of compression threads, must be positive
+     * @return the number of pairs exported
+     * @throws LevelDBException
+     * @throws IOException
+     */
+    public static long export(LevelDB levelDB, Snapshot snapshot, OutputStream out, int threads) throws LevelDBException, IOException {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream must not be null.");
+        }
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+
+        boolean ownSnapshot = snapshot == null;
+
+        if (ownSnapshot) {
+            snapshot = levelDB.obtainSnapshot();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+
+            data.write(MAGIC);
+            data.writeByte(VERSION);
+
+            // Blocks in the order they have to be written, while being compressed.
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+            ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+            long count = 0;
+
+            Iterator iterator = levelDB.iterator(false, snapshot);
+
+            try {
+                for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                    byte[] key = iterator.key();
+                    byte[] value = iterator.value();
+
+                    writeVarint(block, key.length);
+                    block.write(key, 0, key.length);
+                    writeVarint(block, value.length);
+                    block.write(value, 0, value.length);
+
+                    count++;
+
+                    if (block.size() >= BLOCK_SIZE) {
+                        pending.add(executor.submit(compress(block.toByteArray())));
+                        block.reset();
+
+                        // Bounds the memory held by blocks waiting to be written.
+                        while (pending.size() > threads * 2) {
+                            data.write(await(pending.poll()));
+                        }
+                    }
+                }
+            } finally {
+                iterator.close();
+            }
+
+            if (block.size() > 0) {
+                pending.add(executor.submit(compress(block.toByteArray())));
+            }
+
+            while (!pending.isEmpty()) {
+                data.write(await(pending.poll()));
+            }
+
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeLong(count);
+            data.flush();
+
+            return count;
+        } finally {
+            executor.shutdownNow();
+
+            if (ownSnapshot) {
+                levelDB.releaseSnapshot(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Imports using as many decompression threads as there are processors.
+     *
+     * @see #importInto(com.github.hf.leveldb.LevelDB, java.io.InputStream, int)
+     */
+    public static long importInto(LevelDB levelDB, InputStream in) throws LevelDBException, IOException {
+        return importInto(levelDB, in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Puts all pairs of an export into the database, overwriting existing values of the same keys.
+     * Pairs are written in large asynchronous batches, followed by a flush that makes them durable.
+     * The stream is not closed.
+     *
+     * The stream is only verified as it is read, so a corrupt stream may be imported in part.
+     *
+     * @param levelDB the database, non-null
+     * @param in the stream, positioned at the start of an export, non-null
+     * @param threads number of decompression threads, must be positive
+     * @return the number of pairs imported
+     * @throws LevelDBCorruptionException if the stream is not a valid export
+     * @throws LevelDBException
+     * @throws IOException
+     */
+    public static long importInto(LevelDB levelDB, InputStream in, int threads) throws LevelDBException, IOException {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream must not be null.");
+        }
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive.");
+        }
+
+        DataInputStream data = new DataInputStream(in);
+
+        byte[] magic = new byte[MAGIC.length];
+
+        try {
+            data.readFully(magic);
+
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new LevelDBCorruptionException("Not a LevelDB export.");
+            }
+
+            int version = data.readUnsignedByte();
+
+            if (version != VERSION) {
+                throw new LevelDBCorruptionException("Unsupported export version " + version);
+            }
+        } catch (EOFException e) {
+            throw new LevelDBCorruptionException("Not a LevelDB export.");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+            SimpleWriteBatch batch = new SimpleWriteBatch();
+            long batched = 0;
+            long count = 0;
+            boolean ended = false;
+
+            while (!ended || !pending.isEmpty()) {
+                // Keeps a few blocks decompressing ahead of the one being written.
+                while (!ended && pending.size() <= threads * 2) {
+                    Callable<byte[]> block = readBlock(data);
+
+                    if (block == null) {
+                        ended = true;
+                    } else {
+                        pending.add(executor.submit(block));
+                    }
+                }
+
+                if (pending.isEmpty()) {
+                    break;
+                }
+
+                byte[] block = await(pending.poll());
+
+                int position = 0;
+
+                while (position < block.length) {
+                    int[] next = { position };
+
+                    byte[] key = readBytes(block, next);
+                    byte[] value = readBytes(block, next);
+
+                    position = next[0];
+
+                    batch.put(key, value);
+                    batched += key.length + value.length;
+                    count++;
+
+                    if (batched >= IMPORT_BATCH_BYTES) {
+                        levelDB.write(batch, false);
+
+                        batch = new SimpleWriteBatch();
+                        batched = 0;
+                    }
+                }
+            }
+
+            long expected;
+
+            try {
+                expected = data.readLong();
+            } catch (EOFException e) {
+                throw new LevelDBCorruptionException("Export is truncated.");
+            }
+
+            levelDB.write(batch, false);
+
+            // A synchronous write would only sync the current log, while an import this large has
+            // switched logs along the way. Flushing writes everything to synced table files.
+            levelDB.flush();
+
+            if (expected != count) {
+                throw new LevelDBCorruptionException("Export has " + count + " pairs, expected " + expected);
+            }
+
+            return count;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<byte[]> compress(final byte[] raw) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                Deflater deflater = new Deflater();
+
+                try {
+                    deflater.setInput(raw);
+                    deflater.finish();
+
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+                    byte[] buffer = new byte[64 * 1024];
+
+                    while (!deflater.finished()) {
+                        int length = deflater.deflate(buffer);
+
+                        compressed.write(buffer, 0, length);
+                    }
+
+                    byte[] bytes = compressed.toByteArray();
+
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes, 0, bytes.length);
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 12);
+                    DataOutputStream data = new DataOutputStream(out);
+
+                    data.writeInt(raw.length);
+                    data.writeInt(bytes.length);
+                    data.writeInt((int) crc.getValue());
+                    data.write(bytes);
+
+                    return out.toByteArray();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads a block and checks it.
+     *
+     * @return a task decompressing the block, or null at the end of the blocks
+     */
+    private static Callable<byte[]> readBlock(DataInputStream data) throws IOException, LevelDBCorruptionException {
+        final int rawLength;
+        final byte[] compressed;
+
+        try {
+            rawLength = data.readInt();
+            int compressedLength = data.readInt();
+            int crc = data.readInt();
+
+            if (rawLength == 0 && compressedLength == 0) {
+                return null;
+            }
+
+            if (rawLength < 0 || rawLength > MAX_BLOCK_SIZE || compressedLength < 0 || compressedLength > MAX_BLOCK_SIZE) {
+                throw new LevelDBCorruptionException("Invalid export block.");
+            }
+
+            compressed = new byte[compressedLength];
+            data.readFully(compressed);
+
+            CRC32 actual = new CRC32();
+            actual.update(compressed, 0, compressed.length);
+
+            if ((int) actual.getValue() != crc) {
+                throw new LevelDBCorruptionException("Export block checksum mismatch.");
+            }
+        } catch (EOFException e) {
+            throw new LevelDBCorruptionException("Export is truncated.");
+        }
+
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws LevelDBCorruptionException {
+                Inflater inflater = new Inflater();
+
+                try {
+                    inflater.setInput(compressed);
+
+                    byte[] raw = new byte[rawLength];
+
+                    int length = 0;
+
+                    while (length < rawLength && !inflater.finished()) {
+                        int inflated = inflater.inflate(raw, length, rawLength - length);
+
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+
+                        length += inflated;
+                    }
+
+                    if (length != rawLength) {
+                        throw new LevelDBCorruptionException("Export block has the wrong length.");
+                    }
+
+                    return raw;
+                } catch (DataFormatException e) {
+                    throw new LevelDBCorruptionException("Export block is not valid: " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static byte[] await(Future<byte[]> future) throws LevelDBException, IOException {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof LevelDBException) {
+                throw (LevelDBException) cause;
+            }
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    /**
+     * Reads a varint-prefixed byte array at <tt>position[0]</tt>, and advances it.
+     */
+    private static byte[] readBytes(byte[] block, int[] position) throws LevelDBCorruptionException {
+        int length = 0;
+        int shift = 0;
+        int offset = position[0];
+
+        while (true) {
+            if (offset >= block.length || shift > 28) {
+                throw new LevelDBCorruptionException("Invalid export record.");
+            }
+
+            int b = block[offset++] & 0xFF;
+
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+
+        if (length < 0 || length > block.length - offset) {
+            throw new LevelDBCorruptionException("Invalid export record.");
+        }
+
+        position[0] = offset + length;
+
+        return Arrays.copyOfRange(block, offset, offset + length);
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import android.util.Log;
+import com.github.hf.leveldb.DbStats;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples {@link LevelDB#getStats()} into a bounded, in-memory time series.
+ *
+ * Sampling runs on a single daemon thread and stops by itself once the database is closed.
+ */
+public class DbStatsSampler implements Closeable {
+
+    /**
+     * Receives every sample as soon as it is taken, on the sampler's thread.
+     */
+    public interface Listener {
+        void onSample(DbStats stats);
+    }
+
+    private final LevelDB levelDB;
+    private final long periodMillis;
+    private final int capacity;
+
+    private final ArrayDeque<DbStats> samples;
+
+    private volatile Listener listener;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new sampler. Call {@link #start()} to begin sampling.
+     *
+     * @param levelDB      the database to sample, non-null
+     * @param periodMillis time between samples in milliseconds, must be positive
+     * @param capacity     maximum number of samples kept, older ones are dropped first
+     */
+    public DbStatsSampler(LevelDB levelDB, long periodMillis, int capacity) {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Period must be positive.");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+
+        this.levelDB = levelDB;
+        this.periodMillis = periodMillis;
+        this.capacity = capacity;
+        this.samples = new ArrayDeque<DbStats>(capacity);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts sampling. The first sample is taken immediately. Calling this on a running sampler
+     * does nothing.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LevelDB-StatsSampler");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling. Samples taken so far remain available.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Same as {@link #stop()}.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Takes a sample right away and records it, regardless of whether the sampler is running.
+     *
+     * @return the new sample, or null if the database has been closed
+     */
+    public DbStats sample() {
+        DbStats stats;
+
+        try {
+            stats = levelDB.getStats();
+        } catch (LevelDBClosedException e) {
+            stop();
+
+            return null;
+        } catch (RuntimeException e) {
+            Log.w(DbStatsSampler.class.getName(), "Unable to sample database stats.", e);
+
+            return null;
+        }
+
+        synchronized (samples) {
+            if (samples.size() == capacity) {
+                samples.removeFirst();
+            }
+
+            samples.addLast(stats);
+        }
+
+        Listener listener = this.listener;
+
+        if (listener != null) {
+            listener.onSample(stats);
+        }
+
+        return stats;
+    }
+
+    /**
+     * @return a copy of the recorded samples, oldest first
+     */
+    public List<DbStats> samples() {
+        synchronized (samples) {
+            return new ArrayList<DbStats>(samples);
+        }
+    }
+
+    /**
+     * @return the most recent sample, or null if none has been taken
+     */
+    public DbStats latest() {
+        synchronized (samples) {
+            return samples.peekLast();
+        }
+    }
+
+    /**
+     * Forgets all recorded samples.
+     */
+    public void clear() {
+        synchronized (samples) {
+            samples.clear();
+        }
+    }
+}
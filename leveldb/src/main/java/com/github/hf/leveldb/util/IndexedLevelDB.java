@@ -0,0 +1,389 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.Keyspace;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps records in a {@link Keyspace} together with secondary indexes over them. Every
+ * {@link #put(byte[], byte[], boolean)} and {@link #del(byte[], boolean)} updates the record and
+ * all of its index entries in a single {@link com.github.hf.leveldb.WriteBatch}, so indexes are
+ * never out of date, not even after a crash.
+ *
+ * Each index is a keyspace of its own, named <tt>name + "/" + index</tt>. An index entry is
+ * stored under the indexed value, prefixed with its length as a varint, followed by the record's
+ * key, so that {@link #lookup(String, byte[])} is a single prefix scan.
+ *
+ * Updates read the previous value of the record to remove its stale index entries, and are
+ * serialized per key. Write to the record keyspace only through this class.
+ */
+public class IndexedLevelDB {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Extracts the values under which a record is indexed.
+     */
+    public interface Extractor {
+        /**
+         * Called with every record that is written, and must not have side effects.
+         *
+         * @param key   the record's key
+         * @param value the record's value
+         * @return the indexed values, or null or empty if the record is not in the index
+         */
+        Collection<byte[]> extract(byte[] key, byte[] value);
+    }
+
+    private static final class Index {
+        final String name;
+        final Keyspace keyspace;
+        final Extractor extractor;
+
+        Index(String name, Keyspace keyspace, Extractor extractor) {
+            this.name = name;
+            this.keyspace = keyspace;
+            this.extractor = extractor;
+        }
+    }
+
+    private final LevelDB levelDB;
+    private final String name;
+    private final Keyspace records;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private volatile Index[] indexes = new Index[0];
+
+    /**
+     * @param levelDB the database, non-null
+     * @param name    the name of the record keyspace, non-null
+     * @throws LevelDBException
+     */
+    public IndexedLevelDB(LevelDB levelDB, String name) throws LevelDBException {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (name == null) {
+            throw new IllegalArgumentException("Name must not be null.");
+        }
+
+        this.levelDB = levelDB;
+        this.name = name;
+        this.records = levelDB.keyspace(name);
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public LevelDB levelDB() {
+        return levelDB;
+    }
+
+    /**
+     * @return the keyspace of the records
+     */
+    public Keyspace records() {
+        return records;
+    }
+
+    /**
+     * Registers an index. Register all indexes before the first update, each time the database is
+     * opened. Records written before an index was first registered are only in it after
+     * {@link #rebuild(String)}.
+     *
+     * @param index     the name of the index, non-null
+     * @param extractor the extractor, non-null
+     * @return this
+     * @throws LevelDBException
+     */
+    public synchronized IndexedLevelDB addIndex(String index, Extractor extractor) throws LevelDBException {
+        if (index == null) {
+            throw new IllegalArgumentException("Index must not be null.");
+        }
+
+        if (extractor == null) {
+            throw new IllegalArgumentException("Extractor must not be null.");
+        }
+
+        if (find(index) != null) {
+            throw new IllegalArgumentException("Index " + index + " already exists.");
+        }
+
+        Index[] added = Arrays.copyOf(indexes, indexes.length + 1);
+
+        added[indexes.length] = new Index(index, levelDB.keyspace(name + "/" + index), extractor);
+
+        indexes = added;
+
+        return this;
+    }
+
+    /**
+     * Puts a record and updates its index entries, in one write.
+     *
+     * @param key   the key, non-null
+     * @param value the value, non-null
+     * @param sync  whether to sync the write
+     * @throws LevelDBException
+     */
+    public void put(byte[] key, byte[] value, boolean sync) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+
+        update(key, value, sync);
+    }
+
+    public void put(byte[] key, byte[] value) throws LevelDBException {
+        put(key, value, false);
+    }
+
+    /**
+     * Deletes a record and its index entries, in one write.
+     *
+     * @param key  the key, non-null
+     * @param sync whether to sync the write
+     * @throws LevelDBException
+     */
+    public void del(byte[] key, boolean sync) throws LevelDBException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        update(key, null, sync);
+    }
+
+    public void del(byte[] key) throws LevelDBException {
+        del(key, false);
+    }
+
+    public byte[] get(byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        return records.get(key, snapshot);
+    }
+
+    public byte[] get(byte[] key) throws LevelDBException {
+        return records.get(key);
+    }
+
+    /**
+     * Finds the keys of the records indexed under a value, in key order.
+     *
+     * @param index    the name of the index, non-null
+     * @param value    the indexed value, non-null
+     * @param snapshot the snapshot to look up in, or null
+     * @return the keys of the records
+     * @throws LevelDBException
+     */
+    public List<byte[]> lookup(String index, byte[] value, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        Index found = find(index);
+
+        if (found == null) {
+            throw new IllegalArgumentException("Index " + index + " does not exist.");
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null.");
+        }
+
+        List<byte[]> keys = new ArrayList<byte[]>();
+
+        Iterator iterator = levelDB.prefixIterator(found.keyspace.key(encode(value, EMPTY)), true, snapshot);
+
+        try {
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                keys.add(iterator.key());
+            }
+        } finally {
+            iterator.close();
+        }
+
+        return keys;
+    }
+
+    public List<byte[]> lookup(String index, byte[] value) throws LevelDBClosedException {
+        try {
+            return lookup(index, value, null);
+        } catch (LevelDBSnapshotOwnershipException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Rebuilds an index from all records. Do not update records while an index is rebuilt.
+     *
+     * @param index the name of the index, non-null
+     * @return the number of index entries written
+     * @throws LevelDBException
+     */
+    public long rebuild(String index) throws LevelDBException {
+        Index found = find(index);
+
+        if (found == null) {
+            throw new IllegalArgumentException("Index " + index + " does not exist.");
+        }
+
+        found.keyspace.drop();
+
+        long entries = 0;
+
+        SimpleWriteBatch batch = new SimpleWriteBatch();
+        int batched = 0;
+
+        Iterator iterator = records.iterator(false, null);
+
+        try {
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+
+                Collection<byte[]> values = found.extractor.extract(key, iterator.value());
+
+                if (values == null) {
+                    continue;
+                }
+
+                for (byte[] value : values) {
+                    batch.put(found.keyspace.key(encode(value, key)), EMPTY);
+                    batched++;
+                    entries++;
+                }
+
+                if (batched >= REBUILD_BATCH_SIZE) {
+                    levelDB.write(batch, false);
+                    batch = new SimpleWriteBatch();
+                    batched = 0;
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        levelDB.write(batch, true);
+
+        return entries;
+    }
+
+    private void update(byte[] key, byte[] value, boolean sync) throws LevelDBException {
+        Index[] indexes = this.indexes;
+
+        synchronized (locks[(Arrays.hashCode(key) & 0x7FFFFFFF) % locks.length]) {
+            byte[] previous = indexes.length > 0 ? records.get(key) : null;
+
+            SimpleWriteBatch batch = new SimpleWriteBatch();
+
+            for (Index index : indexes) {
+                Collection<byte[]> stale = previous == null ? null : index.extractor.extract(key, previous);
+                Collection<byte[]> fresh = value == null ? null : index.extractor.extract(key, value);
+
+                // Deletes come first, so that values indexed both before and after are kept.
+                if (stale != null) {
+                    for (byte[] indexed : stale) {
+                        batch.del(index.keyspace.key(encode(indexed, key)));
+                    }
+                }
+
+                if (fresh != null) {
+                    for (byte[] indexed : fresh) {
+                        batch.put(index.keyspace.key(encode(indexed, key)), EMPTY);
+                    }
+                }
+            }
+
+            if (value == null) {
+                batch.del(records.key(key));
+            } else {
+                batch.put(records.key(key), value);
+            }
+
+            levelDB.write(batch, sync);
+        }
+    }
+
+    private Index find(String index) {
+        for (Index candidate : indexes) {
+            if (candidate.name.equals(index)) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the length of the indexed value as a varint, the indexed value and the key
+     */
+    private static byte[] encode(byte[] value, byte[] key) {
+        if (value == null) {
+            throw new IllegalArgumentException("Extractor must not return null values.");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length + key.length + 5);
+
+        int length = value.length;
+
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+
+        out.write(length);
+        out.write(value, 0, value.length);
+        out.write(key, 0, key.length);
+
+        return out.toByteArray();
+    }
+}
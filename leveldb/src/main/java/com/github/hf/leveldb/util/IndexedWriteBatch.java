@@ -0,0 +1,495 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+import com.github.hf.leveldb.Iterator;
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.Snapshot;
+import com.github.hf.leveldb.WriteBatch;
+import com.github.hf.leveldb.exception.LevelDBClosedException;
+import com.github.hf.leveldb.exception.LevelDBException;
+import com.github.hf.leveldb.exception.LevelDBIteratorNotValidException;
+import com.github.hf.leveldb.exception.LevelDBSnapshotOwnershipException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link WriteBatch} that indexes its operations by key, so that pending writes can be read back
+ * with {@link #get(LevelDB, byte[], Snapshot)} and iterated over together with the database with
+ * {@link #iterator(LevelDB, Snapshot)}, before the batch is written.
+ *
+ * Only the last operation on each key is kept, which writes the same as the whole sequence would,
+ * and operations are written in key order.
+ *
+ * Not thread safe.
+ */
+public class IndexedWriteBatch implements WriteBatch {
+    private final TreeMap<byte[], WriteBatch.Operation> operations = new TreeMap<byte[], WriteBatch.Operation>(Bytes.BYTEWISE_COMPARATOR);
+
+    // Invalidates iterators over the batch when it changes.
+    private int modifications;
+
+    private static final class Operation implements WriteBatch.Operation {
+        private final byte[] key;
+        private final byte[] value;
+
+        Operation(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        @Override
+        public byte[] value() {
+            return value;
+        }
+
+        @Override
+        public boolean isPut() {
+            return value != null;
+        }
+
+        @Override
+        public boolean isDel() {
+            return value == null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexedWriteBatch put(byte[] key, byte[] value) {
+        if (value == null) {
+            return del(key);
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        return insert(new Operation(key, value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexedWriteBatch del(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        return insert(new Operation(key, null));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexedWriteBatch insert(WriteBatch.Operation operation) {
+        if (operation == null) {
+            throw new IllegalArgumentException("Operation must not be null.");
+        }
+
+        operations.put(operation.key(), operation);
+        modifications++;
+
+        return this;
+    }
+
+    /**
+     * The pending operation on a key.
+     *
+     * @param key non-null
+     * @return the last put or delete of the key, or null if there is none
+     */
+    public WriteBatch.Operation getOperation(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null.");
+        }
+
+        return operations.get(key);
+    }
+
+    /**
+     * Reads a key as if the batch had been written to the database.
+     *
+     * @param levelDB the database to read keys without a pending operation from
+     * @param key non-null
+     * @param snapshot the snapshot to read from, or null for the current state of the database
+     * @return the value, or null
+     * @throws LevelDBException
+     */
+    public byte[] get(LevelDB levelDB, byte[] key, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBException {
+        WriteBatch.Operation operation = getOperation(key);
+
+        if (operation != null) {
+            return operation.isDel() ? null : operation.value();
+        }
+
+        return levelDB.get(key, snapshot);
+    }
+
+    /**
+     * @see #get(LevelDB, byte[], Snapshot)
+     */
+    public byte[] get(LevelDB levelDB, byte[] key) throws LevelDBException {
+        return get(levelDB, key, null);
+    }
+
+    /**
+     * Iterates over the database as if the batch had been written to it. Pending puts replace or add
+     * entries, pending deletes hide them.
+     *
+     * The batch must not be changed while the iterator is in use.
+     *
+     * @param levelDB the database
+     * @param snapshot the snapshot to iterate over, or null for the current state of the database
+     * @return a new iterator, close it when done
+     * @throws LevelDBClosedException
+     */
+    public Iterator iterator(LevelDB levelDB, Snapshot snapshot) throws LevelDBSnapshotOwnershipException, LevelDBClosedException {
+        return iterator(levelDB.iterator(snapshot));
+    }
+
+    /**
+     * Iterates over the entries of another iterator as if the batch had been written to them. The
+     * returned iterator owns <tt>base</tt> and closes it.
+     *
+     * @param base an iterator over the database, or a part of it
+     * @return a new iterator, close it when done
+     */
+    public Iterator iterator(Iterator base) {
+        if (base == null) {
+            throw new IllegalArgumentException("Base iterator must not be null.");
+        }
+
+        return new MergingIterator(this, base);
+    }
+
+    /**
+     * The number of keys with a pending operation.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Discards all pending operations.
+     */
+    public void clear() {
+        operations.clear();
+        modifications++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public java.util.Iterator<WriteBatch.Operation> iterator() {
+        return operations.values().iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<WriteBatch.Operation> getAllOperations() {
+        return new ArrayList<WriteBatch.Operation>(operations.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(LevelDB levelDB, boolean sync) throws LevelDBException {
+        levelDB.write(this, sync);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(LevelDB levelDB) throws LevelDBException {
+        write(levelDB, false);
+    }
+
+    /**
+     * Merges the batch into a base iterator. The iterator is positioned on either the base entry or
+     * the pending operation with the smallest key (largest, when moving backward), the operation
+     * winning ties. Deleted keys are skipped over.
+     */
+    private static final class MergingIterator extends Iterator {
+        private final IndexedWriteBatch batch;
+        private final Iterator base;
+        private final int modifications;
+
+        // The key under the base iterator, or null if it is not valid.
+        private byte[] baseKey;
+        private Map.Entry<byte[], WriteBatch.Operation> pending;
+
+        private boolean forward = true;
+        private boolean onBase;
+        private boolean valid;
+
+        MergingIterator(IndexedWriteBatch batch, Iterator base) {
+            this.batch = batch;
+            this.base = base;
+            this.modifications = batch.modifications;
+        }
+
+        @Override
+        public boolean isValid() throws LevelDBClosedException {
+            checkIfClosed();
+
+            return valid;
+        }
+
+        @Override
+        public void seekToFirst() throws LevelDBClosedException {
+            checkIfClosed();
+
+            base.seekToFirst();
+            pending = batch.operations.firstEntry();
+
+            findNext();
+        }
+
+        @Override
+        public void seekToLast() throws LevelDBClosedException {
+            checkIfClosed();
+
+            base.seekToLast();
+            pending = batch.operations.lastEntry();
+
+            findPrevious();
+        }
+
+        @Override
+        public void seek(byte[] key) throws LevelDBClosedException {
+            checkIfClosed();
+
+            if (key == null) {
+                throw new IllegalArgumentException("Seek key must never be null!");
+            }
+
+            base.seek(key);
+            pending = batch.operations.ceilingEntry(key);
+
+            findNext();
+        }
+
+        @Override
+        public void next() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+            checkIfValid();
+
+            if (forward) {
+                if (onBase) {
+                    base.next();
+                } else {
+                    if (baseKey != null && Bytes.bytewiseCompare(baseKey, pending.getKey()) == 0) {
+                        base.next();
+                    }
+
+                    pending = batch.operations.higherEntry(pending.getKey());
+                }
+            } else {
+                byte[] key = key();
+
+                base.seek(key);
+
+                if (base.isValid() && Bytes.bytewiseCompare(base.key(), key) == 0) {
+                    base.next();
+                }
+
+                pending = batch.operations.higherEntry(key);
+            }
+
+            findNext();
+        }
+
+        @Override
+        public void previous() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+            checkIfValid();
+
+            if (!forward) {
+                if (onBase) {
+                    base.previous();
+                } else {
+                    if (baseKey != null && Bytes.bytewiseCompare(baseKey, pending.getKey()) == 0) {
+                        base.previous();
+                    }
+
+                    pending = batch.operations.lowerEntry(pending.getKey());
+                }
+            } else {
+                byte[] key = key();
+
+                base.seek(key);
+
+                if (base.isValid()) {
+                    base.previous();
+                } else {
+                    base.seekToLast();
+                }
+
+                pending = batch.operations.lowerEntry(key);
+            }
+
+            findPrevious();
+        }
+
+        @Override
+        public byte[] key() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+            checkIfValid();
+
+            return onBase ? baseKey : pending.getKey();
+        }
+
+        @Override
+        public byte[] value() throws LevelDBIteratorNotValidException, LevelDBClosedException {
+            checkIfValid();
+
+            return onBase ? base.value() : pending.getValue().value();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return base.isClosed();
+        }
+
+        @Override
+        public void close() {
+            base.close();
+        }
+
+        private void findNext() throws LevelDBClosedException {
+            forward = true;
+
+            while (true) {
+                baseKey = base.isValid() ? base.key() : null;
+
+                if (pending == null) {
+                    onBase = baseKey != null;
+                    valid = onBase;
+                    return;
+                }
+
+                int compare = baseKey == null ? 1 : Bytes.bytewiseCompare(baseKey, pending.getKey());
+
+                if (compare < 0) {
+                    onBase = true;
+                    valid = true;
+                    return;
+                }
+
+                if (pending.getValue().isPut()) {
+                    onBase = false;
+                    valid = true;
+                    return;
+                }
+
+                if (compare == 0) {
+                    base.next();
+                }
+
+                pending = batch.operations.higherEntry(pending.getKey());
+            }
+        }
+
+        private void findPrevious() throws LevelDBClosedException {
+            forward = false;
+
+            while (true) {
+                baseKey = base.isValid() ? base.key() : null;
+
+                if (pending == null) {
+                    onBase = baseKey != null;
+                    valid = onBase;
+                    return;
+                }
+
+                int compare = baseKey == null ? -1 : Bytes.bytewiseCompare(baseKey, pending.getKey());
+
+                if (compare > 0) {
+                    onBase = true;
+                    valid = true;
+                    return;
+                }
+
+                if (pending.getValue().isPut()) {
+                    onBase = false;
+                    valid = true;
+                    return;
+                }
+
+                if (compare == 0) {
+                    base.previous();
+                }
+
+                pending = batch.operations.lowerEntry(pending.getKey());
+            }
+        }
+
+        private void checkIfValid() throws LevelDBClosedException {
+            if (!isValid()) {
+                throw new LevelDBIteratorNotValidException();
+            }
+        }
+
+        private void checkIfClosed() throws LevelDBClosedException {
+            if (isClosed()) {
+                throw new LevelDBClosedException("Iterator has been closed.");
+            }
+
+            if (modifications != batch.modifications) {
+                throw new ConcurrentModificationException("Write batch has changed since the iterator was created.");
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.ValueCache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ValueCache} bounded in bytes, which evicts the least recently used values first.
+ *
+ * Values larger than an eighth of the capacity are not cached, so that a single large value can't
+ * flush out many small hot ones. Override {@link #shouldCache(byte[], byte[])} to change what gets
+ * cached.
+ */
+public class LruValueCache implements ValueCache {
+
+    private static final class Key {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(bytes, ((Key) other).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final long capacityBytes;
+
+    // All guarded by this.
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacityBytes maximum total size of the cached keys and values, must be positive
+     */
+    public LruValueCache(long capacityBytes) {
+        if (capacityBytes < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+
+        this.capacityBytes = capacityBytes;
+    }
+
+    @Override
+    public synchronized byte[] get(byte[] key) {
+        byte[] value = entries.get(new Key(key));
+
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return value;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        if (!shouldCache(key, value)) {
+            return;
+        }
+
+        // The key may be modified by the caller after this returns.
+        Key cacheKey = new Key(key.clone());
+
+        synchronized (this) {
+            byte[] previous = entries.put(cacheKey, value);
+
+            if (previous != null) {
+                sizeBytes -= key.length + previous.length;
+            }
+
+            sizeBytes += key.length + value.length;
+
+            Iterator<Map.Entry<Key, byte[]>> iterator = entries.entrySet().iterator();
+
+            while (sizeBytes > capacityBytes && iterator.hasNext()) {
+                Map.Entry<Key, byte[]> eldest = iterator.next();
+
+                sizeBytes -= eldest.getKey().bytes.length + eldest.getValue().length;
+                iterator.remove();
+
+                evictions++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(byte[] key) {
+        byte[] previous = entries.remove(new Key(key));
+
+        if (previous != null) {
+            sizeBytes -= key.length + previous.length;
+        }
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /**
+     * Decides whether a value is worth caching.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return true if it is at most an eighth of the capacity
+     */
+    protected boolean shouldCache(byte[] key, byte[] value) {
+        return key.length + value.length <= capacityBytes / 8;
+    }
+
+    public long capacityBytes() {
+        return capacityBytes;
+    }
+
+    public synchronized long sizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,340 @@
+package com.github.hf.leveldb.util;
+
+/*
+ * Stojan Dimitrovski
+ *
+ * Copyright (c) 2014, Stojan Dimitrovski <sdimitrovski@gmail.com>
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OFz SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.hf.leveldb.LevelDB;
+import com.github.hf.leveldb.WriteBatch;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs database operations on two pools of threads, one per {@link Priority}, so that interactive
+ * work is dispatched ahead of background work.
+ *
+ * Background tasks only start while no interactive task is queued or running. A background task
+ * that has waited longer than the maximum background delay starts anyway, so that a steady stream
+ * of interactive work can't starve it.
+ */
+public class PriorityScheduler implements Closeable {
+
+    public enum Priority {
+        /**
+         * Reads and small writes that something user-facing is waiting on.
+         */
+        INTERACTIVE,
+
+        /**
+         * Bulk writes, scans, compactions and anything else that can wait.
+         */
+        BACKGROUND
+    }
+
+    private static final class Job {
+        final FutureTask<?> task;
+        final long enqueuedAt;
+
+        Job(FutureTask<?> task) {
+            this.task = task;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private final LevelDB levelDB;
+    private final long maxBackgroundDelayNanos;
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    // All guarded by this.
+    private final ArrayDeque<Job> interactive = new ArrayDeque<Job>();
+    private final ArrayDeque<Job> background = new ArrayDeque<Job>();
+    private int interactiveRunning;
+    private boolean closed;
+
+    /**
+     * Creates a scheduler with 2 interactive threads, 1 background thread and a maximum background
+     * delay of 1 second.
+     *
+     * @param levelDB the database, non-null
+     */
+    public PriorityScheduler(LevelDB levelDB) {
+        this(levelDB, 2, 1, 1000);
+    }
+
+    /**
+     * Creates a new scheduler and starts its threads.
+     *
+     * @param levelDB                  the database, non-null
+     * @param interactiveThreads       number of interactive tasks that can run at once, must be positive
+     * @param backgroundThreads        number of background tasks that can run at once, must be positive
+     * @param maxBackgroundDelayMillis time after which a waiting background task starts despite
+     *                                 pending interactive work, must not be negative
+     */
+    public PriorityScheduler(LevelDB levelDB, int interactiveThreads, int backgroundThreads, long maxBackgroundDelayMillis) {
+        if (levelDB == null) {
+            throw new IllegalArgumentException("LevelDB must not be null.");
+        }
+
+        if (interactiveThreads < 1 || backgroundThreads < 1) {
+            throw new IllegalArgumentException("Thread counts must be positive.");
+        }
+
+        if (maxBackgroundDelayMillis < 0) {
+            throw new IllegalArgumentException("Max background delay must not be negative.");
+        }
+
+        this.levelDB = levelDB;
+        this.maxBackgroundDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBackgroundDelayMillis);
+
+        for (int i = 0; i < interactiveThreads; i++) {
+            threads.add(newWorker(Priority.INTERACTIVE, "LevelDB-Interactive-" + i));
+        }
+
+        for (int i = 0; i < backgroundThreads; i++) {
+            threads.add(newWorker(Priority.BACKGROUND, "LevelDB-Background-" + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    public LevelDB levelDB() {
+        return levelDB;
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param priority the priority class, non-null
+     * @param task     the task, non-null
+     * @return a future for the result of the task
+     * @throws RejectedExecutionException if the scheduler has been closed
+     */
+    public <T> Future<T> submit(Priority priority, Callable<T> task) {
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority must not be null.");
+        }
+
+        if (task == null) {
+            throw new IllegalArgumentException("Task must not be null.");
+        }
+
+        FutureTask<T> future = new FutureTask<T>(task);
+
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("Scheduler has been closed.");
+            }
+
+            if (priority == Priority.INTERACTIVE) {
+                interactive.addLast(new Job(future));
+            } else {
+                background.addLast(new Job(future));
+            }
+
+            notifyAll();
+        }
+
+        return future;
+    }
+
+    /**
+     * Schedules an interactive {@link LevelDB#get(byte[])}.
+     */
+    public Future<byte[]> get(final byte[] key) {
+        return submit(Priority.INTERACTIVE, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return levelDB.get(key);
+            }
+        });
+    }
+
+    /**
+     * Schedules a {@link LevelDB#put(byte[], byte[], boolean)}.
+     */
+    public Future<Void> put(Priority priority, final byte[] key, final byte[] value, final boolean sync) {
+        return submit(priority, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                levelDB.put(key, value, sync);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Schedules a {@link LevelDB#write(WriteBatch, boolean)}.
+     */
+    public Future<Void> write(Priority priority, final WriteBatch writeBatch, final boolean sync) {
+        return submit(priority, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                levelDB.write(writeBatch, sync);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Schedules a background {@link LevelDB#compactRange(byte[], byte[])}.
+     */
+    public Future<Void> compactRange(final byte[] begin, final byte[] end) {
+        return submit(Priority.BACKGROUND, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                levelDB.compactRange(begin, end);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Stops accepting tasks and cancels the ones that have not started. Running tasks finish, but
+     * this does not wait for them. Does not close the database.
+     */
+    @Override
+    public void close() {
+        List<Job> cancelled = new ArrayList<Job>();
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            cancelled.addAll(interactive);
+            cancelled.addAll(background);
+
+            interactive.clear();
+            background.clear();
+
+            notifyAll();
+        }
+
+        for (Job job : cancelled) {
+            job.task.cancel(false);
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private Thread newWorker(final Priority priority, String name) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Job job;
+
+                while ((job = take(priority)) != null) {
+                    job.task.run();
+
+                    if (priority == Priority.INTERACTIVE) {
+                        synchronized (PriorityScheduler.this) {
+                            interactiveRunning--;
+
+                            PriorityScheduler.this.notifyAll();
+                        }
+                    }
+                }
+            }
+        }, name);
+
+        thread.setDaemon(true);
+
+        return thread;
+    }
+
+    /**
+     * Blocks until a task of the priority class may run.
+     *
+     * @return the task, or null once closed
+     */
+    private synchronized Job take(Priority priority) {
+        boolean interrupted = false;
+
+        try {
+            while (!closed) {
+                long waitNanos = 0;
+
+                if (priority == Priority.INTERACTIVE) {
+                    if (!interactive.isEmpty()) {
+                        interactiveRunning++;
+
+                        return interactive.removeFirst();
+                    }
+                } else if (!background.isEmpty()) {
+                    if (interactive.isEmpty() && interactiveRunning == 0) {
+                        return background.removeFirst();
+                    }
+
+                    waitNanos = background.peekFirst().enqueuedAt + maxBackgroundDelayNanos - System.nanoTime();
+
+                    if (waitNanos <= 0) {
+                        return background.removeFirst();
+                    }
+                }
+
+                try {
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    } else {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            return null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}